@@ -0,0 +1,171 @@
+/**
+ * GalleryImage.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import com.vaadin.util.FileTypeResolver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Image served by {@link GalleryImageRequestHandler}. Length and last modification time are used as validators, so
+ * those have to change when content of image changes.
+ */
+public abstract class GalleryImage implements Serializable {
+
+    private final String name;
+    private final long length;
+    private final long lastModified;
+
+    /**
+     * Create new gallery image
+     * @param name Name of image, used to resolve content type
+     * @param length Length of image in bytes
+     * @param lastModified Last modification time in milliseconds
+     */
+    protected GalleryImage(String name, long length, long lastModified) {
+        if(length < 0) {
+            throw new IllegalArgumentException("Length can not be negative");
+        }
+        this.name = name;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Get name of image
+     * @return Name of image
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get length of image
+     * @return Length in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Get last modification time of image
+     * @return Time in milliseconds, or 0 if not known
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get content type of image, resolved from file extension of name
+     * @return MIME type
+     */
+    public String getContentType() {
+        return FileTypeResolver.getMIMEType(name);
+    }
+
+    /**
+     * Get strong entity tag of image. Built from length and last modification time.
+     * @return Quoted entity tag
+     */
+    public String getETag() {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * Get file backing this image. File backed images are streamed from file and are not kept in memory cache.
+     * @return File, or null if image is not backed by file
+     */
+    public File getFile() {
+        return null;
+    }
+
+    /**
+     * Open stream to content of image
+     * @return Stream to image data, closed by caller
+     * @throws IOException If opening fails
+     */
+    public abstract InputStream openStream() throws IOException;
+
+    /**
+     * Create image backed by file
+     * @param name Name of image
+     * @param file File of image
+     * @return Image, or null if file does not exist
+     */
+    public static GalleryImage forFile(String name, final File file) {
+        if(!file.isFile()) {
+            return null;
+        }
+        return new GalleryImage(name, file.length(), file.lastModified()) {
+            @Override
+            public File getFile() {
+                return file;
+            }
+
+            @Override
+            public InputStream openStream() throws IOException {
+                return new FileInputStream(file);
+            }
+        };
+    }
+
+    /**
+     * Create image backed by URL (e.g. classpath resource). URLs to local files are returned as file backed images.
+     * @param name Name of image
+     * @param url URL of image
+     * @return Image, or null if url is null
+     * @throws IOException If resolving length of image fails
+     */
+    public static GalleryImage forUrl(String name, final URL url) throws IOException {
+        if(url == null) {
+            return null;
+        }
+
+        if("file".equals(url.getProtocol())) {
+            try {
+                return forFile(name, new File(url.toURI()));
+            } catch(URISyntaxException e) {
+                // Fall back to URL connection
+            }
+        }
+
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        int length = connection.getContentLength();
+        long lastModified = connection.getLastModified();
+        connection.getInputStream().close();
+        if(length < 0) {
+            return null;
+        }
+
+        return new GalleryImage(name, length, lastModified) {
+            @Override
+            public InputStream openStream() throws IOException {
+                return url.openStream();
+            }
+        };
+    }
+}
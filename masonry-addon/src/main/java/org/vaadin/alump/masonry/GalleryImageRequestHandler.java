@@ -0,0 +1,542 @@
+/**
+ * GalleryImageRequestHandler.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import com.vaadin.server.RequestHandler;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * RequestHandler serving gallery images under given path prefix. Responses have strong validators (ETag and
+ * Last-Modified) and Cache-Control header, conditional GETs are answered with 304 and single byte ranges are
+ * supported. Small images not backed by files are kept in size bounded memory cache, file backed images are streamed
+ * from file to response in chunks. Located images not backed by files are remembered by name, so their metadata is
+ * not resolved again for every request. Same instance can be shared by all sessions, and it can also be registered
+ * as service level request handler to serve images without locking the session.
+ */
+public class GalleryImageRequestHandler implements RequestHandler {
+
+    /**
+     * Default max-age of Cache-Control header (one day)
+     */
+    public static final int DEFAULT_MAX_AGE_SECONDS = 24 * 60 * 60;
+
+    private final static Logger LOGGER = Logger.getLogger(GalleryImageRequestHandler.class.getName());
+
+    private final static int SC_NOT_MODIFIED = 304;
+    private final static int SC_PARTIAL_CONTENT = 206;
+    private final static int SC_RANGE_NOT_SATISFIABLE = 416;
+
+    // Returned by parseRange when range is outside of content
+    private final static long[] UNSATISFIABLE = new long[0];
+
+    private final String prefix;
+    private final ImageLocator locator;
+    private final ImageByteCache cache;
+    // Located images not backed by files, one entry per existing image name
+    private final Map<String, GalleryImage> locatedImages = new ConcurrentHashMap<String, GalleryImage>();
+    private int maxAgeSeconds = DEFAULT_MAX_AGE_SECONDS;
+    private ImageVariantService variantService;
+
+    /**
+     * Locates images served by handler
+     */
+    public interface ImageLocator extends Serializable {
+
+        /**
+         * Find image with given name
+         * @param name Name of image (path after prefix). Never contains parent references.
+         * @return Image, or null if not found
+         * @throws IOException If resolving image fails
+         */
+        GalleryImage locate(String name) throws IOException;
+    }
+
+    /**
+     * Create new handler with default memory cache
+     * @param prefix Path prefix of images (e.g. "/images/")
+     * @param locator Locator of images
+     */
+    public GalleryImageRequestHandler(String prefix, ImageLocator locator) {
+        this(prefix, locator, new ImageByteCache());
+    }
+
+    /**
+     * Create new handler
+     * @param prefix Path prefix of images (e.g. "/images/")
+     * @param locator Locator of images
+     * @param cache Memory cache used, or null to disable caching
+     */
+    public GalleryImageRequestHandler(String prefix, ImageLocator locator, ImageByteCache cache) {
+        if(prefix == null || locator == null) {
+            throw new IllegalArgumentException("Prefix and locator are required");
+        }
+        this.prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+        this.locator = locator;
+        this.cache = cache;
+    }
+
+    /**
+     * Create locator that finds images from directory
+     * @param directory Directory of images
+     * @return Locator
+     */
+    public static ImageLocator directory(final File directory) {
+        return new ImageLocator() {
+            @Override
+            public GalleryImage locate(String name) throws IOException {
+                File file = new File(directory, name);
+                if(!file.getCanonicalPath().startsWith(directory.getCanonicalPath() + File.separator)) {
+                    return null;
+                }
+                return GalleryImage.forFile(name, file);
+            }
+        };
+    }
+
+    /**
+     * Create locator that finds images from classpath
+     * @param base Class used to load resources
+     * @param basePath Path of images relative to base class (e.g. "/images/")
+     * @return Locator
+     */
+    public static ImageLocator classpath(final Class<?> base, String basePath) {
+        final String path = basePath.endsWith("/") ? basePath : basePath + "/";
+        return new ImageLocator() {
+            @Override
+            public GalleryImage locate(String name) throws IOException {
+                return GalleryImage.forUrl(name, base.getResource(path + name));
+            }
+        };
+    }
+
+    /**
+     * Get path prefix of images
+     * @return Prefix, always ending with slash
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Get memory cache used
+     * @return Cache, or null if caching is disabled
+     */
+    public ImageByteCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Set max-age given in Cache-Control header
+     * @param seconds Max age in seconds, 0 to ask clients to always revalidate
+     */
+    public void setMaxAgeSeconds(int seconds) {
+        if(seconds < 0) {
+            throw new IllegalArgumentException("Max age can not be negative");
+        }
+        maxAgeSeconds = seconds;
+    }
+
+    /**
+     * Get max-age given in Cache-Control header
+     * @return Max age in seconds
+     */
+    public int getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    /**
+     * Define service used to serve downscaled variants of images. When defined, requests with
+     * {@link ImageVariantService#WIDTH_PARAMETER} parameter are answered with variant of requested width.
+     * @param service Variant service, or null to always serve originals
+     */
+    public void setVariantService(ImageVariantService service) {
+        variantService = service;
+    }
+
+    /**
+     * Get service used to serve downscaled variants of images
+     * @return Variant service, or null if not defined
+     */
+    public ImageVariantService getVariantService() {
+        return variantService;
+    }
+
+    @Override
+    public boolean handleRequest(VaadinSession session, VaadinRequest request, VaadinResponse response)
+            throws IOException {
+
+        String path = request.getPathInfo();
+        if(path == null || !path.startsWith(prefix)) {
+            return false;
+        }
+
+        String method = request.getMethod();
+        boolean head = "HEAD".equals(method);
+        if(!head && !"GET".equals(method)) {
+            return false;
+        }
+
+        String name = path.substring(prefix.length());
+        if(!isValidName(name)) {
+            return false;
+        }
+
+        GalleryImage image = locate(name);
+        if(image == null) {
+            return false;
+        }
+
+        if(variantService != null) {
+            int width = parseWidth(request.getParameter(ImageVariantService.WIDTH_PARAMETER));
+            if(width > 0) {
+                GalleryImage variant = variantService.getVariant(image, width);
+                if(variant != null) {
+                    image = variant;
+                }
+            }
+        }
+
+        String etag = image.getETag();
+        long lastModified = image.getLastModified();
+
+        response.setHeader("ETag", etag);
+        if(lastModified > 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        response.setHeader("Cache-Control", "public, max-age=" + maxAgeSeconds);
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if(isNotModified(request, etag, lastModified)) {
+            response.setStatus(SC_NOT_MODIFIED);
+            return true;
+        }
+
+        byte[] bytes = null;
+        long length = image.getLength();
+        if(!head && image.getFile() == null) {
+            bytes = getCachedBytes(image);
+            if(bytes != null) {
+                length = bytes.length;
+            }
+        }
+
+        long[] range = null;
+        if(!head && isRangeValid(request, etag, lastModified)) {
+            String rangeHeader = request.getHeader("Range");
+            if(rangeHeader != null) {
+                range = parseRange(rangeHeader, length);
+                if(range == UNSATISFIABLE) {
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.setStatus(SC_RANGE_NOT_SATISFIABLE);
+                    return true;
+                }
+            }
+        }
+
+        long start = range == null ? 0 : range[0];
+        long count = range == null ? length : range[1] - range[0] + 1;
+
+        response.setContentType(image.getContentType());
+        response.setHeader("Content-Length", Long.toString(count));
+        if(range != null) {
+            response.setStatus(SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
+
+        if(head || count == 0) {
+            return true;
+        }
+
+        OutputStream out = response.getOutputStream();
+        if(bytes != null) {
+            out.write(bytes, (int) start, (int) count);
+        } else if(image.getFile() != null) {
+            transferFile(image.getFile(), start, count, out);
+        } else {
+            copyStream(image, start, count, out);
+        }
+        return true;
+    }
+
+    /**
+     * Locate image with given name. Images not backed by files (e.g. classpath resources) are remembered, as
+     * resolving their length and modification time opens connection to resource. File backed images are located
+     * again for every request, so changes of files are noticed.
+     * @param name Name of image
+     * @return Image, or null if not found
+     * @throws IOException If resolving image fails
+     */
+    protected GalleryImage locate(String name) throws IOException {
+        GalleryImage image = locatedImages.get(name);
+        if(image == null) {
+            image = locator.locate(name);
+            if(image != null && image.getFile() == null) {
+                locatedImages.put(name, image);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Forget remembered images not backed by files. Call this if resources served have been changed.
+     */
+    public void clearLocatedImages() {
+        locatedImages.clear();
+    }
+
+    /**
+     * Parse value of Range header. Only single byte range is supported.
+     * @param header Value of header
+     * @param length Length of content
+     * @return First and last byte index, UNSATISFIABLE if range is outside content, or null if header should be
+     * ignored
+     */
+    private static long[] parseRange(String header, long length) {
+        header = header.trim();
+        if(!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if(dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if(first.isEmpty()) {
+                if(last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if(suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = length - 1;
+                if(!last.isEmpty()) {
+                    long lastByte = Long.parseLong(last);
+                    if(lastByte < start) {
+                        return null;
+                    }
+                    end = Math.min(end, lastByte);
+                }
+            }
+            if(start < 0 || start >= length) {
+                return UNSATISFIABLE;
+            }
+            return new long[] { start, end };
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int parseWidth(String value) {
+        if(value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Check that name does not try to escape from image path
+     */
+    private static boolean isValidName(String name) {
+        if(name.isEmpty() || name.startsWith("/") || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0) {
+            return false;
+        }
+        for(String part : name.split("/")) {
+            if(part.isEmpty() || part.equals(".") || part.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check conditional headers. If-None-Match takes precedence over If-Modified-Since.
+     */
+    private static boolean isNotModified(VaadinRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if(ifNoneMatch != null) {
+            return matchesETag(ifNoneMatch, etag, true);
+        }
+        if(lastModified > 0) {
+            long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+            return ifModifiedSince >= 0 && lastModified / 1000L <= ifModifiedSince / 1000L;
+        }
+        return false;
+    }
+
+    /**
+     * Check if Range header should be followed. It is ignored if If-Range does not match current version.
+     */
+    private static boolean isRangeValid(VaadinRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if(ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if(ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return matchesETag(ifRange, etag, false);
+        }
+        long date = getDateHeader(request, "If-Range");
+        return date >= 0 && lastModified > 0 && date / 1000L == lastModified / 1000L;
+    }
+
+    private static boolean matchesETag(String header, String etag, boolean weakComparison) {
+        for(String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if(candidate.equals("*")) {
+                return true;
+            }
+            if(candidate.startsWith("W/")) {
+                if(!weakComparison) {
+                    continue;
+                }
+                candidate = candidate.substring(2);
+            }
+            if(candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader(VaadinRequest request, String header) {
+        try {
+            return request.getDateHeader(header);
+        } catch(IllegalArgumentException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Get content of image from memory cache, or read it to cache if it is small enough
+     * @param image Image not backed by file
+     * @return Content, or null if image is not cached
+     */
+    private byte[] getCachedBytes(GalleryImage image) throws IOException {
+        if(cache == null || !cache.isCacheable(image.getLength())) {
+            return null;
+        }
+        String key = image.getName() + ":" + image.getETag();
+        byte[] bytes = cache.get(key);
+        if(bytes == null) {
+            bytes = readFully(image);
+            cache.put(key, bytes);
+        }
+        return bytes;
+    }
+
+    private static byte[] readFully(GalleryImage image) throws IOException {
+        InputStream in = image.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) image.getLength());
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void transferFile(File file, long start, long count, OutputStream out) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long end = start + count;
+            while(position < end) {
+                long written = channel.transferTo(position, end - position, target);
+                if(written <= 0) {
+                    throw new IOException("File " + file + " was truncated while serving it");
+                }
+                position += written;
+            }
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void copyStream(GalleryImage image, long start, long count, OutputStream out) throws IOException {
+        InputStream in = image.openStream();
+        try {
+            long skipped = 0;
+            while(skipped < start) {
+                long n = in.skip(start - skipped);
+                if(n <= 0) {
+                    throw new IOException("Image " + image.getName() + " is shorter than expected");
+                }
+                skipped += n;
+            }
+            byte[] buffer = new byte[8192];
+            long remaining = count;
+            while(remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if(read < 0) {
+                    throw new IOException("Image " + image.getName() + " is shorter than expected");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch(IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close image stream", e);
+        }
+    }
+}
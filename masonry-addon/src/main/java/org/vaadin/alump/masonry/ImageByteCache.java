@@ -0,0 +1,157 @@
+/**
+ * ImageByteCache.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In memory LRU cache of image bytes bounded by total size of cached content. Instances are thread safe.
+ */
+public class ImageByteCache implements Serializable {
+
+    /**
+     * Default maximum total size of cached content (32MB)
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024L * 1024L;
+
+    /**
+     * Default maximum size of single cached entry (1MB)
+     */
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 1024 * 1024;
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long size = 0;
+
+    /**
+     * Create new cache with default limits
+     */
+    public ImageByteCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRY_BYTES);
+    }
+
+    /**
+     * Create new cache
+     * @param maxBytes Maximum total size of cached content
+     * @param maxEntryBytes Maximum size of single entry, larger entries are not cached
+     */
+    public ImageByteCache(long maxBytes, int maxEntryBytes) {
+        if(maxBytes < 0 || maxEntryBytes < 0) {
+            throw new IllegalArgumentException("Cache limits can not be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(maxBytes, maxEntryBytes);
+    }
+
+    /**
+     * Get maximum total size of cached content
+     * @return Size in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get maximum size of single entry
+     * @return Size in bytes
+     */
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Check if content of given length would be cached
+     * @param length Length of content in bytes
+     * @return true if content is small enough to be cached
+     */
+    public boolean isCacheable(long length) {
+        return length <= maxEntryBytes;
+    }
+
+    /**
+     * Get cached content. Marks entry as recently used.
+     * @param key Key of content
+     * @return Cached bytes (do not modify), or null if not cached
+     */
+    public synchronized byte[] get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Store content to cache. Least recently used entries are dropped until content fits in.
+     * @param key Key of content
+     * @param bytes Content (not copied, do not modify after calling this)
+     * @return true if content was stored, false if it was too large to be cached
+     */
+    public synchronized boolean put(String key, byte[] bytes) {
+        if(!isCacheable(bytes.length)) {
+            return false;
+        }
+        remove(key);
+        entries.put(key, bytes);
+        size += bytes.length;
+
+        Iterator<Map.Entry<String, byte[]>> iter = entries.entrySet().iterator();
+        while(size > maxBytes && iter.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iter.next();
+            size -= eldest.getValue().length;
+            iter.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Remove content from cache
+     * @param key Key of content
+     */
+    public synchronized void remove(String key) {
+        byte[] removed = entries.remove(key);
+        if(removed != null) {
+            size -= removed.length;
+        }
+    }
+
+    /**
+     * Remove all cached content
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Get total size of cached content
+     * @return Size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get number of cached entries
+     * @return Number of entries
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * ImageDimensions.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import java.io.Serializable;
+
+/**
+ * Natural size of image
+ */
+public class ImageDimensions implements Serializable {
+
+    private final int width;
+    private final int height;
+
+    public ImageDimensions(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Get natural width of image
+     * @return Width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get natural height of image
+     * @return Height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get aspect ratio of image
+     * @return Width divided by height
+     */
+    public double getAspectRatio() {
+        return (double) width / height;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof ImageDimensions)) {
+            return false;
+        }
+        ImageDimensions other = (ImageDimensions) obj;
+        return width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return width * 31 + height;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
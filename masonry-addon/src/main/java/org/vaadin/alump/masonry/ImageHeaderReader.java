@@ -0,0 +1,314 @@
+/**
+ * ImageHeaderReader.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads natural size of JPEG, PNG, GIF and WebP images from their headers, without decoding pixel data. EXIF
+ * orientation of JPEG images is taken into account, so returned size matches with the size browsers render the image.
+ */
+public class ImageHeaderReader {
+
+    /**
+     * Maximum number of bytes skipped when looking for JPEG frame header (EXIF data can be large)
+     */
+    public static final int MAX_JPEG_SCAN_BYTES = 1024 * 1024;
+
+    /**
+     * Maximum number of bytes read from start of EXIF segment when looking for orientation
+     */
+    public static final int MAX_EXIF_BYTES = 4096;
+
+    private ImageHeaderReader() {
+    }
+
+    /**
+     * Read dimensions of image. Stream is read only as far as needed, and it's not closed.
+     * @param stream Stream of image data
+     * @return Dimensions of image, or null if format is not supported or header is invalid
+     * @throws IOException If reading of stream fails
+     */
+    public static ImageDimensions read(InputStream stream) throws IOException {
+        byte[] header = new byte[30];
+        int length = readFully(stream, header, 0, 12);
+
+        try {
+            if(length >= 2 && u8(header, 0) == 0xFF && u8(header, 1) == 0xD8) {
+                return readJpeg(stream, header, length);
+            } else if(length >= 8 && u8(header, 0) == 0x89 && header[1] == 'P' && header[2] == 'N'
+                    && header[3] == 'G') {
+                // Signature (8) + chunk length (4), chunk type (4), width (4) and height (4)
+                length += readFully(stream, header, length, 24 - length);
+                if(length < 24 || !"IHDR".equals(new String(header, 12, 4, "US-ASCII"))) {
+                    return null;
+                }
+                return create(u32be(header, 16), u32be(header, 20));
+            } else if(length >= 10 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F') {
+                return create(u16le(header, 6), u16le(header, 8));
+            } else if(length >= 12 && "RIFF".equals(new String(header, 0, 4, "US-ASCII"))
+                    && "WEBP".equals(new String(header, 8, 4, "US-ASCII"))) {
+                length += readFully(stream, header, length, 30 - length);
+                return readWebp(header, length);
+            }
+        } catch(EOFException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static ImageDimensions readJpeg(InputStream stream, byte[] header, int length) throws IOException {
+        // Bytes already read after SOI marker are handled as start of the segment stream
+        InputStream input = new PrefixedInputStream(header, 2, length, stream);
+        long scanned = 0;
+        int orientation = 1;
+
+        while(scanned < MAX_JPEG_SCAN_BYTES) {
+            int marker = input.read();
+            if(marker < 0) {
+                return null;
+            }
+            if(marker != 0xFF) {
+                ++scanned;
+                continue;
+            }
+            int type = input.read();
+            while(type == 0xFF) {
+                type = input.read();
+            }
+            if(type < 0 || type == 0xD9 || type == 0xDA) {
+                // End of image or start of scan without frame header
+                return null;
+            }
+            if(type == 0x01 || (type >= 0xD0 && type <= 0xD7)) {
+                // Markers without payload
+                continue;
+            }
+
+            int segmentLength = (readByte(input) << 8) | readByte(input);
+            if(segmentLength < 2) {
+                return null;
+            }
+            boolean startOfFrame = type >= 0xC0 && type <= 0xCF && type != 0xC4 && type != 0xC8 && type != 0xCC;
+            if(startOfFrame) {
+                readByte(input); // precision
+                int height = (readByte(input) << 8) | readByte(input);
+                int width = (readByte(input) << 8) | readByte(input);
+                // Orientations 5-8 rotate image by 90 degrees
+                return orientation >= 5 && orientation <= 8 ? create(height, width) : create(width, height);
+            }
+            if(type == 0xE1) {
+                // IFD0 is at start of EXIF data, thumbnail and other data after it is skipped
+                byte[] segment = new byte[Math.min(segmentLength - 2, MAX_EXIF_BYTES)];
+                if(readFully(input, segment, 0, segment.length) < segment.length) {
+                    return null;
+                }
+                int exifOrientation = readExifOrientation(segment);
+                if(exifOrientation > 0) {
+                    orientation = exifOrientation;
+                }
+                skipFully(input, segmentLength - 2 - segment.length);
+            } else {
+                skipFully(input, segmentLength - 2);
+            }
+            scanned += segmentLength + 2;
+        }
+        return null;
+    }
+
+    /**
+     * Read orientation tag from IFD0 of EXIF data in APP1 segment
+     * @param segment Payload of APP1 segment
+     * @return Orientation (1-8), or -1 if segment does not define it
+     */
+    private static int readExifOrientation(byte[] segment) throws IOException {
+        if(segment.length < 14 || !"Exif".equals(new String(segment, 0, 4, "US-ASCII")) || segment[4] != 0
+                || segment[5] != 0) {
+            return -1;
+        }
+        int tiff = 6;
+        boolean littleEndian;
+        if(segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if(segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return -1;
+        }
+        if(u16(segment, tiff + 2, littleEndian) != 42) {
+            return -1;
+        }
+        long ifd = tiff + u32(segment, tiff + 4, littleEndian);
+        if(ifd + 2 > segment.length) {
+            return -1;
+        }
+        int entries = u16(segment, (int) ifd, littleEndian);
+        for(int i = 0; i < entries; ++i) {
+            int entry = (int) ifd + 2 + i * 12;
+            if(entry + 12 > segment.length) {
+                break;
+            }
+            // Orientation tag, SHORT value is stored to start of value field
+            if(u16(segment, entry, littleEndian) == 0x0112 && u16(segment, entry + 2, littleEndian) == 3) {
+                return u16(segment, entry + 8, littleEndian);
+            }
+        }
+        return -1;
+    }
+
+    private static ImageDimensions readWebp(byte[] header, int length) throws IOException {
+        if(length < 30) {
+            return null;
+        }
+        String chunk = new String(header, 12, 4, "US-ASCII");
+        if("VP8 ".equals(chunk)) {
+            if(u8(header, 23) != 0x9D || u8(header, 24) != 0x01 || u8(header, 25) != 0x2A) {
+                return null;
+            }
+            return create(u16le(header, 26) & 0x3FFF, u16le(header, 28) & 0x3FFF);
+        } else if("VP8L".equals(chunk)) {
+            if(u8(header, 20) != 0x2F) {
+                return null;
+            }
+            int b0 = u8(header, 21);
+            int b1 = u8(header, 22);
+            int b2 = u8(header, 23);
+            int b3 = u8(header, 24);
+            int width = 1 + (b0 | ((b1 & 0x3F) << 8));
+            int height = 1 + ((b1 >> 6) | (b2 << 2) | ((b3 & 0x0F) << 10));
+            return create(width, height);
+        } else if("VP8X".equals(chunk)) {
+            int width = 1 + (u8(header, 24) | (u8(header, 25) << 8) | (u8(header, 26) << 16));
+            int height = 1 + (u8(header, 27) | (u8(header, 28) << 8) | (u8(header, 29) << 16));
+            return create(width, height);
+        }
+        return null;
+    }
+
+    private static ImageDimensions create(long width, long height) {
+        if(width <= 0 || height <= 0 || width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new ImageDimensions((int) width, (int) height);
+    }
+
+    private static int readFully(InputStream stream, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while(total < length) {
+            int read = stream.read(buffer, offset + total, length - total);
+            if(read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static int readByte(InputStream stream) throws IOException {
+        int value = stream.read();
+        if(value < 0) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private static void skipFully(InputStream stream, long count) throws IOException {
+        while(count > 0) {
+            long skipped = stream.skip(count);
+            if(skipped <= 0) {
+                readByte(stream);
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static int u8(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    private static int u16le(byte[] data, int offset) {
+        return u8(data, offset) | (u8(data, offset + 1) << 8);
+    }
+
+    private static int u16(byte[] data, int offset, boolean littleEndian) {
+        return littleEndian ? u16le(data, offset) : (u8(data, offset) << 8) | u8(data, offset + 1);
+    }
+
+    private static long u32(byte[] data, int offset, boolean littleEndian) {
+        if(!littleEndian) {
+            return u32be(data, offset);
+        }
+        return ((long) u8(data, offset + 3) << 24) | (u8(data, offset + 2) << 16) | (u8(data, offset + 1) << 8)
+                | u8(data, offset);
+    }
+
+    private static long u32be(byte[] data, int offset) {
+        return ((long) u8(data, offset) << 24) | (u8(data, offset + 1) << 16) | (u8(data, offset + 2) << 8)
+                | u8(data, offset + 3);
+    }
+
+    /**
+     * Input stream that first returns bytes already read to buffer
+     */
+    private static class PrefixedInputStream extends InputStream {
+        private final byte[] prefix;
+        private int position;
+        private final int end;
+        private final InputStream stream;
+
+        PrefixedInputStream(byte[] prefix, int start, int end, InputStream stream) {
+            this.prefix = prefix;
+            this.position = start;
+            this.end = end;
+            this.stream = stream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(position < end) {
+                return prefix[position++] & 0xFF;
+            }
+            return stream.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if(position < end) {
+                int count = Math.min(length, end - position);
+                System.arraycopy(prefix, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+            return stream.read(buffer, offset, length);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if(position < end) {
+                long skipped = Math.min(n, end - position);
+                position += skipped;
+                return skipped;
+            }
+            return stream.skip(n);
+        }
+    }
+}
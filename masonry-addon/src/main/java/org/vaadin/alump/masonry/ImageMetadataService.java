@@ -0,0 +1,264 @@
+/**
+ * ImageMetadataService.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import com.vaadin.server.ClassResource;
+import com.vaadin.server.ConnectorResource;
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.FileResource;
+import com.vaadin.server.Resource;
+import com.vaadin.server.StreamResource;
+import com.vaadin.server.ThemeResource;
+import com.vaadin.server.VaadinService;
+import com.vaadin.ui.UI;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves natural sizes of images served from ThemeResources, ClassResources, FileResources and StreamResources by
+ * reading image headers. Results (also failures) are cached in bounded LRU cache. StreamResources are session specific
+ * objects, so those are cached only with weak keys and are dropped when resource itself is not used anymore.
+ * Instances are thread safe, so same instance can be shared by all sessions.
+ * Notice that probing reads image data synchronously in the calling thread. When used by MasonryLayout, this happens
+ * while session is locked, so resources that are slow to open (eg. StreamResources fetching data from remote
+ * services) will delay the response. Prefer explicit size hints for those.
+ */
+public class ImageMetadataService implements Serializable {
+
+    /**
+     * Default maximum number of cached entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final static Logger LOGGER = Logger.getLogger(ImageMetadataService.class.getName());
+
+    // Cached for resources that could not be probed, so they are not probed again
+    private final static ImageDimensions UNKNOWN = new ImageDimensions(0, 0);
+
+    private static ImageMetadataService defaultInstance;
+
+    private final LruCache cache;
+
+    // Weak keys, so session specific stream resources are not kept alive by shared service
+    private transient Map<Object, ImageDimensions> streamCache;
+
+    /**
+     * LinkedHashMap in access order that drops least recently used entry when it gets too large
+     */
+    private static class LruCache extends LinkedHashMap<Object, ImageDimensions> {
+        private final int maxEntries;
+
+        LruCache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, ImageDimensions> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    /**
+     * Create new service with default cache size
+     */
+    public ImageMetadataService() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create new service
+     * @param maxEntries Maximum number of images cached
+     */
+    public ImageMetadataService(int maxEntries) {
+        if(maxEntries < 1) {
+            throw new IllegalArgumentException("Cache has to have room for at least one entry");
+        }
+        cache = new LruCache(maxEntries);
+    }
+
+    /**
+     * Get service instance shared by whole application
+     * @return Shared instance with default cache size
+     */
+    public static synchronized ImageMetadataService getDefault() {
+        if(defaultInstance == null) {
+            defaultInstance = new ImageMetadataService();
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Get natural size of image resource
+     * @param resource Image resource
+     * @param ui UI used to resolve theme resources, can be null for other resources
+     * @return Dimensions of image, or null if resource is not supported or its size could not be resolved
+     */
+    public ImageDimensions getDimensions(Resource resource, UI ui) {
+        Object key = getCacheKey(resource, ui);
+        if(key == null) {
+            return null;
+        }
+
+        ImageDimensions dimensions;
+        synchronized(cache) {
+            dimensions = getCache(key).get(key);
+        }
+        if(dimensions == null) {
+            dimensions = probe(resource, ui);
+            synchronized(cache) {
+                getCache(key).put(key, dimensions == null ? UNKNOWN : dimensions);
+            }
+        }
+        return dimensions == UNKNOWN ? null : dimensions;
+    }
+
+    /**
+     * Remove all cached entries
+     */
+    public void clear() {
+        synchronized(cache) {
+            cache.clear();
+            streamCache = null;
+        }
+    }
+
+    /**
+     * Get number of cached entries
+     * @return Number of entries
+     */
+    public int getCacheSize() {
+        synchronized(cache) {
+            return cache.size() + (streamCache == null ? 0 : streamCache.size());
+        }
+    }
+
+    // Must be called while holding lock of cache
+    private Map<Object, ImageDimensions> getCache(Object key) {
+        if(!(key instanceof StreamResource)) {
+            return cache;
+        }
+        if(streamCache == null) {
+            streamCache = new WeakHashMap<Object, ImageDimensions>();
+        }
+        return streamCache;
+    }
+
+    /**
+     * Resolve key used to cache dimensions of resource
+     * @param resource Image resource
+     * @param ui UI used to resolve theme resources
+     * @return Key for resource, or null if resource is not supported
+     */
+    protected Object getCacheKey(Resource resource, UI ui) {
+        if(resource instanceof ThemeResource) {
+            if(ui == null || ui.getTheme() == null) {
+                return null;
+            }
+            return "theme:" + ui.getTheme() + "/" + ((ThemeResource) resource).getResourceId();
+        } else if(resource instanceof FileResource) {
+            File file = ((FileResource) resource).getSourceFile();
+            return "file:" + file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+        } else if(resource instanceof ClassResource) {
+            Class<?> associatedClass = getAssociatedClass((ClassResource) resource);
+            if(associatedClass == null) {
+                return null;
+            }
+            return Arrays.asList(associatedClass, ((ClassResource) resource).getFilename());
+        } else if(resource instanceof StreamResource) {
+            return resource;
+        }
+        return null;
+    }
+
+    /**
+     * Resolve class used to load class resource (ClassResource does not expose it publicly)
+     * @param resource Class resource
+     * @return Associated class, or null if it could not be resolved
+     */
+    protected static Class<?> getAssociatedClass(ClassResource resource) {
+        try {
+            Method method = ClassResource.class.getDeclaredMethod("getAssociatedClass");
+            method.setAccessible(true);
+            return (Class<?>) method.invoke(resource);
+        } catch(Exception e) {
+            LOGGER.log(Level.FINE, "Failed to resolve associated class of " + resource.getFilename(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Read dimensions of resource
+     * @param resource Image resource
+     * @param ui UI used to resolve theme resources
+     * @return Dimensions, or null if those could not be resolved
+     */
+    protected ImageDimensions probe(Resource resource, UI ui) {
+        InputStream stream = null;
+        try {
+            stream = openStream(resource, ui);
+            return stream == null ? null : ImageHeaderReader.read(stream);
+        } catch(IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read image header of " + resource, e);
+            return null;
+        } finally {
+            if(stream != null) {
+                try {
+                    stream.close();
+                } catch(IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to close image stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open stream to image data
+     * @param resource Image resource
+     * @param ui UI used to resolve theme resources, resolved with current VaadinService
+     * @return Stream, or null if not available
+     * @throws IOException If opening fails
+     */
+    protected InputStream openStream(Resource resource, UI ui) throws IOException {
+        if(resource instanceof ThemeResource) {
+            VaadinService service = VaadinService.getCurrent();
+            if(service == null) {
+                return null;
+            }
+            return service.getThemeResourceAsStream(ui, ui.getTheme(), ((ThemeResource) resource).getResourceId());
+        } else if(resource instanceof FileResource) {
+            return new FileInputStream(((FileResource) resource).getSourceFile());
+        } else if(resource instanceof ConnectorResource) {
+            DownloadStream download = ((ConnectorResource) resource).getStream();
+            return download == null ? null : download.getStream();
+        }
+        return null;
+    }
+}
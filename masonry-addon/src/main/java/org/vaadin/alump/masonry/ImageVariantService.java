@@ -0,0 +1,620 @@
+/**
+ * ImageVariantService.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates downscaled variants of gallery images with ImageIO and stores them to disk cache. Variants are served by
+ * {@link GalleryImageRequestHandler} when width is requested with {@link #WIDTH_PARAMETER} parameter, and
+ * {@link MasonryLayout} can give srcset and sizes attributes to item images pointing to those variants. Concurrent
+ * requests of same variant are collapsed to single resize job. Disk cache is limited to
+ * {@link #setMaxCacheSize(long) max cache size}, least recently used variants are deleted when it is exceeded.
+ * Instances are thread safe.
+ */
+public class ImageVariantService implements Serializable {
+
+    /**
+     * Name of request parameter defining width of variant
+     */
+    public static final String WIDTH_PARAMETER = "w";
+
+    /**
+     * Widths of variants are rounded up to multiple of this, to limit number of variants generated
+     */
+    public static final int WIDTH_STEP = 50;
+
+    /**
+     * Default maximum width of variants
+     */
+    public static final int DEFAULT_MAX_WIDTH = 2400;
+
+    /**
+     * Default maximum size of variants in disk cache (256 MB)
+     */
+    public static final long DEFAULT_MAX_CACHE_SIZE = 256L * 1024L * 1024L;
+
+    // Max number of remembered variants that use original image
+    private final static int MAX_ORIGINALS_USED = 10000;
+
+    // Last modification time of variant is updated when it's served, but not more often than this
+    private final static long TOUCH_INTERVAL_MS = 60L * 60L * 1000L;
+
+    private final static Logger LOGGER = Logger.getLogger(ImageVariantService.class.getName());
+
+    private final File cacheDirectory;
+    private final String urlPrefix;
+    private volatile float[] pixelRatios = new float[] { 1.0f, 2.0f };
+    private volatile int maxWidth = DEFAULT_MAX_WIDTH;
+    private volatile float jpegQuality = 0.85f;
+    private volatile long maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+    // Running resize jobs by variant key
+    private transient ConcurrentHashMap<String, FutureTask<File>> jobs = new ConcurrentHashMap<String, FutureTask<File>>();
+    // Keys of variants that are not generated because original is small enough (or not readable), least recently
+    // used keys are forgotten
+    private transient Map<String, Boolean> originalsUsed = createOriginalsUsed();
+    // Bytes in disk cache, -1 if not counted yet. Guarded by cacheLock.
+    private transient long cacheBytes = -1L;
+    private transient Object cacheLock = new Object();
+
+    /**
+     * Create new variant service
+     * @param cacheDirectory Directory where generated variants are stored, created if it does not exist
+     * @param urlPrefix Only image URLs starting with this prefix are given srcset (e.g. "images/")
+     */
+    public ImageVariantService(File cacheDirectory, String urlPrefix) {
+        if(cacheDirectory == null || urlPrefix == null) {
+            throw new IllegalArgumentException("Cache directory and URL prefix are required");
+        }
+        this.cacheDirectory = cacheDirectory;
+        this.urlPrefix = urlPrefix;
+    }
+
+    /**
+     * Get directory where variants are stored
+     * @return Cache directory
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Get prefix of image URLs given srcset
+     * @return URL prefix
+     */
+    public String getUrlPrefix() {
+        return urlPrefix;
+    }
+
+    /**
+     * Define device pixel ratios variants are generated for
+     * @param ratios Pixel ratios, e.g. 1 and 2
+     */
+    public void setPixelRatios(float... ratios) {
+        if(ratios.length == 0) {
+            throw new IllegalArgumentException("At least one pixel ratio is required");
+        }
+        for(float ratio : ratios) {
+            if(ratio <= 0f) {
+                throw new IllegalArgumentException("Pixel ratios have to be positive");
+            }
+        }
+        pixelRatios = ratios.clone();
+    }
+
+    /**
+     * Get device pixel ratios variants are generated for
+     * @return Pixel ratios
+     */
+    public float[] getPixelRatios() {
+        return pixelRatios.clone();
+    }
+
+    /**
+     * Define maximum width of variants. Larger widths are limited to this.
+     * @param maxWidth Width in pixels
+     */
+    public void setMaxWidth(int maxWidth) {
+        if(maxWidth < WIDTH_STEP) {
+            throw new IllegalArgumentException("Max width has to be at least " + WIDTH_STEP);
+        }
+        this.maxWidth = maxWidth;
+    }
+
+    /**
+     * Get maximum width of variants
+     * @return Width in pixels
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Define quality of JPEG variants
+     * @param quality Quality between 0 and 1
+     */
+    public void setJpegQuality(float quality) {
+        if(quality <= 0f || quality > 1f) {
+            throw new IllegalArgumentException("Quality has to be between 0 and 1");
+        }
+        jpegQuality = quality;
+    }
+
+    /**
+     * Get quality of JPEG variants
+     * @return Quality between 0 and 1
+     */
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    /**
+     * Define maximum size of variants in disk cache. When exceeded, least recently used variants are deleted.
+     * @param bytes Size in bytes
+     */
+    public void setMaxCacheSize(long bytes) {
+        if(bytes < 1) {
+            throw new IllegalArgumentException("Max cache size has to be positive");
+        }
+        maxCacheSize = bytes;
+    }
+
+    /**
+     * Get maximum size of variants in disk cache
+     * @return Size in bytes
+     */
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Round width to width of variant actually generated
+     * @param width Requested width in pixels
+     * @return Width rounded up to {@link #WIDTH_STEP} and limited to max width
+     */
+    public int normalizeWidth(int width) {
+        int steps = (Math.max(1, width) + WIDTH_STEP - 1) / WIDTH_STEP;
+        return Math.min(maxWidth - maxWidth % WIDTH_STEP, steps * WIDTH_STEP);
+    }
+
+    /**
+     * Check if srcset should be generated for given image URL
+     * @param url Image URL
+     * @return true if URL starts with URL prefix
+     */
+    public boolean acceptsUrl(String url) {
+        return url != null && url.startsWith(urlPrefix);
+    }
+
+    /**
+     * Get URL of variant
+     * @param url URL of original image
+     * @param width Width of variant
+     * @return URL of variant
+     */
+    public String getVariantUrl(String url, int width) {
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + WIDTH_PARAMETER + "=" + normalizeWidth(width);
+    }
+
+    /**
+     * Build value of srcset attribute with variant for each pixel ratio
+     * @param url URL of original image
+     * @param displayWidth Width image is shown in CSS pixels
+     * @return srcset value
+     */
+    public String getSrcset(String url, int displayWidth) {
+        Set<Integer> widths = new LinkedHashSet<Integer>();
+        for(float ratio : pixelRatios) {
+            widths.add(normalizeWidth(Math.round(displayWidth * ratio)));
+        }
+        StringBuilder srcset = new StringBuilder();
+        for(Integer width : widths) {
+            if(srcset.length() > 0) {
+                srcset.append(", ");
+            }
+            srcset.append(getVariantUrl(url, width)).append(' ').append(width).append('w');
+        }
+        return srcset.toString();
+    }
+
+    /**
+     * Build value of sizes attribute. Image is shown in given width, unless viewport is narrower than that.
+     * @param displayWidth Width image is shown in CSS pixels
+     * @return sizes value
+     */
+    public String getSizes(int displayWidth) {
+        return "(max-width: " + displayWidth + "px) 100vw, " + displayWidth + "px";
+    }
+
+    /**
+     * Get variant of image, generating it if it is not in disk cache yet. If same variant is already being generated
+     * by another thread, waits for that instead of generating it again.
+     * @param image Original image
+     * @param width Requested width, normalized with {@link #normalizeWidth(int)}
+     * @return Variant image, or null if original should be used (it is not wider than variant, or can not be read)
+     * @throws IOException If generating variant fails
+     */
+    public GalleryImage getVariant(final GalleryImage image, int width) throws IOException {
+        final int variantWidth = normalizeWidth(width);
+        final String key = getVariantKey(image, variantWidth);
+        synchronized(originalsUsed) {
+            if(originalsUsed.get(key) != null) {
+                return null;
+            }
+        }
+
+        File file = getVariantFile(key, getFormat(image));
+        if(!file.isFile()) {
+            FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    return generateVariant(image, variantWidth, key);
+                }
+            });
+            FutureTask<File> running = jobs.putIfAbsent(key, task);
+            if(running == null) {
+                running = task;
+                try {
+                    task.run();
+                } finally {
+                    jobs.remove(key, task);
+                }
+            }
+            file = waitFor(running);
+        }
+
+        if(file == null) {
+            synchronized(originalsUsed) {
+                originalsUsed.put(key, Boolean.TRUE);
+            }
+            return null;
+        }
+        touch(file);
+        return GalleryImage.forFile(file.getName(), file);
+    }
+
+    /**
+     * Remove all generated variants from disk cache
+     */
+    public void clear() {
+        synchronized(originalsUsed) {
+            originalsUsed.clear();
+        }
+        synchronized(cacheLock) {
+            for(File file : listVariants()) {
+                if(!file.delete()) {
+                    LOGGER.fine("Failed to delete " + file);
+                }
+            }
+            cacheBytes = -1L;
+        }
+    }
+
+    private static Map<String, Boolean> createOriginalsUsed() {
+        return new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_ORIGINALS_USED;
+            }
+        };
+    }
+
+    private File[] listVariants() {
+        File[] files = cacheDirectory.listFiles();
+        if(files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for(File file : files) {
+            if(file.getName().startsWith("variant-")) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    /**
+     * Update last modification time of variant, used as last access time when cache is trimmed. Time is only
+     * updated if it is older than touch interval, to avoid writing to disk on every request.
+     */
+    private static void touch(File file) {
+        long now = System.currentTimeMillis();
+        if(now - file.lastModified() > TOUCH_INTERVAL_MS && !file.setLastModified(now)) {
+            LOGGER.fine("Failed to update modification time of " + file);
+        }
+    }
+
+    /**
+     * Count new variant to size of disk cache, and delete least recently used variants if cache is too large.
+     * Variants are deleted until cache is below 90% of max size, so trimming is not done for every new variant.
+     * @param added Variant added to cache
+     */
+    private void variantAdded(File added) {
+        synchronized(cacheLock) {
+            if(cacheBytes < 0) {
+                cacheBytes = 0;
+                for(File file : listVariants()) {
+                    cacheBytes += file.length();
+                }
+            } else {
+                cacheBytes += added.length();
+            }
+            if(cacheBytes <= maxCacheSize) {
+                return;
+            }
+
+            File[] files = listVariants();
+            final long[] modified = new long[files.length];
+            Integer[] order = new Integer[files.length];
+            for(int i = 0; i < files.length; ++i) {
+                modified[i] = files[i].lastModified();
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+                }
+            });
+
+            long limit = maxCacheSize - maxCacheSize / 10;
+            for(Integer index : order) {
+                if(cacheBytes <= limit) {
+                    break;
+                }
+                File file = files[index];
+                if(file.equals(added)) {
+                    continue;
+                }
+                long length = file.length();
+                if(file.delete()) {
+                    cacheBytes -= length;
+                } else {
+                    LOGGER.fine("Failed to delete " + file);
+                }
+            }
+        }
+    }
+
+    private static File waitFor(FutureTask<File> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    return task.get();
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                } catch(ExecutionException e) {
+                    if(e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Failed to generate image variant", e.getCause());
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String getVariantKey(GalleryImage image, int width) {
+        String source = image.getName() + "|" + image.getETag() + "|" + width + "|" + jpegQuality;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex = new StringBuilder("variant-");
+            for(byte b : digest.digest(source.getBytes("UTF-8"))) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        } catch(UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not available", e);
+        }
+    }
+
+    private File getVariantFile(String key, String format) {
+        return new File(cacheDirectory, key + "." + format);
+    }
+
+    /**
+     * Resolve format of variant. PNG and GIF images are stored as PNG to keep transparency, others as JPEG.
+     */
+    private static String getFormat(GalleryImage image) {
+        String type = image.getContentType();
+        return "image/png".equals(type) || "image/gif".equals(type) ? "png" : "jpg";
+    }
+
+    /**
+     * Read original, downscale it and write it to disk cache
+     * @return Variant file, or null if original should be used
+     */
+    protected File generateVariant(GalleryImage image, int width, String key) throws IOException {
+        BufferedImage original;
+        InputStream in = image.openStream();
+        try {
+            original = read(in, width);
+        } catch(IOException e) {
+            LOGGER.log(Level.FINE, "Failed to decode image " + image.getName(), e);
+            return null;
+        } finally {
+            in.close();
+        }
+
+        if(original == null) {
+            return null;
+        }
+
+        String format = getFormat(image);
+        BufferedImage scaled = resize(original, width, "png".equals(format));
+
+        if(!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() && !cacheDirectory.isDirectory()) {
+            throw new IOException("Failed to create cache directory " + cacheDirectory);
+        }
+        File target = getVariantFile(key, format);
+        File temp = File.createTempFile(key, ".tmp", cacheDirectory);
+        try {
+            write(scaled, format, temp);
+            if(!temp.renameTo(target) && !target.isFile()) {
+                throw new IOException("Failed to move variant to " + target);
+            }
+        } finally {
+            if(temp.exists() && !temp.delete()) {
+                LOGGER.fine("Failed to delete " + temp);
+            }
+        }
+        variantAdded(target);
+        return target;
+    }
+
+    /**
+     * Decode image for downscaling to given width. Width is read from header first, so images not wider than target
+     * are not decoded at all. When original is much wider than target, it's decoded with source subsampling to a
+     * width still at least twice the target, which saves memory and time without visible loss after scaling.
+     * @param in Stream of original image
+     * @param width Target width
+     * @return Decoded image, or null if it is not wider than target or format is not supported
+     * @throws IOException If decoding fails
+     */
+    protected BufferedImage read(InputStream in, int width) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(in);
+        if(input == null) {
+            return null;
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int originalWidth = reader.getWidth(0);
+                if(originalWidth <= width) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = originalWidth / (width * 2);
+                if(subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Downscale image to given width. Image is halved in steps first to keep quality of bilinear scaling good.
+     * @param source Original image
+     * @param width Target width, smaller than width of original
+     * @param alpha true to keep alpha channel
+     * @return Scaled image
+     */
+    protected BufferedImage resize(BufferedImage source, int width, boolean alpha) {
+        int height = Math.max(1, Math.round(source.getHeight() * (float) width / source.getWidth()));
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            int nextWidth = Math.max(width, currentWidth / 2);
+            int nextHeight = nextWidth == width ? height : Math.max(height, currentHeight / 2);
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+            currentWidth = nextWidth;
+            currentHeight = nextHeight;
+        } while(currentWidth > width);
+        return current;
+    }
+
+    private void write(BufferedImage image, String format, File file) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if(!writers.hasNext()) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        ImageWriter writer = writers.next();
+        ImageOutputStream out = ImageIO.createImageOutputStream(file);
+        try {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if("jpg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        jobs = new ConcurrentHashMap<String, FutureTask<File>>();
+        originalsUsed = createOriginalsUsed();
+        cacheBytes = -1L;
+        cacheLock = new Object();
+    }
+}
@@ -22,10 +22,12 @@ import com.vaadin.annotations.JavaScript;
 import com.vaadin.server.AbstractExtension;
 import com.vaadin.server.Extension;
 import com.vaadin.ui.AbstractComponent;
+import org.vaadin.alump.masonry.client.shared.ImageLoadResult;
 import org.vaadin.alump.masonry.client.shared.ImagesLoadedServerRpc;
 import org.vaadin.alump.masonry.client.shared.ImagesLoadedState;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -44,6 +46,8 @@ public class ImagesLoadedExtension extends AbstractExtension {
 
     protected final List<ImagesLoadedListener> listeners = new ArrayList<ImagesLoadedListener>();
 
+    protected final List<ImageLoadResultsListener> resultsListeners = new ArrayList<ImageLoadResultsListener>();
+
     /**
      * Event for ImagesLoadedListeners
      */
@@ -76,6 +80,48 @@ public class ImagesLoadedExtension extends AbstractExtension {
         void onImagesLoaded(ImagesLoadedEvent event);
     }
 
+    /**
+     * Event for ImageLoadResultsListeners
+     */
+    public static class ImageLoadResultsEvent {
+        private ImagesLoadedExtension instance;
+        private List<ImageLoadResult> results;
+
+        protected ImageLoadResultsEvent(ImagesLoadedExtension instance, List<ImageLoadResult> results) {
+            this.instance = instance;
+            this.results = Collections.unmodifiableList(results);
+        }
+
+        /**
+         * Get instance of ImagesLoadedExtension sending this event
+         * @return Get ImagesLoadedExtension instance
+         */
+        public ImagesLoadedExtension getInstance() {
+            return instance;
+        }
+
+        /**
+         * Get results of images loaded or failed since previous event
+         * @return Results in order of completion
+         */
+        public List<ImageLoadResult> getResults() {
+            return results;
+        }
+    }
+
+    /**
+     * Interface for server side listeners of individual image results
+     */
+    public interface ImageLoadResultsListener {
+
+        /**
+         * Called with batch of image results collected on client side. Can be used eg. to track latency of image
+         * server, or to store natural sizes of images for size hints.
+         * @param event Event with results
+         */
+        void onImageLoadResults(ImageLoadResultsEvent event);
+    }
+
     private ImagesLoadedExtension(AbstractComponent component) {
         extend(component);
 
@@ -87,6 +133,14 @@ public class ImagesLoadedExtension extends AbstractExtension {
                     listener.onImagesLoaded(event);
                 }
             }
+
+            @Override
+            public void onImageLoadResults(List<ImageLoadResult> results) {
+                ImageLoadResultsEvent event = new ImageLoadResultsEvent(ImagesLoadedExtension.this, results);
+                for(ImageLoadResultsListener listener : new ArrayList<ImageLoadResultsListener>(resultsListeners)) {
+                    listener.onImageLoadResults(event);
+                }
+            }
         });
     }
 
@@ -164,6 +218,69 @@ public class ImagesLoadedExtension extends AbstractExtension {
         getState().callServer = !listeners.isEmpty();
     }
 
+    /**
+     * Add new server side listener of individual image results. Results are collected on client side and sent in
+     * batches, see {@link #setResultsInterval(int)}.
+     * @param listener Listener added
+     */
+    public void addImageLoadResultsListener(ImageLoadResultsListener listener) {
+        if(listener == null) {
+            throw new IllegalArgumentException("Listener can not be null");
+        }
+        resultsListeners.add(listener);
+        getState().collectResults = !resultsListeners.isEmpty();
+    }
+
+    /**
+     * Remove server side listener of individual image results
+     * @param listener Listener removed
+     */
+    public void removeImageLoadResultsListener(ImageLoadResultsListener listener) {
+        resultsListeners.remove(listener);
+        getState().collectResults = !resultsListeners.isEmpty();
+    }
+
+    /**
+     * Define how often collected image results are sent to server
+     * @param milliseconds Interval in milliseconds
+     */
+    public void setResultsInterval(int milliseconds) {
+        if(milliseconds < 0) {
+            throw new IllegalArgumentException("Interval can not be negative");
+        }
+        getState().resultsInterval = milliseconds;
+    }
+
+    /**
+     * Get how often collected image results are sent to server
+     * @return Interval in milliseconds
+     */
+    public int getResultsInterval() {
+        return getState(false).resultsInterval;
+    }
+
+    /**
+     * Define if client side component is notified of each image loaded, instead of only when all images are loaded.
+     * With MasonryLayout this means that items are relayouted progressively when their images are loaded.
+     * @param progressive true to notify of each image
+     */
+    public void setProgressive(boolean progressive) {
+        getState().progressive = progressive;
+    }
+
+    /**
+     * Check if client side component is notified of each image loaded
+     * @return true if progressive mode is used
+     */
+    public boolean isProgressive() {
+        return getState(false).progressive;
+    }
+
+    @Override
+    protected ImagesLoadedState getState(boolean markAsDirty) {
+        return (ImagesLoadedState)super.getState(markAsDirty);
+    }
+
     @Override
     protected ImagesLoadedState getState() {
         return (ImagesLoadedState)super.getState();
@@ -0,0 +1,308 @@
+/**
+ * IndexedList.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * List of unique non null elements backed by order statistics tree (implicit treap) and element to node map.
+ * Positional get, insert and remove, and also indexOf, contains and remove by element are O(log n). Iteration is
+ * linear.
+ * @param <E> Type of elements
+ */
+class IndexedList<E> extends AbstractList<E> implements Serializable {
+
+    private static class Node<E> implements Serializable {
+        E value;
+        final int priority;
+        int size = 1;
+        Node<E> left;
+        Node<E> right;
+        Node<E> parent;
+
+        Node(E value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private Node<E> root;
+    private final Map<E, Node<E>> nodes = new HashMap<E, Node<E>>();
+    private final Random random = new Random();
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public E get(int index) {
+        return nodeAt(index).value;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        Node<E> node = nodeAt(index);
+        if(element != null && nodes.get(element) == node) {
+            // Element set back to its own position
+            E old = node.value;
+            node.value = element;
+            return old;
+        }
+        checkNewElement(element);
+        E old = node.value;
+        nodes.remove(old);
+        node.value = element;
+        nodes.put(element, node);
+        return old;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if(index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        checkNewElement(element);
+
+        Node<E> node = new Node<E>(element, random.nextInt());
+        nodes.put(element, node);
+
+        Node<E>[] parts = split(root, index);
+        root = merge(merge(parts[0], node), parts[1]);
+        root.parent = null;
+        ++modCount;
+    }
+
+    @Override
+    public E remove(int index) {
+        Node<E> node = nodeAt(index);
+        Node<E>[] parts = split(root, index);
+        Node<E>[] rest = split(parts[1], 1);
+        root = merge(parts[0], rest[1]);
+        if(root != null) {
+            root.parent = null;
+        }
+        nodes.remove(node.value);
+        ++modCount;
+        return node.value;
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        int index = indexOf(element);
+        if(index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object element) {
+        Node<E> node = nodes.get(element);
+        if(node == null) {
+            return -1;
+        }
+
+        int index = size(node.left);
+        while(node.parent != null) {
+            if(node == node.parent.right) {
+                index += size(node.parent.left) + 1;
+            }
+            node = node.parent;
+        }
+        return index;
+    }
+
+    @Override
+    public int lastIndexOf(Object element) {
+        return indexOf(element);
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return nodes.containsKey(element);
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        nodes.clear();
+        ++modCount;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    private void checkNewElement(E element) {
+        if(element == null) {
+            throw new IllegalArgumentException("Null elements are not allowed");
+        }
+        if(nodes.containsKey(element)) {
+            throw new IllegalArgumentException("Element is already in list");
+        }
+    }
+
+    private Node<E> nodeAt(int index) {
+        if(index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node<E> node = root;
+        while(true) {
+            int leftSize = size(node.left);
+            if(index < leftSize) {
+                node = node.left;
+            } else if(index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static <E> void update(Node<E> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        if(node.left != null) {
+            node.left.parent = node;
+        }
+        if(node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    /**
+     * Split tree to two trees: first count nodes and the rest
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <E> Node<E>[] split(Node<E> node, int count) {
+        Node<E>[] parts = new Node[2];
+        if(node == null) {
+            return parts;
+        }
+        if(size(node.left) >= count) {
+            Node<E>[] sub = split(node.left, count);
+            node.left = sub[1];
+            update(node);
+            if(sub[0] != null) {
+                sub[0].parent = null;
+            }
+            parts[0] = sub[0];
+            parts[1] = node;
+        } else {
+            Node<E>[] sub = split(node.right, count - size(node.left) - 1);
+            node.right = sub[0];
+            update(node);
+            if(sub[1] != null) {
+                sub[1].parent = null;
+            }
+            parts[0] = node;
+            parts[1] = sub[1];
+        }
+        node.parent = null;
+        return parts;
+    }
+
+    private static <E> Node<E> merge(Node<E> left, Node<E> right) {
+        if(left == null) {
+            return right;
+        }
+        if(right == null) {
+            return left;
+        }
+        if(left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    private static <E> Node<E> first(Node<E> node) {
+        while(node != null && node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static <E> Node<E> successor(Node<E> node) {
+        if(node.right != null) {
+            return first(node.right);
+        }
+        while(node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    private class Itr implements Iterator<E> {
+        private Node<E> next = first(root);
+        private Node<E> lastReturned;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            checkForComodification();
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = successor(next);
+            return lastReturned.value;
+        }
+
+        @Override
+        public void remove() {
+            if(lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            IndexedList.this.remove(lastReturned.value);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
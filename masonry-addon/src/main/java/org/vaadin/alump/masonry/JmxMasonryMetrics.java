@@ -0,0 +1,229 @@
+/**
+ * JmxMasonryMetrics.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ObjectStreamException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default MasonryMetrics implementation, that counts totals of all MasonryLayouts and exposes them as JMX MBean
+ * {@value #OBJECT_NAME}. Use {@link #install()} to register MBean and start counting.
+ */
+public class JmxMasonryMetrics implements MasonryMetrics, JmxMasonryMetricsMBean {
+
+    /**
+     * Object name of registered MBean
+     */
+    public static final String OBJECT_NAME = "org.vaadin.alump.masonry:type=MasonryMetrics";
+
+    private static JmxMasonryMetrics instance;
+
+    private final AtomicLong componentsAdded = new AtomicLong();
+    private final AtomicLong componentsRemoved = new AtomicLong();
+    private final AtomicLong componentsMoved = new AtomicLong();
+    private final AtomicLong componentsReplaced = new AtomicLong();
+    private final AtomicLong wrapperStyleNameUpdates = new AtomicLong();
+    private final AtomicLong layoutRequests = new AtomicLong();
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong stateDiffBytes = new AtomicLong();
+    private final AtomicLong hierarchyBytes = new AtomicLong();
+    private final AtomicLong maxResponseBytes = new AtomicLong();
+
+    protected JmxMasonryMetrics() {
+    }
+
+    /**
+     * Get shared instance. MBean is registered when instance is created.
+     * @return Shared instance
+     * @throws IllegalStateException If MBean registration fails
+     */
+    public static synchronized JmxMasonryMetrics getInstance() {
+        if(instance == null) {
+            JmxMasonryMetrics metrics = new JmxMasonryMetrics();
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if(server.isRegistered(name)) {
+                    // Left behind by earlier deployment of application
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(metrics, name);
+            } catch (JMException e) {
+                throw new IllegalStateException("Failed to register " + OBJECT_NAME, e);
+            }
+            instance = metrics;
+        }
+        return instance;
+    }
+
+    /**
+     * Register MBean and set shared instance as default metrics of MasonryLayouts created after this call
+     * @return Shared instance
+     */
+    public static JmxMasonryMetrics install() {
+        JmxMasonryMetrics metrics = getInstance();
+        MasonryLayout.setDefaultMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * Unregister MBean and stop counting in MasonryLayouts created after this call
+     */
+    public static synchronized void uninstall() {
+        if(MasonryLayout.getDefaultMetrics() == instance) {
+            MasonryLayout.setDefaultMetrics(null);
+        }
+        if(instance != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                // Already unregistered
+            }
+            instance = null;
+        }
+    }
+
+    // Layouts in deserialized sessions keep counting to the registered instance
+    private Object readResolve() throws ObjectStreamException {
+        return getInstance();
+    }
+
+    @Override
+    public void componentAdded(MasonryLayout layout) {
+        componentsAdded.incrementAndGet();
+    }
+
+    @Override
+    public void componentRemoved(MasonryLayout layout) {
+        componentsRemoved.incrementAndGet();
+    }
+
+    @Override
+    public void componentMoved(MasonryLayout layout) {
+        componentsMoved.incrementAndGet();
+    }
+
+    @Override
+    public void componentReplaced(MasonryLayout layout) {
+        componentsReplaced.incrementAndGet();
+    }
+
+    @Override
+    public void wrapperStyleNameUpdated(MasonryLayout layout) {
+        wrapperStyleNameUpdates.incrementAndGet();
+    }
+
+    @Override
+    public void layoutRequested(MasonryLayout layout) {
+        layoutRequests.incrementAndGet();
+    }
+
+    @Override
+    public void responseWritten(MasonryLayout layout, int stateDiffBytes, int hierarchyBytes) {
+        responses.incrementAndGet();
+        this.stateDiffBytes.addAndGet(stateDiffBytes);
+        this.hierarchyBytes.addAndGet(hierarchyBytes);
+
+        long total = stateDiffBytes + hierarchyBytes;
+        long max = maxResponseBytes.get();
+        while(total > max && !maxResponseBytes.compareAndSet(max, total)) {
+            max = maxResponseBytes.get();
+        }
+    }
+
+    @Override
+    public long getComponentsAdded() {
+        return componentsAdded.get();
+    }
+
+    @Override
+    public long getComponentsRemoved() {
+        return componentsRemoved.get();
+    }
+
+    @Override
+    public long getComponentsMoved() {
+        return componentsMoved.get();
+    }
+
+    @Override
+    public long getComponentsReplaced() {
+        return componentsReplaced.get();
+    }
+
+    @Override
+    public long getWrapperStyleNameUpdates() {
+        return wrapperStyleNameUpdates.get();
+    }
+
+    @Override
+    public long getLayoutRequests() {
+        return layoutRequests.get();
+    }
+
+    @Override
+    public long getResponses() {
+        return responses.get();
+    }
+
+    @Override
+    public long getStateDiffBytes() {
+        return stateDiffBytes.get();
+    }
+
+    @Override
+    public long getHierarchyBytes() {
+        return hierarchyBytes.get();
+    }
+
+    @Override
+    public double getAverageStateDiffBytes() {
+        long count = responses.get();
+        return count == 0 ? 0 : (double) stateDiffBytes.get() / count;
+    }
+
+    @Override
+    public double getAverageHierarchyBytes() {
+        long count = responses.get();
+        return count == 0 ? 0 : (double) hierarchyBytes.get() / count;
+    }
+
+    @Override
+    public long getMaxResponseBytes() {
+        return maxResponseBytes.get();
+    }
+
+    @Override
+    public void reset() {
+        componentsAdded.set(0);
+        componentsRemoved.set(0);
+        componentsMoved.set(0);
+        componentsReplaced.set(0);
+        wrapperStyleNameUpdates.set(0);
+        layoutRequests.set(0);
+        responses.set(0);
+        stateDiffBytes.set(0);
+        hierarchyBytes.set(0);
+        maxResponseBytes.set(0);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * JmxMasonryMetricsMBean.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+/**
+ * JMX interface of {@link JmxMasonryMetrics}. Counters are totals of all MasonryLayouts since start or last reset.
+ */
+public interface JmxMasonryMetricsMBean {
+
+    long getComponentsAdded();
+
+    long getComponentsRemoved();
+
+    long getComponentsMoved();
+
+    long getComponentsReplaced();
+
+    long getWrapperStyleNameUpdates();
+
+    long getLayoutRequests();
+
+    /**
+     * Number of responses where layout was written to client side
+     */
+    long getResponses();
+
+    long getStateDiffBytes();
+
+    long getHierarchyBytes();
+
+    double getAverageStateDiffBytes();
+
+    double getAverageHierarchyBytes();
+
+    /**
+     * Largest state diff and hierarchy written in one response
+     */
+    long getMaxResponseBytes();
+
+    /**
+     * Set all counters to zero
+     */
+    void reset();
+}
@@ -26,12 +26,14 @@ import com.vaadin.ui.Component;
 import com.vaadin.ui.DragAndDropWrapper;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Adds DnD reordering features to MasonryLayout. MasonryDndWrapper inherits DragAndDropWrapper,
- * how ever this default implementation does not do any drop handling. If you want to handle dropping
- * on layout itself, set the DropHandler.
+ * Adds DnD reordering features to MasonryLayout. Reordering is done with drag reordering of MasonryLayout, so
+ * components are added directly to layout without wrapping each of them to DragAndDropWrapper. MasonryDndWrapper
+ * inherits DragAndDropWrapper, how ever this default implementation does not do any drop handling. If you want to
+ * handle dropping on layout itself, set the DropHandler.
  */
 public class MasonryDnDWrapper extends DragAndDropWrapper {
 
@@ -54,10 +56,30 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
      */
     public static class MasonryReorderEvent {
         protected MasonryDnDWrapper layout;
+        protected Component component;
+        protected int oldIndex = -1;
+        protected int newIndex = -1;
+        protected List<MasonryMove> moves = Collections.emptyList();
 
         public MasonryReorderEvent(MasonryDnDWrapper layout) {
             this.layout = layout;
-            //TODO: more data
+        }
+
+        /**
+         * Create event
+         * @param layout Layout where reordering happened
+         * @param component Component moved by user
+         * @param oldIndex Index of component before move
+         * @param newIndex Index of component after move
+         * @param moves Moves that turn old order to current order
+         */
+        public MasonryReorderEvent(MasonryDnDWrapper layout, Component component, int oldIndex, int newIndex,
+                List<MasonryMove> moves) {
+            this.layout = layout;
+            this.component = component;
+            this.oldIndex = oldIndex;
+            this.newIndex = newIndex;
+            this.moves = Collections.unmodifiableList(new ArrayList<MasonryMove>(moves));
         }
 
         /**
@@ -67,13 +89,60 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
         public MasonryDnDWrapper getLayout() {
             return layout;
         }
+
+        /**
+         * Get component moved by user
+         * @return Component moved, or null if not known
+         */
+        public Component getComponent() {
+            return component;
+        }
+
+        /**
+         * Get index of moved component before the move
+         * @return Old index, or -1 if not known
+         */
+        public int getOldIndex() {
+            return oldIndex;
+        }
+
+        /**
+         * Get index of moved component after the move
+         * @return New index, or -1 if not known
+         */
+        public int getNewIndex() {
+            return newIndex;
+        }
+
+        /**
+         * Get moves that turn order before this event to current order. Each event is caused by single drag, so
+         * currently list always contains exactly one move (from old index to new index). List is given to allow
+         * applying events with {@link MasonryMove#apply(List, List)} the same way if that changes.
+         * @return Moves in order
+         */
+        public List<MasonryMove> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Apply moves of this event to external copy of layout order. Only moved item is removed and inserted
+         * again, so whole order does not have to be read from layout.
+         * @param order List in order of layout before this event
+         * @param <T> Type of list items
+         */
+        public <T> void applyTo(List<T> order) {
+            MasonryMove.apply(order, moves);
+        }
     }
 
     private DragAndDropWrapper.DragStartMode componentDragStartMode = DragAndDropWrapper.DragStartMode.WRAPPER;
 
     /**
-     * Default drop handler that takes care of reordering calls when child is dragged above other children
+     * Drop handler that moves dragged component before its target. Components are not wrapped anymore, so this is not
+     * used by MasonryDnDWrapper itself.
+     * @deprecated Reordering is done with drag reordering of MasonryLayout, use {@link MasonryReorderListener}
      */
+    @Deprecated
     public static class MasonryDropHandler implements DropHandler {
 
         protected MasonryDnDWrapper layout;
@@ -91,15 +160,14 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
         @Override
         public void drop(DragAndDropEvent event) {
             Component dragged = event.getTransferable().getSourceComponent();
+            MasonryLayout masonryLayout = layout.getMasonryLayout();
 
-            // If no target just add to end
-            if(target == null) {
-                layout.getMasonryLayout().addComponent(dragged);
+            // If no target just move to end
+            if(target == null || target.getParent() != masonryLayout) {
+                masonryLayout.addComponent(dragged);
             } else {
-                WrapperTargetDetails details = (WrapperTargetDetails)event.getTargetDetails();
-
-                String wrapperStyleName = layout.getMasonryLayout().getComponentWrapperStyleName(dragged);
-                layout.getMasonryLayout().addComponentBefore(dragged, wrapperStyleName, target);
+                String wrapperStyleName = masonryLayout.getComponentWrapperStyleName(dragged);
+                masonryLayout.addComponentBefore(dragged, wrapperStyleName, target);
             }
 
             layout.notifyReorderListeners();
@@ -107,72 +175,80 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
 
         @Override
         public AcceptCriterion getAcceptCriterion() {
-            ServerSideCriterion criterion = new ServerSideCriterion() {
+            return new ServerSideCriterion() {
                 @Override
                 public boolean accept(DragAndDropEvent dragEvent) {
-                    if(!layout.isReorderable()) {
-                        return false;
-                    }
-
-                    try {
-                        Component source = dragEvent.getTransferable().getSourceComponent();
-                        if(target != null) {
-                            return target != source.getParent() && source.getParent().getParent() == layout;
-                        } else {
-                            return source.getParent().getParent() == layout;
-                        }
-                    } catch(Exception e) {
-                        e.printStackTrace();
-                        return false;
-                    }
+                    Component source = dragEvent.getTransferable().getSourceComponent();
+                    return layout.isReorderable() && source != null && source != target
+                            && source.getParent() == layout.getMasonryLayout();
                 }
             };
-            return criterion;
         }
     }
 
-    public MasonryDnDWrapper() {
-        super(new MasonryLayout());
-        addStyleName("dnd-masonry-layout");
-
-        // Simplifies the drag hints
-        getMasonryLayout().addStyleName("no-vertical-drag-hints");
-        getMasonryLayout().addStyleName("no-horizontal-drag-hints");
-
-        // Make sure layout takes full width
-        getMasonryLayout().setWidth("100%");
+    // One listener for the whole layout, forwards reorders made by user to MasonryReorderListeners
+    private final MasonryLayout.ReorderListener layoutReorderListener = new MasonryLayout.ReorderListener() {
+        @Override
+        public void onReorder(MasonryLayout.ReorderEvent event) {
+            notifyReorderListeners(new MasonryReorderEvent(MasonryDnDWrapper.this, event.getComponent(),
+                    event.getFromIndex(), event.getToIndex(), event.getMoves()));
+        }
+    };
 
-        // No drop handler used in this version
-        setDragStartMode(DragStartMode.NONE);
-        //setDropHandler(new DndMasonryDropHandler(this));
+    public MasonryDnDWrapper() {
+        this(new MasonryLayout());
     }
 
     public MasonryDnDWrapper(int columnWidth) {
-        super(new MasonryLayout(columnWidth));
+        this(new MasonryLayout(columnWidth));
+    }
+
+    private MasonryDnDWrapper(MasonryLayout layout) {
+        super(layout);
         addStyleName("dnd-masonry-layout");
 
-        // Simplifies the drag hints
-        getMasonryLayout().addStyleName("no-vertical-drag-hints");
-        getMasonryLayout().addStyleName("no-horizontal-drag-hints");
+        // Kept for themes that still refer to these, drag hints are not used anymore
+        layout.addStyleName("no-vertical-drag-hints");
+        layout.addStyleName("no-horizontal-drag-hints");
 
         // Make sure layout takes full width
-        getMasonryLayout().setWidth("100%");
+        layout.setWidth("100%");
+        layout.addReorderListener(layoutReorderListener);
+        updateReorderable();
 
         // No drop handler used in this version
         setDragStartMode(DragStartMode.NONE);
-        //setDropHandler(new DndMasonryDropHandler(this));
     }
 
+    /**
+     * Define how components can be dragged. Components are not wrapped anymore, so only
+     * {@link com.vaadin.ui.DragAndDropWrapper.DragStartMode#NONE} has an effect: it prevents reordering. All other
+     * modes allow user to drag components.
+     * @param dragStartMode Drag start mode
+     * @deprecated Use {@link #setReorderable(boolean)}
+     */
+    @Deprecated
     public void setComponentDragStartMode(DragAndDropWrapper.DragStartMode dragStartMode) {
         this.componentDragStartMode = dragStartMode;
+        updateReorderable();
     }
 
+    /**
+     * Get drag start mode defined for components
+     * @return Drag start mode
+     * @deprecated Use {@link #isReorderable()}
+     */
+    @Deprecated
     public DragAndDropWrapper.DragStartMode getComponentDragStartMode() {
         return componentDragStartMode;
     }
 
+    private void updateReorderable() {
+        getMasonryLayout().setReorderable(allowReorder && componentDragStartMode != DragStartMode.NONE);
+    }
+
     /**
-     * Add component to layout. Will wrap component with DragAndDropWrapper.
+     * Add component to layout
      * @param component Component added
      */
     public void addComponentToLayout(Component component) {
@@ -180,7 +256,7 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
     }
 
     /**
-     * Add component to layout to given index. Will wrap component with DragAndDropWrapper.
+     * Add component to layout to given index
      * @param component Component added
      * @param index Index where component is added
      */
@@ -189,7 +265,7 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
     }
 
     /**
-     * Add component to layout with given wrapper style name. Will wrap component with DragAndDropWrapper.
+     * Add component to layout with given wrapper style name
      * @param component Component added
      * @param wrapperStyleName Style name added to wrapper (eq. use to define it take double width)
      */
@@ -198,14 +274,13 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
     }
 
     /**
-     * Add component to layout with given wrapper style name to given index. Will wrap component with
-     * DragAndDropWrapper.
+     * Add component to layout with given wrapper style name to given index
      * @param component Component added
      * @param wrapperStyleName Style name added to wrapper (eq. use to define it take double width)
      * @param index Index where component is added
      */
     public void addComponentToLayout(Component component, String wrapperStyleName, int index) {
-        getMasonryLayout().addComponent(createComponentDnDWrapper(component, wrapperStyleName), wrapperStyleName, index);
+        getMasonryLayout().addComponent(component, wrapperStyleName, index);
     }
 
     /**
@@ -213,9 +288,8 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
      * @param component Component remvoed
      */
     public void removeComponentInLayout(Component component) {
-        DragAndDropWrapper wrapper = getComponentDnDWrapper(component);
-        if(wrapper != null) {
-            getMasonryLayout().removeComponent(wrapper);
+        if(component.getParent() == getMasonryLayout()) {
+            getMasonryLayout().removeComponent(component);
         }
     }
 
@@ -225,12 +299,10 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
      * @param newComponent New component used as replacement
      */
     public void replaceComponentInLayout(Component oldComponent, Component newComponent) {
-        DragAndDropWrapper oldWrapper = getComponentDnDWrapper(oldComponent);
-        if(oldWrapper == null) {
+        if(oldComponent.getParent() != getMasonryLayout()) {
             throw new IllegalArgumentException("Given component not found");
         }
-        DragAndDropWrapper newWrapper = createComponentDnDWrapper(newComponent, null);
-        getMasonryLayout().replaceComponent(oldWrapper, newWrapper);
+        getMasonryLayout().replaceComponent(oldComponent, newComponent);
     }
 
     /**
@@ -241,47 +313,45 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
     }
 
     /**
-     * Create DnD wrapper for component if not yet defined
+     * Components are not wrapped anymore, so this is not called by MasonryDnDWrapper. Returns new wrapper for
+     * component, as before.
      * @param component Component wrapped
-     * @return Wrapper made or found
+     * @param wrapperStyleName Style name added to wrapper, or null
+     * @return Wrapper made
+     * @deprecated Components are added directly to layout
      */
+    @Deprecated
     protected DragAndDropWrapper createComponentDnDWrapper(Component component, String wrapperStyleName) {
-        DragAndDropWrapper wrapper = getComponentDnDWrapper(component);
-        if(wrapper == null) {
-            wrapper = new DragAndDropWrapper(component);
-            wrapper.addStyleName("masonry-dnd-wrapper");
-            if(wrapperStyleName != null) {
-                wrapper.addStyleName(wrapperStyleName);
-            }
-            wrapper.setDragStartMode(allowReorder ? getComponentDragStartMode() : DragStartMode.NONE);
-            wrapper.setDropHandler(createDropHandlerForComponents(wrapper));
+        DragAndDropWrapper wrapper = new DragAndDropWrapper(component);
+        wrapper.addStyleName("masonry-dnd-wrapper");
+        if(wrapperStyleName != null) {
+            wrapper.addStyleName(wrapperStyleName);
         }
+        wrapper.setDragStartMode(allowReorder ? getComponentDragStartMode() : DragStartMode.NONE);
+        wrapper.setDropHandler(createDropHandlerForComponents(wrapper));
         return wrapper;
     }
 
     /**
-     * Override to have custom drop handler for your items
-     * @param childWrapper Wrapper of child component that need DropHandler
+     * Components are not wrapped anymore, so this is not called by MasonryDnDWrapper
+     * @param childWrapper Wrapper that needs DropHandler
      * @return DropHandler made for childWrapper
+     * @deprecated Components are added directly to layout
      */
+    @Deprecated
     protected DropHandler createDropHandlerForComponents(DragAndDropWrapper childWrapper) {
         return new MasonryDropHandler(this, childWrapper);
     }
 
     /**
-     * Get DragAndDropWrapper for given component
-     * @param component Component added to this DndMasonryLayout
-     * @return Wrapper of component or null if not set yet, or if component is not under this layout
+     * Components are not wrapped anymore, so this always returns null
+     * @param component Component added to this MasonryDnDWrapper
+     * @return null
+     * @deprecated Components are added directly to layout
      */
+    @Deprecated
     protected DragAndDropWrapper getComponentDnDWrapper(Component component) {
-        if(!(component.getParent() instanceof DragAndDropWrapper)) {
-            return null;
-        }
-        DragAndDropWrapper wrapper = (DragAndDropWrapper)component.getParent();
-        if(wrapper.getParent() != this) {
-            return null;
-        }
-        return wrapper;
+        return null;
     }
 
     /**
@@ -301,12 +371,7 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
      * @return Component at given index
      */
     public Component getComponentInLayout(int index) {
-        DragAndDropWrapper wrapper = (DragAndDropWrapper)getMasonryLayout().getComponent(index);
-        if(wrapper != null) {
-            return wrapper.iterator().next();
-        } else {
-            return null;
-        }
+        return getMasonryLayout().getComponent(index);
     }
 
     /**
@@ -318,8 +383,7 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
     }
 
     /**
-     * Add component to layout with given wrapper style name to given index. Will wrap component with
-     * DragAndDropWrapper.
+     * Add component to layout with given wrapper style name to first position
      * @param component Component added
      * @param wrapperStyleName Style name added to wrapper (eq. use to define it take double width)
      */
@@ -333,15 +397,7 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
      */
     public void setReorderable(boolean reorderable) {
         allowReorder = reorderable;
-
-        // Update drag start modes
-        for(int i = 0; i < getMasonryLayout().getComponentCount(); ++i) {
-            Component child = getMasonryLayout().getComponent(i);
-            if(child instanceof DragAndDropWrapper) {
-                DragAndDropWrapper wrapper = (DragAndDropWrapper) child;
-                wrapper.setDragStartMode(allowReorder ? getComponentDragStartMode() : DragStartMode.NONE);
-            }
-        }
+        updateReorderable();
     }
 
     /**
@@ -376,13 +432,20 @@ public class MasonryDnDWrapper extends DragAndDropWrapper {
     }
 
     /**
-     * Notify all listeners that user has changed the order of components
+     * Notify all listeners that user has changed the order of components, without details of the change
+     * @deprecated Use {@link #notifyReorderListeners(MasonryReorderEvent)}
      */
+    @Deprecated
     protected void notifyReorderListeners() {
-        MasonryReorderEvent event = new MasonryReorderEvent(this);
-        //TODO: add more data to event
+        notifyReorderListeners(new MasonryReorderEvent(this));
+    }
 
-        for(MasonryReorderListener listener : reorderListeners) {
+    /**
+     * Notify all listeners that user has changed the order of components
+     * @param event Event describing the change
+     */
+    protected void notifyReorderListeners(MasonryReorderEvent event) {
+        for(MasonryReorderListener listener : new ArrayList<MasonryReorderListener>(reorderListeners)) {
             listener.onUserReorder(event);
         }
     }
@@ -24,14 +24,36 @@ import com.vaadin.shared.Connector;
 import com.vaadin.shared.EventId;
 import com.vaadin.shared.MouseEventDetails;
 import com.vaadin.ui.AbstractLayout;
+import com.vaadin.server.ExternalResource;
+import com.vaadin.server.JsonCodec;
+import com.vaadin.server.Sizeable;
 import com.vaadin.ui.Component;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.Image;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import org.vaadin.alump.masonry.client.shared.MasonryImageSources;
+import org.vaadin.alump.masonry.client.shared.MasonryItemPosition;
+import org.vaadin.alump.masonry.client.shared.MasonryItemSizeHint;
 import org.vaadin.alump.masonry.client.shared.MasonryLayoutClientRpc;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutMetrics;
 import org.vaadin.alump.masonry.client.shared.MasonryLayoutServerRpc;
 import org.vaadin.alump.masonry.client.shared.MasonryLayoutState;
 
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Layout that uses Masonry JavaScript library to layout components
@@ -64,7 +86,62 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
 
     private boolean initialClientResponseSent = false;
 
-    protected List<Component> components = new ArrayList<Component>();
+    private int batchDepth = 0;
+    private boolean dirtyDuringBatch = false;
+
+    /**
+     * Child components in order. Indexed list is used to keep index lookups, inserts and removes O(log n).
+     */
+    protected List<Component> components = new IndexedList<Component>();
+
+    private final Map<Component, Integer> heightHints = new HashMap<Component, Integer>();
+
+    // Wrapper style names of items, changes are sent to client side as deltas with interned ids
+    private final Map<Component, String> itemStyleNames = new HashMap<Component, String>();
+    private final Map<String, Integer> wrapperStyleNameIds = new HashMap<String, Integer>();
+    // Number of items using each wrapper style name, ids of names not used anymore are released for reuse
+    private final Map<String, Integer> wrapperStyleNameUsage = new HashMap<String, Integer>();
+    private final List<Integer> releasedWrapperStyleNameIds = new ArrayList<Integer>();
+    private final Set<Component> changedWrapperStyleNames = new LinkedHashSet<Component>();
+    // Sizes reserved for item wrappers, changes are sent to client side as deltas
+    private final Map<Component, MasonryItemSizeHint> sizeHints = new HashMap<Component, MasonryItemSizeHint>();
+    private final Set<Component> changedSizeHints = new LinkedHashSet<Component>();
+    // Components added since previous response, their wrapper style names are sent with the hierarchy change
+    private final Set<Component> addedComponents = new LinkedHashSet<Component>();
+    private int clientLayoutWidth = -1;
+    // Server side positions of first items, in order of components. Positions before positionsChangedFrom are
+    // valid, calculator has placed all items in list when positionsChangedFrom is not before end of list.
+    private final List<MasonryItemPosition> itemPositions = new ArrayList<MasonryItemPosition>();
+    private int positionsChangedFrom = 0;
+    private MasonryLayoutCalculator positionCalculator;
+    // Positions sent to client side
+    private final Map<Component, MasonryItemPosition> sentPositions = new HashMap<Component, MasonryItemPosition>();
+
+    private ImageMetadataService imageMetadataService;
+    private final Set<Component> pendingImageProbes = new LinkedHashSet<Component>();
+    private ImageVariantService imageVariantService;
+    // Image sources sent to client side, and items whose image sources have to be resolved before next response
+    private final Map<Component, MasonryImageSources> imageSources = new HashMap<Component, MasonryImageSources>();
+    private final Set<Component> pendingImageSources = new LinkedHashSet<Component>();
+
+    private LoadMoreHandler loadMoreHandler;
+    private int loadMoreBatchSize = 0;
+
+    /**
+     * Default interval used to send client side layout metrics (10 seconds)
+     */
+    public static final int DEFAULT_LAYOUT_METRICS_INTERVAL = 10000;
+
+    private static volatile MasonryMetrics defaultMetrics;
+    private MasonryMetrics metrics = defaultMetrics;
+    // Set while replace and move are done with remove and add, so those are not counted separately
+    private boolean metricsSuppressed = false;
+
+    private ReorderFilter reorderFilter;
+    private final List<ReorderListener> reorderListeners = new ArrayList<ReorderListener>();
+
+    private final List<LayoutMetricsListener> layoutMetricsListeners = new ArrayList<LayoutMetricsListener>();
+    private int layoutMetricsInterval = DEFAULT_LAYOUT_METRICS_INTERVAL;
 
     private final MasonryLayoutServerRpc serverRpc = new MasonryLayoutServerRpc() {
 
@@ -73,8 +150,204 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
             fireEvent(LayoutEvents.LayoutClickEvent.createEvent(MasonryLayout.this,
                     mouseDetails, clickedConnector));
         }
+
+        @Override
+        public void reportLayoutWidth(int width) {
+            if(width != clientLayoutWidth) {
+                clientLayoutWidth = width;
+                markAsDirty();
+            }
+        }
+
+        @Override
+        public void loadMore() {
+            handleLoadMore();
+            getState().loadMoreRevision++;
+        }
+
+        @Override
+        public void reorder(int fromIndex, int toIndex) {
+            if(!handleReorder(fromIndex, toIndex)) {
+                getRpcProxy(MasonryLayoutClientRpc.class).reorderRejected();
+            }
+        }
+
+        @Override
+        public void reportLayoutMetrics(MasonryLayoutMetrics metrics) {
+            LayoutMetricsEvent event = new LayoutMetricsEvent(MasonryLayout.this, metrics);
+            for(LayoutMetricsListener listener : new ArrayList<LayoutMetricsListener>(layoutMetricsListeners)) {
+                listener.onLayoutMetrics(event);
+            }
+        }
     };
 
+    /**
+     * Event for LayoutMetricsListeners
+     */
+    public static class LayoutMetricsEvent implements Serializable {
+        private final MasonryLayout layout;
+        private final MasonryLayoutMetrics metrics;
+
+        protected LayoutMetricsEvent(MasonryLayout layout, MasonryLayoutMetrics metrics) {
+            this.layout = layout;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Get layout measured
+         * @return Layout sending this event
+         */
+        public MasonryLayout getLayout() {
+            return layout;
+        }
+
+        /**
+         * Get metrics collected on client side since previous event
+         * @return Histograms of layout passes by trigger, and size of layout and browser
+         */
+        public MasonryLayoutMetrics getMetrics() {
+            return metrics;
+        }
+    }
+
+    /**
+     * Listener of client side layout metrics. Browser details of user can be read from
+     * {@link com.vaadin.server.Page#getWebBrowser()}.
+     */
+    public interface LayoutMetricsListener extends Serializable {
+        /**
+         * Called with durations of client side layout passes collected in throttled batches, see
+         * {@link #setLayoutMetricsInterval(int)}
+         * @param event Event with collected metrics
+         */
+        void onLayoutMetrics(LayoutMetricsEvent event);
+    }
+
+    /**
+     * Event for ReorderListeners
+     */
+    public static class ReorderEvent implements Serializable {
+        private final MasonryLayout layout;
+        private final Component component;
+        private final int fromIndex;
+        private final int toIndex;
+        private final List<MasonryMove> moves;
+
+        protected ReorderEvent(MasonryLayout layout, Component component, int fromIndex, int toIndex) {
+            this.layout = layout;
+            this.component = component;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.moves = Collections.singletonList(new MasonryMove(fromIndex, toIndex));
+        }
+
+        /**
+         * Get layout reordered
+         * @return Layout sending this event
+         */
+        public MasonryLayout getLayout() {
+            return layout;
+        }
+
+        /**
+         * Get component moved
+         * @return Child component moved by user
+         */
+        public Component getComponent() {
+            return component;
+        }
+
+        /**
+         * Get index of component before move
+         * @return Old index of component
+         */
+        public int getFromIndex() {
+            return fromIndex;
+        }
+
+        /**
+         * Get index of component after move
+         * @return New index of component
+         */
+        public int getToIndex() {
+            return toIndex;
+        }
+
+        /**
+         * Get moves that turn order before this event to current order. Event is sent for each drag, so list always
+         * contains exactly one move, from {@link #getFromIndex()} to {@link #getToIndex()}.
+         * @return List with single move, see {@link MasonryMove#apply(List, List)}
+         */
+        public List<MasonryMove> getMoves() {
+            return moves;
+        }
+    }
+
+    /**
+     * Listener of reorders made by user by dragging items
+     */
+    public interface ReorderListener extends Serializable {
+        /**
+         * Called after user has moved component and the move has been applied to layout
+         * @param event Event describing the move
+         */
+        void onReorder(ReorderEvent event);
+    }
+
+    /**
+     * Filter that decides if reorder made by user on client side is accepted. Rejected reorders are reverted on
+     * client side.
+     */
+    public interface ReorderFilter extends Serializable {
+        /**
+         * Check if component can be moved
+         * @param layout Layout reordered
+         * @param component Child component moved
+         * @param fromIndex Current index of component
+         * @param toIndex Index where user dropped component
+         * @return true to accept the move, false to reject it
+         */
+        boolean acceptReorder(MasonryLayout layout, Component component, int fromIndex, int toIndex);
+    }
+
+    /**
+     * Handler that appends more items to layout when client side scrolls near the end of layout
+     */
+    public interface LoadMoreHandler extends Serializable {
+        /**
+         * Append next items to end of layout. Called inside {@link #batch(BatchUpdate)}, so all items are sent to
+         * client side in one update.
+         * @param layout Layout where items are added
+         * @param count Number of items that should be added
+         * @return true if there are still more items to load, false if all items have been loaded
+         */
+        boolean loadMore(MasonryLayout layout, int count);
+    }
+
+    /**
+     * Interface used to resolve wrapper style names of components added with
+     * {@link #addComponents(Collection, WrapperStyleNameGenerator, int)}
+     */
+    public interface WrapperStyleNameGenerator extends Serializable {
+        /**
+         * Get wrapper style name for component
+         * @param component Component added
+         * @return Wrapper style name, or null if no extra style names
+         */
+        String getWrapperStyleName(Component component);
+    }
+
+    /**
+     * Interface for changes applied with {@link #batch(BatchUpdate)}
+     */
+    public interface BatchUpdate extends Serializable {
+        /**
+         * Apply changes to layout
+         * @param layout Layout changed
+         */
+        void update(MasonryLayout layout);
+    }
+
     /**
      * Create masonry layout with default column width (300px)
      */
@@ -99,6 +372,11 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
 		return (MasonryLayoutState) super.getState();
 	}
 
+    @Override
+    protected MasonryLayoutState getState(boolean markAsDirty) {
+        return (MasonryLayoutState) super.getState(markAsDirty);
+    }
+
     @Override
     public void replaceComponent(Component oldComponent, Component newComponent) {
 
@@ -115,8 +393,17 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
         }
 
         int oldIndex = components.indexOf(oldComponent);
-        removeComponent(oldComponent);
-        addComponent(newComponent, oldIndex);
+        boolean suppressed = metricsSuppressed;
+        metricsSuppressed = true;
+        try {
+            removeComponent(oldComponent);
+            addComponent(newComponent, oldIndex);
+        } finally {
+            metricsSuppressed = suppressed;
+        }
+        if(metrics != null && !metricsSuppressed) {
+            metrics.componentReplaced(this);
+        }
     }
 
     @Override
@@ -132,26 +419,27 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
     public void addComponent(Component component, int index) {
 
         if(component.getParent() == this) {
-            int currentIndex = components.indexOf(component);
-            if (currentIndex == index) {
-                return;
-            }
-            removeComponent(component);
-            if(index < components.size()) {
-                components.add(index, component);
-            } else {
-                components.add(component);
-            }
+            moveComponent(component, Math.min(index, components.size() - 1));
+            return;
+        }
+
+        if(metrics != null && !metricsSuppressed) {
+            metrics.componentAdded(this);
+        }
+        if(index < components.size()) {
+            components.add(index, component);
         } else {
-            if(index < components.size()) {
-                components.add(index, component);
-            } else {
-                components.add(component);
-            }
+            components.add(component);
         }
 
         try {
             super.addComponent(component);
+            addedComponents.add(component);
+            itemsChangedFrom(components.indexOf(component));
+            pendingImageSources.add(component);
+            if(imageMetadataService != null) {
+                pendingImageProbes.add(component);
+            }
             markAsDirty();
         } catch (IllegalArgumentException e) {
             components.remove(component);
@@ -159,6 +447,36 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
         }
     }
 
+    /**
+     * Move child component to given index. Component is not detached, so its wrapper style name and size hints are
+     * kept.
+     * @param component Child component of this layout
+     * @param index Index of component after move
+     * @throws IllegalArgumentException If given component is not child of this MasonryLayout
+     * @throws IndexOutOfBoundsException If given index is invalid
+     */
+    public void moveComponent(Component component, int index) {
+        if(component.getParent() != this) {
+            throw new IllegalArgumentException("Given component is not child of this MasonryLayout");
+        }
+        if(index < 0 || index >= components.size()) {
+            throw new IndexOutOfBoundsException("Given index (" + index + ") is out of bounds (0.."
+                    + (components.size() - 1) + ")");
+        }
+
+        int currentIndex = components.indexOf(component);
+        if(currentIndex == index) {
+            return;
+        }
+        components.remove(currentIndex);
+        components.add(index, component);
+        itemsChangedFrom(Math.min(currentIndex, index));
+        if(metrics != null && !metricsSuppressed) {
+            metrics.componentMoved(this);
+        }
+        markAsDirty();
+    }
+
     /**
      * Get child component at given index
      * @param index Index number of child
@@ -201,12 +519,20 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
         }
 
         addComponent(component, index + indexCorrection);
+        setWrapperStyleName(component, wrapperStyleName);
+    }
 
-        if(wrapperStyleName != null) {
-            getState().itemStyleNames.put(component, wrapperStyleName);
-        } else {
-            getState().itemStyleNames.remove(component);
-        }
+    /**
+     * Add component with style name added to wrapping element and size reserved for wrapper. Reserving size for
+     * items that have content loaded later (eg. images) allows client side to layout items correctly before content
+     * is loaded.
+     * @param component Component added
+     * @param wrapperStyleName Style name added to wrapping element, or null if no extra style names
+     * @param sizeHint Size reserved for wrapper, or null if nothing is reserved
+     */
+    public void addComponent(Component component, String wrapperStyleName, MasonryItemSizeHint sizeHint) {
+        addComponent(component, wrapperStyleName);
+        updateComponentSizeHint(component, sizeHint);
     }
 
     /**
@@ -259,7 +585,7 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
         if(component.getParent() != this) {
             throw new IllegalArgumentException("Given component is not child of this MasonryLayout");
         }
-        return getState().itemStyleNames.get(component);
+        return itemStyleNames.get(component);
     }
 
     /**
@@ -272,17 +598,265 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
         if(childComponent.getParent() != this) {
             throw new IllegalArgumentException("Given component is not child of this MasonryLayout");
         }
-        getState().itemStyleNames.put(childComponent, wrapperStyleName);
+        if(setWrapperStyleName(childComponent, wrapperStyleName) && metrics != null) {
+            metrics.wrapperStyleNameUpdated(this);
+        }
+    }
+
+    /**
+     * Store wrapper style name of item and mark it to be sent to client side if it changed
+     * @return true if style name changed
+     */
+    private boolean setWrapperStyleName(Component component, String wrapperStyleName) {
+        String old = wrapperStyleName == null ? itemStyleNames.remove(component)
+                : itemStyleNames.put(component, wrapperStyleName);
+        if(wrapperStyleName == null ? old != null : !wrapperStyleName.equals(old)) {
+            retainWrapperStyleName(wrapperStyleName);
+            releaseWrapperStyleName(old);
+            changedWrapperStyleNames.add(component);
+            // Column span of item may have changed
+            pendingImageSources.add(component);
+            itemsChangedFrom(components.indexOf(component));
+            markAsDirty();
+            return true;
+        }
+        return false;
+    }
+
+    private void retainWrapperStyleName(String wrapperStyleName) {
+        if(wrapperStyleName != null) {
+            Integer usage = wrapperStyleNameUsage.get(wrapperStyleName);
+            wrapperStyleNameUsage.put(wrapperStyleName, usage == null ? 1 : usage + 1);
+        }
+    }
+
+    /**
+     * Reduce usage count of wrapper style name. When style name is not used by any item anymore, its interned id is
+     * released and will be reused for next new style name.
+     */
+    private void releaseWrapperStyleName(String wrapperStyleName) {
+        if(wrapperStyleName == null) {
+            return;
+        }
+        Integer usage = wrapperStyleNameUsage.get(wrapperStyleName);
+        if(usage != null && usage > 1) {
+            wrapperStyleNameUsage.put(wrapperStyleName, usage - 1);
+            return;
+        }
+        wrapperStyleNameUsage.remove(wrapperStyleName);
+        Integer id = wrapperStyleNameIds.remove(wrapperStyleName);
+        if(id != null) {
+            getState().wrapperStyleNames.set(id, null);
+            releasedWrapperStyleNameIds.add(id);
+        }
+    }
+
+    /**
+     * Get id of interned wrapper style name. New style names are added to shared state, to place of released style
+     * name if there is one.
+     * @param wrapperStyleName Wrapper style name
+     * @return Index of style name in shared state, or -1 if style name is null
+     */
+    private int getWrapperStyleNameId(String wrapperStyleName) {
+        if(wrapperStyleName == null) {
+            return -1;
+        }
+        Integer id = wrapperStyleNameIds.get(wrapperStyleName);
+        if(id == null) {
+            if(releasedWrapperStyleNameIds.isEmpty()) {
+                id = getState(false).wrapperStyleNames.size();
+                getState().wrapperStyleNames.add(wrapperStyleName);
+            } else {
+                id = releasedWrapperStyleNameIds.remove(releasedWrapperStyleNameIds.size() - 1);
+                getState().wrapperStyleNames.set(id, wrapperStyleName);
+            }
+            wrapperStyleNameIds.put(wrapperStyleName, id);
+        }
+        return id;
+    }
+
+    /**
+     * Send changed wrapper style names to client side. Style names of items added since previous response (all
+     * items if client side is not initialized) are given in shared state, as it is applied before the hierarchy
+     * change and new wrappers get their style names when they are created. Style name changes of other items are
+     * sent as deltas with client RPC.
+     * @param initial true if client side does not know this layout yet
+     */
+    protected void sendWrapperStyleNames(boolean initial) {
+        Map<Connector, Integer> addedIds = new HashMap<Connector, Integer>();
+        for(Component component : initial ? components : addedComponents) {
+            String styleName = itemStyleNames.get(component);
+            if(styleName != null && component.getParent() == this) {
+                addedIds.put(component, getWrapperStyleNameId(styleName));
+            }
+        }
+        if(!addedIds.equals(getState(false).addedItemStyleNameIds)) {
+            getState().addedItemStyleNameIds = addedIds;
+        }
+
+        Map<Connector, Integer> styleNameIds = new HashMap<Connector, Integer>();
+        if(!initial) {
+            for(Component component : changedWrapperStyleNames) {
+                String styleName = itemStyleNames.get(component);
+                // Removed style name of re-added component has to be cleared from its existing wrapper
+                if(component.getParent() == this && (styleName == null || !addedComponents.contains(component))) {
+                    styleNameIds.put(component, getWrapperStyleNameId(styleName));
+                }
+            }
+        }
+        changedWrapperStyleNames.clear();
+
+        if(!styleNameIds.isEmpty()) {
+            getRpcProxy(MasonryLayoutClientRpc.class).updateWrapperStyleNames(styleNameIds);
+        }
+    }
+
+    /**
+     * Update size reserved for component's wrapper
+     * @param childComponent Child component of this MasonryLayout
+     * @param sizeHint Size reserved for wrapper, or null if nothing is reserved
+     * @throws IllegalArgumentException If given component is not child of this MasonryLayout
+     */
+    public void updateComponentSizeHint(Component childComponent, MasonryItemSizeHint sizeHint) {
+        if(childComponent.getParent() != this) {
+            throw new IllegalArgumentException("Given component is not child of this MasonryLayout");
+        }
+        MasonryItemSizeHint old = sizeHint == null ? sizeHints.remove(childComponent)
+                : sizeHints.put(childComponent, sizeHint);
+        if(sizeHint == null ? old != null : !sizeHint.equals(old)) {
+            changedSizeHints.add(childComponent);
+            markAsDirty();
+        }
+    }
+
+    /**
+     * Send changed size hints to client side. All size hints are sent if client side is not initialized.
+     * @param initial true if client side does not know this layout yet
+     */
+    protected void sendSizeHints(boolean initial) {
+        Map<Connector, MasonryItemSizeHint> changed = new HashMap<Connector, MasonryItemSizeHint>();
+        if(initial) {
+            changed.putAll(sizeHints);
+        } else {
+            for(Component component : changedSizeHints) {
+                if(component.getParent() == this) {
+                    changed.put(component, sizeHints.get(component));
+                }
+            }
+        }
+        changedSizeHints.clear();
+
+        if(!changed.isEmpty()) {
+            getRpcProxy(MasonryLayoutClientRpc.class).updateSizeHints(changed);
+        }
+    }
+
+    /**
+     * Get size reserved for component's wrapper
+     * @param childComponent Child component of this MasonryLayout
+     * @return Size hint of component, or null if not defined
+     */
+    public MasonryItemSizeHint getComponentSizeHint(Component childComponent) {
+        return sizeHints.get(childComponent);
     }
 
     @Override
     public void removeComponent(Component component) {
 
-        getState().itemStyleNames.remove(component);
+        String styleName = itemStyleNames.remove(component);
+        if(styleName != null) {
+            // Component can be added back before next response, so its wrapper may still need to be updated
+            changedWrapperStyleNames.add(component);
+            releaseWrapperStyleName(styleName);
+        }
+        addedComponents.remove(component);
+        imageSources.remove(component);
+        pendingImageSources.remove(component);
+        sentPositions.remove(component);
+        itemsChangedFrom(components.indexOf(component));
+        if(sizeHints.remove(component) != null) {
+            // Component can be added back before next response and keep its wrapper
+            changedSizeHints.add(component);
+        }
+        heightHints.remove(component);
+        pendingImageProbes.remove(component);
 
         if(components.remove(component)) {
             super.removeComponent(component);
             markAsDirty();
+            if(metrics != null && !metricsSuppressed) {
+                metrics.componentRemoved(this);
+            }
+        }
+    }
+
+    /**
+     * Add components to given index in one batch
+     * @param components Components added, in order
+     * @param generator Generator of wrapper style names, or null if no extra style names
+     * @param index Index where first component is added
+     */
+    public void addComponents(final Collection<? extends Component> components,
+            final WrapperStyleNameGenerator generator, final int index) {
+        batch(new BatchUpdate() {
+            @Override
+            public void update(MasonryLayout layout) {
+                int position = index;
+                for(Component component : components) {
+                    String wrapperStyleName = generator == null ? null : generator.getWrapperStyleName(component);
+                    addComponent(component, wrapperStyleName, position);
+                    position = getComponentIndex(component) + 1;
+                }
+            }
+        });
+    }
+
+    /**
+     * Add components to end of layout in one batch
+     * @param components Components added, in order
+     * @param generator Generator of wrapper style names, or null if no extra style names
+     */
+    public void addComponents(Collection<? extends Component> components, WrapperStyleNameGenerator generator) {
+        addComponents(components, generator, getComponentCount());
+    }
+
+    /**
+     * Remove components in one batch
+     * @param components Components removed
+     */
+    public void removeComponents(final Collection<? extends Component> components) {
+        batch(new BatchUpdate() {
+            @Override
+            public void update(MasonryLayout layout) {
+                for(Component component : components) {
+                    removeComponent(component);
+                }
+            }
+        });
+    }
+
+    /**
+     * Apply multiple changes to layout. Layout is marked dirty only once, after all changes are applied.
+     * @param update Changes applied
+     */
+    public void batch(BatchUpdate update) {
+        ++batchDepth;
+        try {
+            update.update(this);
+        } finally {
+            if(--batchDepth == 0 && dirtyDuringBatch) {
+                dirtyDuringBatch = false;
+                super.markAsDirty();
+            }
+        }
+    }
+
+    @Override
+    public void markAsDirty() {
+        if(batchDepth > 0) {
+            dirtyDuringBatch = true;
+        } else {
+            super.markAsDirty();
         }
     }
 
@@ -301,6 +875,9 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
      */
     public void requestLayout() {
         getRpcProxy(MasonryLayoutClientRpc.class).layout();
+        if(metrics != null) {
+            metrics.layoutRequested(this);
+        }
     }
 
     /**
@@ -359,6 +936,20 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
         }
     }
 
+    /**
+     * Define if client side should automatically relayout when images are loaded. In progressive mode items are
+     * relayouted as their images are loaded, starting from first item with loaded image, at most once per animation
+     * frame. Otherwise layout is fixed when all images are loaded.
+     * @param relayout if true client side will relayout automatically when images loaded
+     * @param progressive if true relayout is done progressively for each loaded image
+     */
+    public void setAutomaticLayoutWhenImagesLoaded(boolean relayout, boolean progressive) {
+        setAutomaticLayoutWhenImagesLoaded(relayout);
+        if(relayout) {
+            ImagesLoadedExtension.getExtension(this).setProgressive(progressive);
+        }
+    }
+
     /**
      * Check if client side is hooked to relayout when images are loaded.
      * @return true if client side will automatically relayout when images loaded.
@@ -390,13 +981,608 @@ public class MasonryLayout extends AbstractLayout implements LayoutEvents.Layout
         getState().transitionDuration = time;
     }
 
+    /**
+     * Define if item positions are calculated on server side from height hints. When enabled, items with height
+     * hints are rendered directly to their final positions, and client side only corrects the layout if measured
+     * height of item differs from its hint. Positions are calculated for items in order until first item without
+     * height hint; rest of items are positioned on client side.
+     * @param enabled true to calculate positions on server side
+     */
+    public void setServerLayoutEnabled(boolean enabled) {
+        getState().serverLayout = enabled;
+    }
+
+    /**
+     * Check if item positions are calculated on server side
+     * @return true if server side layout is enabled
+     */
+    public boolean isServerLayoutEnabled() {
+        return getState(false).serverLayout;
+    }
+
+    /**
+     * Define expected height of child component's wrapper. Used when server side layout is enabled.
+     * @param childComponent Child component of this MasonryLayout
+     * @param height Outer height of wrapper in pixels, including wrapper's margins (16px with default theme)
+     * @throws IllegalArgumentException If given component is not child of this MasonryLayout
+     */
+    public void setItemHeightHint(Component childComponent, int height) {
+        if(childComponent.getParent() != this) {
+            throw new IllegalArgumentException("Given component is not child of this MasonryLayout");
+        }
+        if(height < 0) {
+            throw new IllegalArgumentException("Height hint can not be negative");
+        }
+        Integer old = heightHints.put(childComponent, height);
+        if(old == null || old.intValue() != height) {
+            itemsChangedFrom(components.indexOf(childComponent));
+            markAsDirty();
+        }
+    }
+
+    /**
+     * Remove height hint of child component
+     * @param childComponent Child component of this MasonryLayout
+     */
+    public void removeItemHeightHint(Component childComponent) {
+        if(heightHints.remove(childComponent) != null) {
+            itemsChangedFrom(components.indexOf(childComponent));
+            markAsDirty();
+        }
+    }
+
+    /**
+     * Get height hint of child component
+     * @param childComponent Child component of this MasonryLayout
+     * @return Outer height of wrapper in pixels, or null if not defined
+     */
+    public Integer getItemHeightHint(Component childComponent) {
+        return heightHints.get(childComponent);
+    }
+
+    /**
+     * Resolve number of columns for server side layout. Inner width reported by client side is used when known,
+     * otherwise width of layout if it's defined in pixels.
+     * @return Number of columns, or -1 if not known
+     */
+    protected int getServerLayoutColumnCount() {
+        int width = clientLayoutWidth;
+        if(width < 0 && getWidthUnits() == Sizeable.Unit.PIXELS && getWidth() > 0) {
+            width = (int) getWidth();
+        }
+        if(width < 0) {
+            return -1;
+        }
+        return MasonryLayoutCalculator.getColumnCount(width, getState(false).columnWidth);
+    }
+
+    /**
+     * Mark server side positions invalid starting from given index
+     * @param index Index of first item whose position may have changed, ignored if negative
+     */
+    private void itemsChangedFrom(int index) {
+        if(index >= 0) {
+            positionsChangedFrom = Math.min(positionsChangedFrom, index);
+        }
+    }
+
+    /**
+     * Calculate item positions from height hints, starting from first item changed since previous response, and
+     * send changed positions to client side. All positions are sent if client side is not initialized.
+     * @param initial true if client side does not know this layout yet
+     */
+    protected void updateItemPositions(boolean initial) {
+        int columns = getState(false).serverLayout ? getServerLayoutColumnCount() : -1;
+        if(getState(false).serverLayoutColumns != columns) {
+            getState().serverLayoutColumns = columns;
+            positionsChangedFrom = 0;
+        }
+        if(initial) {
+            sentPositions.clear();
+            positionsChangedFrom = 0;
+        }
+
+        int from = Math.min(positionsChangedFrom, itemPositions.size());
+        if(columns < 1) {
+            from = 0;
+        } else if(from < itemPositions.size() || positionCalculator == null
+                || positionCalculator.getColumnCount() != columns) {
+            // Continue from column heights of items before first change
+            positionCalculator = new MasonryLayoutCalculator(columns);
+            for(int i = 0; i < from; ++i) {
+                positionCalculator.restore(itemPositions.get(i));
+            }
+        }
+        itemPositions.subList(from, itemPositions.size()).clear();
+        positionsChangedFrom = Integer.MAX_VALUE;
+
+        Map<Connector, MasonryItemPosition> changed = new HashMap<Connector, MasonryItemPosition>();
+        if(columns > 0) {
+            for(int i = from; i < components.size(); ++i) {
+                Component component = components.get(i);
+                Integer height = heightHints.get(component);
+                if(height == null) {
+                    break;
+                }
+                int span = MasonryLayoutCalculator.getColumnSpan(itemStyleNames.get(component));
+                MasonryItemPosition position = positionCalculator.place(span, height);
+                itemPositions.add(position);
+                if(!position.equals(sentPositions.put(component, position))) {
+                    changed.put(component, position);
+                }
+            }
+        } else {
+            positionCalculator = null;
+        }
+
+        if(sentPositions.size() > itemPositions.size()) {
+            // Items after first item without height hint do not have position anymore
+            for(int i = itemPositions.size(); i < components.size(); ++i) {
+                if(sentPositions.remove(components.get(i)) != null) {
+                    changed.put(components.get(i), null);
+                }
+            }
+        }
+
+        if(!changed.isEmpty()) {
+            getRpcProxy(MasonryLayoutClientRpc.class).updateItemPositions(changed);
+        }
+    }
+
+    /**
+     * Define service used to resolve natural sizes of images in items. When defined, items without size hint that
+     * are (or contain) an Image with ThemeResource, ClassResource, FileResource or StreamResource source get aspect
+     * ratio of the image as their size hint automatically.
+     * Warning: image headers not found from cache of service are read synchronously before response is sent to
+     * client, while session is locked. Adding many items with slow resources (eg. StreamResources reading remote
+     * data) will block the session for that time, give size hints explicitly for those.
+     * @param service Service used, eg. {@link ImageMetadataService#getDefault()}, or null to disable
+     */
+    public void setImageMetadataService(ImageMetadataService service) {
+        imageMetadataService = service;
+        pendingImageProbes.clear();
+        if(service != null) {
+            pendingImageProbes.addAll(components);
+            markAsDirty();
+        }
+    }
+
+    /**
+     * Get service used to resolve natural sizes of images in items
+     * @return Service used, or null if not defined
+     */
+    public ImageMetadataService getImageMetadataService() {
+        return imageMetadataService;
+    }
+
+    /**
+     * Give size hints to items added since last response, based on image they contain
+     */
+    protected void applyImageSizeHints() {
+        if(imageMetadataService == null || pendingImageProbes.isEmpty()) {
+            return;
+        }
+        for(Component component : pendingImageProbes) {
+            if(component.getParent() != this || sizeHints.containsKey(component)) {
+                continue;
+            }
+            Image image = findImage(component);
+            if(image != null && image.getSource() != null) {
+                ImageDimensions dimensions = imageMetadataService.getDimensions(image.getSource(), getUI());
+                if(dimensions != null) {
+                    updateComponentSizeHint(component, MasonryItemSizeHint.aspectRatio(dimensions.getWidth(),
+                            dimensions.getHeight()));
+                }
+            }
+        }
+        pendingImageProbes.clear();
+    }
+
+    /**
+     * Find first image from component tree
+     * @param component Root of component tree
+     * @return First image found, or null if none
+     */
+    protected static Image findImage(Component component) {
+        if(component instanceof Image) {
+            return (Image) component;
+        } else if(component instanceof HasComponents) {
+            for(Component child : (HasComponents) component) {
+                Image image = findImage(child);
+                if(image != null) {
+                    return image;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Define handler that appends more items when bottom of layout comes near the viewport. Client side asks more
+     * items only once and waits for the answer before asking again.
+     * @param handler Handler used, or null to disable loading more items
+     * @param batchSize Number of items asked from handler at once
+     * @param thresholdPx More items are asked when bottom of layout is this close to bottom of viewport
+     */
+    public void setLoadMoreHandler(LoadMoreHandler handler, int batchSize, int thresholdPx) {
+        if(handler != null && batchSize < 1) {
+            throw new IllegalArgumentException("Batch size has to be positive");
+        }
+        if(thresholdPx < 0) {
+            throw new IllegalArgumentException("Threshold can not be negative");
+        }
+        loadMoreHandler = handler;
+        loadMoreBatchSize = batchSize;
+        getState().loadMoreThreshold = thresholdPx;
+        getState().loadMoreEnabled = handler != null;
+    }
+
+    /**
+     * Get handler that appends more items
+     * @return Handler, or null if not defined
+     */
+    public LoadMoreHandler getLoadMoreHandler() {
+        return loadMoreHandler;
+    }
+
+    /**
+     * Get number of items asked from load more handler at once
+     * @return Number of items
+     */
+    public int getLoadMoreBatchSize() {
+        return loadMoreBatchSize;
+    }
+
+    /**
+     * Get distance to bottom of viewport when more items are asked
+     * @return Threshold in pixels
+     */
+    public int getLoadMoreThreshold() {
+        return getState(false).loadMoreThreshold;
+    }
+
+    /**
+     * Check if more items are still loaded when scrolling. Disabled when load more handler tells all items have been
+     * loaded.
+     * @return true if more items are asked from load more handler
+     */
+    public boolean isLoadMoreEnabled() {
+        return getState(false).loadMoreEnabled;
+    }
+
+    /**
+     * Start asking more items again after load more handler has told all items have been loaded (e.g. when new
+     * items are available)
+     */
+    public void resetLoadMore() {
+        if(loadMoreHandler != null && !getState(false).loadMoreEnabled) {
+            getState().loadMoreEnabled = true;
+        }
+    }
+
+    /**
+     * Ask next batch of items from load more handler
+     */
+    protected void handleLoadMore() {
+        if(loadMoreHandler == null || !getState(false).loadMoreEnabled) {
+            return;
+        }
+        final boolean[] hasMore = new boolean[] { true };
+        batch(new BatchUpdate() {
+            @Override
+            public void update(MasonryLayout layout) {
+                hasMore[0] = loadMoreHandler.loadMore(layout, loadMoreBatchSize);
+            }
+        });
+        if(!hasMore[0]) {
+            getState().loadMoreEnabled = false;
+        }
+    }
+
+    /**
+     * Allow user to reorder items by dragging them. Items are moved on client side while dragged, and server is
+     * told once when item is dropped. Reorder can be rejected with {@link #setReorderFilter(ReorderFilter)}.
+     * @param reorderable true to allow reordering
+     */
+    public void setReorderable(boolean reorderable) {
+        if(getState(false).reorderable != reorderable) {
+            getState().reorderable = reorderable;
+        }
+    }
+
+    /**
+     * Check if user can reorder items by dragging them
+     * @return true if reordering is allowed
+     */
+    public boolean isReorderable() {
+        return getState(false).reorderable;
+    }
+
+    /**
+     * Set filter used to accept or reject reorders made by user
+     * @param filter Filter used, or null to accept all reorders
+     */
+    public void setReorderFilter(ReorderFilter filter) {
+        reorderFilter = filter;
+    }
+
+    /**
+     * Get filter used to accept or reject reorders made by user
+     * @return Filter used, or null if not defined
+     */
+    public ReorderFilter getReorderFilter() {
+        return reorderFilter;
+    }
+
+    /**
+     * Add listener called after user has reordered items
+     * @param listener Listener added
+     */
+    public void addReorderListener(ReorderListener listener) {
+        if(listener == null) {
+            throw new IllegalArgumentException("Listener can not be null");
+        }
+        reorderListeners.add(listener);
+    }
+
+    /**
+     * Remove listener of reorders
+     * @param listener Listener removed
+     */
+    public void removeReorderListener(ReorderListener listener) {
+        reorderListeners.remove(listener);
+    }
+
+    /**
+     * Apply reorder made by user on client side. Client side has already moved the item, so when move is accepted
+     * nothing is moved again on client side.
+     * @param fromIndex Index of component before move
+     * @param toIndex Index of component after move
+     * @return true if move was applied, false if it was rejected and client side has to be returned to server order
+     */
+    protected boolean handleReorder(int fromIndex, int toIndex) {
+        int count = components.size();
+        if(!isReorderable() || fromIndex == toIndex || fromIndex < 0 || fromIndex >= count || toIndex < 0
+                || toIndex >= count) {
+            return false;
+        }
+
+        Component component = components.get(fromIndex);
+        if(reorderFilter != null && !reorderFilter.acceptReorder(this, component, fromIndex, toIndex)) {
+            return false;
+        }
+
+        moveComponent(component, toIndex);
+        ReorderEvent event = new ReorderEvent(this, component, fromIndex, toIndex);
+        for(ReorderListener listener : new ArrayList<ReorderListener>(reorderListeners)) {
+            listener.onReorder(event);
+        }
+        return true;
+    }
+
+    /**
+     * Add listener of client side layout metrics. Client side only measures layout passes while there are listeners.
+     * @param listener Listener added
+     */
+    public void addLayoutMetricsListener(LayoutMetricsListener listener) {
+        if(listener == null) {
+            throw new IllegalArgumentException("Listener can not be null");
+        }
+        layoutMetricsListeners.add(listener);
+        updateLayoutMetricsInterval();
+    }
+
+    /**
+     * Remove listener of client side layout metrics
+     * @param listener Listener removed
+     */
+    public void removeLayoutMetricsListener(LayoutMetricsListener listener) {
+        layoutMetricsListeners.remove(listener);
+        updateLayoutMetricsInterval();
+    }
+
+    /**
+     * Define how often collected layout metrics are sent to server. Metrics are only sent if layout passes were
+     * performed during the interval.
+     * @param milliseconds Interval in milliseconds
+     */
+    public void setLayoutMetricsInterval(int milliseconds) {
+        if(milliseconds < 1) {
+            throw new IllegalArgumentException("Interval has to be positive");
+        }
+        layoutMetricsInterval = milliseconds;
+        updateLayoutMetricsInterval();
+    }
+
+    /**
+     * Get how often collected layout metrics are sent to server
+     * @return Interval in milliseconds
+     */
+    public int getLayoutMetricsInterval() {
+        return layoutMetricsInterval;
+    }
+
+    private void updateLayoutMetricsInterval() {
+        int interval = layoutMetricsListeners.isEmpty() ? 0 : layoutMetricsInterval;
+        if(getState(false).layoutMetricsInterval != interval) {
+            getState().layoutMetricsInterval = interval;
+        }
+    }
+
+    /**
+     * Define service used to give responsive image sources to items. When defined, first Image of each item with
+     * ExternalResource source accepted by service gets srcset pointing to variants sized for item's column span
+     * (based on wrapper style name) and device pixel ratios. Sources are resolved when item is added or its wrapper
+     * style name changes, use {@link #refreshComponentImageSources(Component)} if image of item is changed later.
+     * @param service Service used, or null to disable
+     */
+    public void setImageVariantService(ImageVariantService service) {
+        imageVariantService = service;
+        pendingImageSources.addAll(components);
+        markAsDirty();
+    }
+
+    /**
+     * Resolve responsive image sources of child component again. Call this if Image inside item, or its source, has
+     * been changed after item was added.
+     * @param childComponent Child component of this MasonryLayout
+     * @throws IllegalArgumentException If given component is not child of this MasonryLayout
+     */
+    public void refreshComponentImageSources(Component childComponent) {
+        if(childComponent.getParent() != this) {
+            throw new IllegalArgumentException("Given component is not child of this MasonryLayout");
+        }
+        if(pendingImageSources.add(childComponent)) {
+            markAsDirty();
+        }
+    }
+
+    /**
+     * Get service used to give responsive image sources to items
+     * @return Service used, or null if not defined
+     */
+    public ImageVariantService getImageVariantService() {
+        return imageVariantService;
+    }
+
+    /**
+     * Resolve responsive image sources of items added or changed since previous response, and send changed sources
+     * to client side. Sources of all items are resolved and sent if client side is not initialized.
+     * @param initial true if client side does not know this layout yet
+     */
+    protected void sendImageSources(boolean initial) {
+        if(initial) {
+            imageSources.clear();
+            pendingImageSources.addAll(components);
+        }
+
+        Map<Connector, MasonryImageSources> changed = new HashMap<Connector, MasonryImageSources>();
+        for(Component component : pendingImageSources) {
+            if(component.getParent() != this) {
+                continue;
+            }
+            MasonryImageSources sources = resolveImageSources(component);
+            MasonryImageSources old = sources == null ? imageSources.remove(component)
+                    : imageSources.put(component, sources);
+            if(sources == null ? old != null : !sources.equals(old)) {
+                changed.put(component, sources);
+            }
+        }
+        pendingImageSources.clear();
+
+        if(!changed.isEmpty()) {
+            getRpcProxy(MasonryLayoutClientRpc.class).updateImageSources(changed);
+        }
+    }
+
+    /**
+     * Resolve responsive image sources of item
+     * @param component Child component
+     * @return Sources of first image in item, or null if item does not get responsive sources
+     */
+    private MasonryImageSources resolveImageSources(Component component) {
+        if(imageVariantService == null) {
+            return null;
+        }
+        Image image = findImage(component);
+        if(image == null || !(image.getSource() instanceof ExternalResource)) {
+            return null;
+        }
+        String url = ((ExternalResource) image.getSource()).getURL();
+        if(!imageVariantService.acceptsUrl(url)) {
+            return null;
+        }
+        int span = MasonryLayoutCalculator.getColumnSpan(itemStyleNames.get(component));
+        int displayWidth = span * getState(false).columnWidth;
+        return new MasonryImageSources(imageVariantService.getSrcset(url, displayWidth),
+                imageVariantService.getSizes(displayWidth));
+    }
+
     @Override
     public void beforeClientResponse(boolean initial) {
         super.beforeClientResponse(initial);
 
+        sendWrapperStyleNames(initial);
+        applyImageSizeHints();
+        sendSizeHints(initial);
+        sendImageSources(initial);
+        updateItemPositions(initial);
+
+        addedComponents.clear();
         if(initial) {
             initialClientResponseSent = true;
         }
+
+        if(metrics != null) {
+            reportResponseSize(metrics);
+        }
+    }
+
+    /**
+     * Measure state diff and child list that will be written to client side. State is encoded against diff state of
+     * connector tracker without updating it, so this does not affect what is actually sent.
+     * @param metrics Metrics where sizes are reported
+     */
+    protected void reportResponseSize(MasonryMetrics metrics) {
+        ConnectorTracker tracker = getUI().getConnectorTracker();
+        JsonValue diff = JsonCodec.encode(getState(false), tracker.getDiffState(this), getStateType(), tracker)
+                .getDiff();
+        int stateBytes = 0;
+        if(diff instanceof JsonObject && ((JsonObject) diff).keys().length > 0) {
+            stateBytes = utf8Length(diff.toJson());
+        }
+
+        int hierarchyBytes = 0;
+        if(tracker.isDirty(this)) {
+            JsonArray children = Json.createArray();
+            for(Component child : components) {
+                children.set(children.length(), child.getConnectorId());
+            }
+            hierarchyBytes = utf8Length(children.toJson());
+        }
+
+        metrics.responseWritten(this, stateBytes, hierarchyBytes);
+    }
+
+    private static int utf8Length(String string) {
+        try {
+            return string.getBytes("UTF-8").length;
+        } catch (UnsupportedEncodingException e) {
+            return string.length();
+        }
+    }
+
+    /**
+     * Set metrics used by MasonryLayouts created after this call
+     * @param metrics Metrics used, or null to not count anything
+     */
+    public static void setDefaultMetrics(MasonryMetrics metrics) {
+        defaultMetrics = metrics;
+    }
+
+    /**
+     * Get metrics used by new MasonryLayouts
+     * @return Metrics used, or null if not defined
+     */
+    public static MasonryMetrics getDefaultMetrics() {
+        return defaultMetrics;
+    }
+
+    /**
+     * Set metrics used by this layout. By default metrics defined with {@link #setDefaultMetrics(MasonryMetrics)}
+     * are used.
+     * @param metrics Metrics used, or null to not count anything
+     */
+    public void setMetrics(MasonryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get metrics used by this layout
+     * @return Metrics used, or null if not defined
+     */
+    public MasonryMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
@@ -0,0 +1,134 @@
+/**
+ * MasonryLayoutCalculator.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import org.vaadin.alump.masonry.client.shared.MasonryItemPosition;
+
+import java.io.Serializable;
+
+/**
+ * Calculates item positions with the same column packing rules as Masonry JavaScript library: each item is placed
+ * to the columns where its top can be highest, leftmost columns winning ties.
+ */
+public class MasonryLayoutCalculator implements Serializable {
+
+    private final int[] columnHeights;
+
+    /**
+     * Create new calculator
+     * @param columns Number of columns, values below one are handled as one
+     */
+    public MasonryLayoutCalculator(int columns) {
+        columnHeights = new int[Math.max(1, columns)];
+    }
+
+    /**
+     * Resolve number of columns Masonry will use
+     * @param containerWidth Inner width of layout in pixels
+     * @param columnWidth Column width in pixels
+     * @return Number of columns, at least one
+     */
+    public static int getColumnCount(int containerWidth, int columnWidth) {
+        if(columnWidth < 1) {
+            return 1;
+        }
+        return Math.max(1, containerWidth / columnWidth);
+    }
+
+    /**
+     * Resolve number of columns used by item with given wrapper style name
+     * @param wrapperStyleName Wrapper style name, or null
+     * @return Number of columns (1 - 4)
+     */
+    public static int getColumnSpan(String wrapperStyleName) {
+        if(wrapperStyleName == null) {
+            return 1;
+        }
+        for(String styleName : wrapperStyleName.split(" ")) {
+            if(MasonryLayout.QUADRUPLE_WIDE_STYLENAME.equals(styleName)) {
+                return 4;
+            } else if(MasonryLayout.TRIPLE_WIDE_STYLENAME.equals(styleName)) {
+                return 3;
+            } else if(MasonryLayout.DOUBLE_WIDE_STYLENAME.equals(styleName)) {
+                return 2;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Get number of columns
+     * @return Number of columns
+     */
+    public int getColumnCount() {
+        return columnHeights.length;
+    }
+
+    /**
+     * Mark columns covered by already placed item as used. Used to continue calculation from middle of items:
+     * restoring positions of items before that gives same column heights as placing them again.
+     * @param position Position of item placed earlier
+     */
+    public void restore(MasonryItemPosition position) {
+        int end = Math.min(position.column + position.span, columnHeights.length);
+        for(int i = Math.max(0, position.column); i < end; ++i) {
+            columnHeights[i] = Math.max(columnHeights[i], position.top + position.height);
+        }
+    }
+
+    /**
+     * Place next item
+     * @param span Number of columns used by item, limited to column count
+     * @param height Outer height of item in pixels
+     * @return Position of item
+     */
+    public MasonryItemPosition place(int span, int height) {
+        span = Math.max(1, Math.min(span, columnHeights.length));
+
+        int bestColumn = 0;
+        int bestTop = Integer.MAX_VALUE;
+        for(int column = 0; column + span <= columnHeights.length; ++column) {
+            int top = 0;
+            for(int i = column; i < column + span; ++i) {
+                top = Math.max(top, columnHeights[i]);
+            }
+            if(top < bestTop) {
+                bestTop = top;
+                bestColumn = column;
+            }
+        }
+
+        for(int i = bestColumn; i < bestColumn + span; ++i) {
+            columnHeights[i] = bestTop + height;
+        }
+        return new MasonryItemPosition(bestColumn, span, bestTop, height);
+    }
+
+    /**
+     * Get height of layout with items placed so far
+     * @return Height of highest column in pixels
+     */
+    public int getHeight() {
+        int height = 0;
+        for(int columnHeight : columnHeights) {
+            height = Math.max(height, columnHeight);
+        }
+        return height;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * MasonryMetrics.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import java.io.Serializable;
+
+/**
+ * Receiver of server side operation counts and response sizes of MasonryLayouts. Set globally with
+ * {@link MasonryLayout#setDefaultMetrics(MasonryMetrics)} or per layout with
+ * {@link MasonryLayout#setMetrics(MasonryMetrics)}. When no metrics are set, nothing is counted or measured.
+ * Implementations are called from all sessions, so they have to be thread safe.
+ *
+ * @see JmxMasonryMetrics
+ */
+public interface MasonryMetrics extends Serializable {
+
+    /**
+     * Called when component was added to layout
+     * @param layout Layout changed
+     */
+    void componentAdded(MasonryLayout layout);
+
+    /**
+     * Called when component was removed from layout
+     * @param layout Layout changed
+     */
+    void componentRemoved(MasonryLayout layout);
+
+    /**
+     * Called when child component was moved to other index
+     * @param layout Layout changed
+     */
+    void componentMoved(MasonryLayout layout);
+
+    /**
+     * Called when component was replaced with other component. Replace is not reported as remove and add.
+     * @param layout Layout changed
+     */
+    void componentReplaced(MasonryLayout layout);
+
+    /**
+     * Called when wrapper style name of child component was changed
+     * @param layout Layout changed
+     */
+    void wrapperStyleNameUpdated(MasonryLayout layout);
+
+    /**
+     * Called when layout call was queued to client side with {@link MasonryLayout#requestLayout()}
+     * @param layout Layout requested
+     */
+    void layoutRequested(MasonryLayout layout);
+
+    /**
+     * Called when changes of layout are about to be written to client side
+     * @param layout Layout written
+     * @param stateDiffBytes Size of state diff in UTF-8 encoded JSON, 0 if state did not change
+     * @param hierarchyBytes Size of child list in UTF-8 encoded JSON, 0 if hierarchy is not written
+     */
+    void responseWritten(MasonryLayout layout, int stateDiffBytes, int hierarchyBytes);
+}
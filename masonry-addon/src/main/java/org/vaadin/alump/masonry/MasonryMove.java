@@ -0,0 +1,123 @@
+/**
+ * MasonryMove.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Single move of item in ordered list: item is removed from fromIndex and then inserted to toIndex. Moves of reorder
+ * events can be applied to external copy of layout order (eg. order persisted to database) with
+ * {@link #apply(List, List)}, so only the changed positions need to be handled.
+ */
+public class MasonryMove implements Serializable {
+
+    private final int fromIndex;
+    private final int toIndex;
+
+    /**
+     * Create new move
+     * @param fromIndex Index of item before move
+     * @param toIndex Index of item after move
+     */
+    public MasonryMove(int fromIndex, int toIndex) {
+        if(fromIndex < 0 || toIndex < 0) {
+            throw new IllegalArgumentException("Indexes can not be negative");
+        }
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    /**
+     * Get index of item before move
+     * @return Old index of item
+     */
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * Get index of item after move
+     * @return New index of item
+     */
+    public int getToIndex() {
+        return toIndex;
+    }
+
+    /**
+     * Get first index whose item is changed by this move. Items before it keep their positions.
+     * @return Smaller of from and to index
+     */
+    public int getFirstChangedIndex() {
+        return Math.min(fromIndex, toIndex);
+    }
+
+    /**
+     * Get last index whose item is changed by this move. Items after it keep their positions.
+     * @return Larger of from and to index
+     */
+    public int getLastChangedIndex() {
+        return Math.max(fromIndex, toIndex);
+    }
+
+    /**
+     * Apply this move to given list
+     * @param list List modified
+     * @param <T> Type of list items
+     * @throws IndexOutOfBoundsException If list is too short for this move
+     */
+    public <T> void applyTo(List<T> list) {
+        if(fromIndex != toIndex) {
+            list.add(toIndex, list.remove(fromIndex));
+        }
+    }
+
+    /**
+     * Apply moves in order to given list. Each move is one remove and one insert, so with ArrayList each move costs
+     * O(n) and with list with logarithmic positional access O(log n).
+     * @param list List modified, should have same order as layout had before the moves
+     * @param moves Moves applied
+     * @param <T> Type of list items
+     * @throws IndexOutOfBoundsException If list is too short for the moves
+     */
+    public static <T> void apply(List<T> list, List<MasonryMove> moves) {
+        for(MasonryMove move : moves) {
+            move.applyTo(list);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof MasonryMove)) {
+            return false;
+        }
+        MasonryMove other = (MasonryMove) obj;
+        return fromIndex == other.fromIndex && toIndex == other.toIndex;
+    }
+
+    @Override
+    public int hashCode() {
+        return fromIndex * 31 + toIndex;
+    }
+
+    @Override
+    public String toString() {
+        return fromIndex + "->" + toIndex;
+    }
+}
@@ -0,0 +1,479 @@
+/**
+ * MasonryVirtualLayout.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry;
+
+import com.vaadin.annotations.JavaScript;
+import com.vaadin.event.LayoutEvents;
+import com.vaadin.shared.Connector;
+import com.vaadin.shared.EventId;
+import com.vaadin.shared.MouseEventDetails;
+import com.vaadin.ui.AbstractComponent;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.HasComponents;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutClientRpc;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutMetrics;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutServerRpc;
+import org.vaadin.alump.masonry.client.shared.MasonryVirtualLayoutServerRpc;
+import org.vaadin.alump.masonry.client.shared.MasonryVirtualLayoutState;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Masonry layout that gets its items from ItemSource and only keeps items near the client side viewport as child
+ * components. Space of other items is reserved with estimated item height, so it is recommended to use items with
+ * about the same height.
+ *
+ * Child components of this layout are managed by the layout itself, so unlike {@link MasonryLayout} it is not a
+ * ComponentContainer. To change items update item source and call {@link #refreshItems()}.
+ */
+@JavaScript({ "masonry.pkgd.min.js" })
+public class MasonryVirtualLayout extends AbstractComponent implements HasComponents {
+
+    /**
+     * Number of items rendered before client side has told its viewport
+     */
+    public static final int DEFAULT_INITIAL_ITEM_COUNT = 20;
+
+    /**
+     * Default maximum number of items rendered at once
+     */
+    public static final int DEFAULT_MAX_WINDOW_SIZE = 10 * DEFAULT_INITIAL_ITEM_COUNT;
+
+    private ItemSource itemSource;
+    private int maxWindowSize = DEFAULT_MAX_WINDOW_SIZE;
+
+    private boolean initialClientResponseSent = false;
+
+    private final List<Component> components = new IndexedList<Component>();
+
+    /**
+     * Lazy source of items shown in MasonryVirtualLayout
+     */
+    public interface ItemSource extends Serializable {
+
+        /**
+         * Get total number of items
+         * @return Number of items
+         */
+        int getItemCount();
+
+        /**
+         * Get items in given range. Returned components should be new instances or instances not currently in any
+         * other layout.
+         * @param startIndex Index of first item
+         * @param count Number of items requested
+         * @return Items in given range
+         */
+        List<Component> getItems(int startIndex, int count);
+    }
+
+    private final MasonryLayoutServerRpc serverRpc = new MasonryLayoutServerRpc() {
+
+        @Override
+        public void layoutClick(MouseEventDetails mouseDetails, Connector clickedConnector) {
+            Component clicked = (Component) clickedConnector;
+            Component child = clicked;
+            while(child != null && child.getParent() != MasonryVirtualLayout.this) {
+                child = child.getParent();
+            }
+            fireEvent(new LayoutEvents.LayoutClickEvent(MasonryVirtualLayout.this, mouseDetails, clicked, child));
+        }
+
+        @Override
+        public void reportLayoutWidth(int width) {
+            // Server side layout is not used with virtual layout
+        }
+
+        @Override
+        public void loadMore() {
+            // Items are requested with requestRange
+        }
+
+        @Override
+        public void reorder(int fromIndex, int toIndex) {
+            // Order of items is defined by ItemSource
+            getRpcProxy(MasonryLayoutClientRpc.class).reorderRejected();
+        }
+
+        @Override
+        public void reportLayoutMetrics(MasonryLayoutMetrics metrics) {
+            // Layout metrics are not enabled for virtual layout
+        }
+    };
+
+    private final MasonryVirtualLayoutServerRpc virtualServerRpc = new MasonryVirtualLayoutServerRpc() {
+
+        @Override
+        public void requestRange(int firstIndex, int count) {
+            updateWindow(firstIndex, count);
+            getState().windowRevision++;
+        }
+    };
+
+    /**
+     * Create new virtual masonry layout with default column width (300px)
+     */
+    public MasonryVirtualLayout() {
+        super();
+        addStyleName("masonry-virtual-layout");
+        registerRpc(serverRpc, MasonryLayoutServerRpc.class);
+        registerRpc(virtualServerRpc, MasonryVirtualLayoutServerRpc.class);
+    }
+
+    /**
+     * Create new virtual masonry layout with defined column width
+     * @param columnWidth Column width used to calculate left positions of items
+     */
+    public MasonryVirtualLayout(int columnWidth) {
+        this();
+        setColumnWidth(columnWidth);
+    }
+
+    /**
+     * Create new virtual masonry layout with given item source
+     * @param itemSource Source of items
+     */
+    public MasonryVirtualLayout(ItemSource itemSource) {
+        this();
+        setItemSource(itemSource);
+    }
+
+    @Override
+    protected MasonryVirtualLayoutState getState() {
+        return (MasonryVirtualLayoutState) super.getState();
+    }
+
+    @Override
+    protected MasonryVirtualLayoutState getState(boolean markAsDirty) {
+        return (MasonryVirtualLayoutState) super.getState(markAsDirty);
+    }
+
+    /**
+     * Set source of items
+     * @param itemSource Source of items, or null to clear layout
+     */
+    public void setItemSource(ItemSource itemSource) {
+        this.itemSource = itemSource;
+        clearWindow();
+        updateWindow(0, DEFAULT_INITIAL_ITEM_COUNT);
+    }
+
+    /**
+     * Get source of items
+     * @return Source of items, or null if not defined
+     */
+    public ItemSource getItemSource() {
+        return itemSource;
+    }
+
+    /**
+     * Ask layout to reread item count and currently rendered items from item source. Call this when items in item
+     * source have changed.
+     */
+    public void refreshItems() {
+        int firstIndex = getState(false).firstIndex;
+        int count = Math.max(getComponentCount(), DEFAULT_INITIAL_ITEM_COUNT);
+        clearWindow();
+        updateWindow(firstIndex, count);
+    }
+
+    /**
+     * Get index of first item currently rendered
+     * @return Index of first child component in item source
+     */
+    public int getFirstRenderedIndex() {
+        return getState(false).firstIndex;
+    }
+
+    /**
+     * Get total number of items in layout
+     * @return Item count given by item source
+     */
+    public int getItemCount() {
+        return getState(false).itemCount;
+    }
+
+    /**
+     * Set estimated height of item (including margins). Used to reserve space for items not rendered.
+     * @param height Height in pixels
+     */
+    public void setEstimatedItemHeight(int height) {
+        if(height < 1) {
+            throw new IllegalArgumentException("Estimated height has to be positive");
+        }
+        getState().estimatedItemHeight = height;
+    }
+
+    /**
+     * Get estimated height of item
+     * @return Height in pixels
+     */
+    public int getEstimatedItemHeight() {
+        return getState(false).estimatedItemHeight;
+    }
+
+    /**
+     * Set number of extra rows rendered before and after visible rows
+     * @param rows Number of rows
+     */
+    public void setOverscanRows(int rows) {
+        if(rows < 0) {
+            throw new IllegalArgumentException("Overscan can not be negative");
+        }
+        getState().overscanRows = rows;
+    }
+
+    /**
+     * Get number of extra rows rendered before and after visible rows
+     * @return Number of rows
+     */
+    public int getOverscanRows() {
+        return getState(false).overscanRows;
+    }
+
+    /**
+     * Set maximum number of items rendered at once. Ranges requested by client side are limited to this, so
+     * increase it if layout is shown with very narrow columns on large screens.
+     * @param size Maximum number of child components
+     */
+    public void setMaxWindowSize(int size) {
+        if(size < 1) {
+            throw new IllegalArgumentException("Window size has to be positive");
+        }
+        maxWindowSize = size;
+    }
+
+    /**
+     * Get maximum number of items rendered at once
+     * @return Maximum number of child components
+     */
+    public int getMaxWindowSize() {
+        return maxWindowSize;
+    }
+
+    /**
+     * Request client side to re-layout. Useful if component sizes have changed.
+     */
+    public void requestLayout() {
+        getRpcProxy(MasonryLayoutClientRpc.class).layout();
+    }
+
+    /**
+     * Get column width used with this masonry layout
+     * @return Column width in pixels
+     */
+    public int getColumnWidth() {
+        return getState(false).columnWidth;
+    }
+
+    /**
+     * Set column width used in this masonry layout. Can be only set before initial client response is sent.
+     * @param columnWidth Width of column in pixels
+     * @throws java.lang.IllegalStateException If initial client response has been already sent
+     */
+    public void setColumnWidth(int columnWidth) {
+        if(initialClientResponseSent) {
+            throw new IllegalStateException("Column width can not be changed after it has been rendered to client");
+        }
+        getState().columnWidth = columnWidth;
+    }
+
+    /**
+     * Get transition duration
+     * @return Duration as CSS time value (eg. "0.4s")
+     */
+    public String getTransitionDuration() {
+        return getState(false).transitionDuration;
+    }
+
+    /**
+     * Define transition duration. Can be only changed before component is rendered to client side.
+     * @param time Time is CSS time value format (eg. "0.4s")
+     * @throws java.lang.IllegalStateException If initial client response is already sent
+     */
+    public void setTransitionDuration(String time) {
+        if(time == null) {
+            throw new IllegalArgumentException("Time can not be null");
+        }
+        if(initialClientResponseSent) {
+            throw new IllegalStateException("Transition time can not be changed after it has been rendered to client");
+        }
+        getState().transitionDuration = time;
+    }
+
+    /**
+     * Define if client side should automatically relayout when images are loaded
+     * @param relayout if true client side will relayout automatically when images loaded
+     */
+    public void setAutomaticLayoutWhenImagesLoaded(boolean relayout) {
+        if(relayout) {
+            ImagesLoadedExtension.createExtension(this);
+        } else {
+            ImagesLoadedExtension.removeExtension(this);
+        }
+    }
+
+    /**
+     * Check if client side is hooked to relayout when images are loaded.
+     * @return true if client side will automatically relayout when images loaded.
+     */
+    public boolean isAutomaticLayoutWhenImagesLoaded() {
+        return (ImagesLoadedExtension.getExtension(this) != null);
+    }
+
+    /**
+     * Add listener of clicks on layout and its items
+     * @param listener Listener added
+     */
+    public void addLayoutClickListener(LayoutEvents.LayoutClickListener listener) {
+        addListener(EventId.LAYOUT_CLICK_EVENT_IDENTIFIER,
+                LayoutEvents.LayoutClickEvent.class, listener,
+                LayoutEvents.LayoutClickListener.clickMethod);
+    }
+
+    /**
+     * Remove listener of clicks on layout and its items
+     * @param listener Listener removed
+     */
+    public void removeLayoutClickListener(LayoutEvents.LayoutClickListener listener) {
+        removeListener(EventId.LAYOUT_CLICK_EVENT_IDENTIFIER,
+                LayoutEvents.LayoutClickEvent.class, listener);
+    }
+
+    /**
+     * Get number of items currently rendered
+     * @return Number of child components
+     */
+    public int getComponentCount() {
+        return components.size();
+    }
+
+    /**
+     * Get rendered item with given index
+     * @param index Index of child component, 0 is item {@link #getFirstRenderedIndex()} of item source
+     * @return Child at index
+     * @throws java.lang.IndexOutOfBoundsException When given index is invalid
+     */
+    public Component getComponent(int index) {
+        return components.get(index);
+    }
+
+    @Override
+    public Iterator<Component> iterator() {
+        return Collections.unmodifiableList(components).iterator();
+    }
+
+    @Override
+    public void beforeClientResponse(boolean initial) {
+        super.beforeClientResponse(initial);
+        if(initial) {
+            initialClientResponseSent = true;
+        }
+    }
+
+    @Override
+    public void detach() {
+        initialClientResponseSent = false;
+        super.detach();
+    }
+
+    private void addItem(Component component, int index) {
+        if(component.getParent() != null) {
+            throw new IllegalArgumentException("Items given by ItemSource can not be in other layouts");
+        }
+        components.add(index, component);
+        component.setParent(this);
+        markAsDirty();
+    }
+
+    private void removeItem(int index) {
+        Component component = components.remove(index);
+        component.setParent(null);
+        markAsDirty();
+    }
+
+    private void clearWindow() {
+        while(!components.isEmpty()) {
+            removeItem(components.size() - 1);
+        }
+        getState().firstIndex = 0;
+    }
+
+    /**
+     * Update range of items rendered. Items still inside the range are kept, others are removed and missing ones are
+     * fetched from item source.
+     * @param firstIndex Index of first item
+     * @param count Number of items, limited to maximum window size
+     */
+    protected void updateWindow(int firstIndex, int count) {
+        int total = itemSource == null ? 0 : itemSource.getItemCount();
+        int start = Math.max(0, Math.min(firstIndex, total));
+        count = Math.max(0, Math.min(count, maxWindowSize));
+        int end = start + Math.min(count, total - start);
+
+        int oldStart = getState(false).firstIndex;
+        int oldEnd = oldStart + getComponentCount();
+
+        if(end <= oldStart || start >= oldEnd) {
+            clearWindow();
+            appendItems(start, end - start);
+        } else {
+            while(!components.isEmpty() && oldStart + components.size() > end) {
+                removeItem(components.size() - 1);
+            }
+            for(int i = oldStart; i < start; ++i) {
+                removeItem(0);
+            }
+            int prepended = Math.max(0, oldStart - start);
+            List<Component> items = fetchItems(start, prepended);
+            if(items.size() == prepended) {
+                for(int i = 0; i < items.size(); ++i) {
+                    addItem(items.get(i), i);
+                }
+                if(end > oldEnd) {
+                    appendItems(oldEnd, end - oldEnd);
+                }
+            } else {
+                // Item source gave fewer items than asked, so kept items would not follow them. Window is rendered
+                // again to keep indexes of rendered items contiguous from start.
+                clearWindow();
+                appendItems(start, end - start);
+            }
+        }
+
+        getState().firstIndex = start;
+        getState().itemCount = total;
+    }
+
+    private void appendItems(int startIndex, int count) {
+        for(Component item : fetchItems(startIndex, count)) {
+            addItem(item, components.size());
+        }
+    }
+
+    private List<Component> fetchItems(int startIndex, int count) {
+        if(count < 1) {
+            return Collections.emptyList();
+        }
+        return itemSource.getItems(startIndex, count);
+    }
+}
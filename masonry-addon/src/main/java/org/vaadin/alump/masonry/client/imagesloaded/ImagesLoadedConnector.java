@@ -1,8 +1,13 @@
 package org.vaadin.alump.masonry.client.imagesloaded;
 
 import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
 import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.ImageElement;
 import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.Timer;
+import com.vaadin.client.ComponentConnector;
 import com.vaadin.client.ConnectorHierarchyChangeEvent;
 import com.vaadin.client.ConnectorHierarchyChangeEvent.ConnectorHierarchyChangeHandler;
 import com.vaadin.client.HasComponentsConnector;
@@ -10,9 +15,14 @@ import com.vaadin.client.ServerConnector;
 import com.vaadin.client.extensions.AbstractExtensionConnector;
 import com.vaadin.client.ui.AbstractComponentConnector;
 import com.vaadin.shared.ui.Connect;
+import org.vaadin.alump.masonry.client.shared.ImageLoadResult;
 import org.vaadin.alump.masonry.client.shared.ImagesLoadedServerRpc;
 import org.vaadin.alump.masonry.client.shared.ImagesLoadedState;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +36,19 @@ public class ImagesLoadedConnector extends AbstractExtensionConnector {
     protected ImagesLoadedClientListener listener;
     protected HandlerRegistration hierarchyChangeHandler;
 
+    // Root elements of children added since last check
+    private final List<Element> pendingElements = new ArrayList<Element>();
+    private boolean checkScheduled = false;
+
+    // Image results waiting to be sent to server
+    private final List<ImageLoadResult> pendingResults = new ArrayList<ImageLoadResult>();
+    private final Timer resultsTimer = new Timer() {
+        @Override
+        public void run() {
+            flushResults();
+        }
+    };
+
     public ImagesLoadedState getState() {
         return (ImagesLoadedState) super.getState();
     }
@@ -44,21 +67,22 @@ public class ImagesLoadedConnector extends AbstractExtensionConnector {
 
         final AbstractComponentConnector cc = (AbstractComponentConnector) target;
 
-        // If connector contains containers, run images loaded script when hierarchy changes
+        // If connector contains containers, run images loaded script for added children when hierarchy changes
         if (cc instanceof HasComponentsConnector) {
-            HasComponentsConnector hcc = (HasComponentsConnector) cc;
+            final HasComponentsConnector hcc = (HasComponentsConnector) cc;
             hierarchyChangeHandler = hcc.addConnectorHierarchyChangeHandler(
                 new ConnectorHierarchyChangeHandler() {
 
                     @Override
                     public void onConnectorHierarchyChange(ConnectorHierarchyChangeEvent connectorHierarchyChangeEvent) {
-                        // Schedule delay, to perform script after state updates
-                        Scheduler.get().scheduleDeferred(new Scheduler.ScheduledCommand() {
-                            @Override
-                            public void execute() {
-                                runImagesLoaded(cc.getWidget().getElement());
+                        Set<ComponentConnector> oldChildren = new HashSet<ComponentConnector>(
+                                connectorHierarchyChangeEvent.getOldChildren());
+                        for (ComponentConnector child : hcc.getChildComponents()) {
+                            if (!oldChildren.contains(child)) {
+                                pendingElements.add(child.getWidget().getElement());
                             }
-                        });
+                        }
+                        scheduleImagesLoaded();
                     }
                 });
         }
@@ -67,7 +91,30 @@ public class ImagesLoadedConnector extends AbstractExtensionConnector {
         runImagesLoaded(cc.getWidget().getElement());
     }
 
+    /**
+     * Schedule images loaded check of pending elements. Delayed to perform script after state updates.
+     */
+    private void scheduleImagesLoaded() {
+        if (checkScheduled || pendingElements.isEmpty()) {
+            return;
+        }
+        checkScheduled = true;
+        Scheduler.get().scheduleDeferred(new Scheduler.ScheduledCommand() {
+            @Override
+            public void execute() {
+                checkScheduled = false;
+                JsArray<Element> elements = JavaScriptObject.createArray().cast();
+                for (Element element : pendingElements) {
+                    elements.push(element);
+                }
+                pendingElements.clear();
+                runImagesLoaded(elements);
+            }
+        });
+    }
+
     public void onUnregister() {
+        resultsTimer.cancel();
         if(hierarchyChangeHandler != null) {
             hierarchyChangeHandler.removeHandler();
             hierarchyChangeHandler = null;
@@ -79,14 +126,124 @@ public class ImagesLoadedConnector extends AbstractExtensionConnector {
      * Will ask JavaScript library to run images loaded check for element
      * @param element Parent element with img children
      */
-    public final native void runImagesLoaded(JavaScriptObject element)
+    public final void runImagesLoaded(JavaScriptObject element) {
+        JsArray<JavaScriptObject> elements = JavaScriptObject.createArray().cast();
+        elements.push(element);
+        runImagesLoaded(elements);
+    }
+
+    /**
+     * Will ask JavaScript library to run images loaded check for images under given elements. Images already checked
+     * with same source are skipped, and if there is no new images the check is not run at all.
+     * @param elements Parent elements with img children
+     */
+    protected final native void runImagesLoaded(JsArray<? extends JavaScriptObject> elements)
     /*-{
         var that = this;
-        $wnd.imagesLoaded(element, function () {
+        var images = [];
+        var addImage = function(img) {
+            if(img.__imagesLoadedSrc !== img.src) {
+                if(img.__imagesLoadedStartSrc !== img.src) {
+                    img.__imagesLoadedStartSrc = img.src;
+                    img.__imagesLoadedStart = now;
+                }
+                images.push(img);
+            }
+        };
+        var now = new Date().getTime();
+        for(var i = 0; i < elements.length; ++i) {
+            var element = elements[i];
+            if(element.nodeName === 'IMG') {
+                addImage(element);
+            }
+            var found = element.getElementsByTagName('img');
+            for(var j = 0; j < found.length; ++j) {
+                addImage(found[j]);
+            }
+        }
+        if(images.length == 0) {
+            return;
+        }
+
+        var imgLoad = $wnd.imagesLoaded(images);
+        imgLoad.on('progress', function(instance, image) {
+            // Remember checked source, so image is not observed again
+            image.img.__imagesLoadedSrc = image.img.src;
+            var loadTime = @org.vaadin.alump.masonry.client.imagesloaded.ImagesLoadedConnector::getResourceLoadTime(*)(
+                image.img);
+            if(loadTime < 0) {
+                loadTime = new Date().getTime() - image.img.__imagesLoadedStart;
+            }
+            that.@org.vaadin.alump.masonry.client.imagesloaded.ImagesLoadedConnector::onImageLoaded(*)(image.img,
+                image.isLoaded, loadTime);
+        });
+        imgLoad.on('always', function() {
             that.@org.vaadin.alump.masonry.client.imagesloaded.ImagesLoadedConnector::onImagesLoaded()();
         });
     }-*/;
 
+    /**
+     * Callback called from native attachment to imagesLoaded library for each image
+     * @param image Image element loaded (or failed)
+     * @param loaded true if image was loaded, false if it failed
+     * @param loadTime Milliseconds taken by request of image, or since image tracking was started if not known
+     */
+    private void onImageLoaded(Element image, boolean loaded, int loadTime) {
+        if (getState().progressive && listener instanceof ImagesLoadedProgressListener) {
+            ((ImagesLoadedProgressListener) listener).onImageLoaded(image);
+        }
+        if (getState().collectResults) {
+            ImageElement img = image.cast();
+            pendingResults.add(new ImageLoadResult(img.getSrc(), loaded ? getNaturalWidth(img) : 0,
+                    loaded ? getNaturalHeight(img) : 0, loadTime, loaded));
+            if (!resultsTimer.isRunning()) {
+                resultsTimer.schedule(Math.max(1, getState().resultsInterval));
+            }
+        }
+    }
+
+    /**
+     * Send collected image results to server
+     */
+    protected void flushResults() {
+        if (!pendingResults.isEmpty()) {
+            List<ImageLoadResult> results = new ArrayList<ImageLoadResult>(pendingResults);
+            pendingResults.clear();
+            getRpcProxy(ImagesLoadedServerRpc.class).onImageLoadResults(results);
+        }
+    }
+
+    /**
+     * Get duration of request of image's current source from Resource Timing entries. Entries are not available in
+     * older browsers, and for cached images or cross origin images without Timing-Allow-Origin some values are zero.
+     * @param img Image element
+     * @return Milliseconds from start to end of request, or -1 if not known
+     */
+    private static native int getResourceLoadTime(Element img)
+    /*-{
+        var performance = $wnd.performance;
+        if(!performance || !performance.getEntriesByName) {
+            return -1;
+        }
+        var entries = performance.getEntriesByName(img.currentSrc || img.src, 'resource');
+        if(!entries || entries.length == 0) {
+            return -1;
+        }
+        var entry = entries[entries.length - 1];
+        var end = entry.responseEnd || (entry.startTime + entry.duration);
+        return end > 0 ? Math.round(end - entry.startTime) : -1;
+    }-*/;
+
+    private static native int getNaturalWidth(ImageElement img)
+    /*-{
+        return img.naturalWidth || 0;
+    }-*/;
+
+    private static native int getNaturalHeight(ImageElement img)
+    /*-{
+        return img.naturalHeight || 0;
+    }-*/;
+
     /**
      * Callback called from native attachment to imagesLoaded library
      */
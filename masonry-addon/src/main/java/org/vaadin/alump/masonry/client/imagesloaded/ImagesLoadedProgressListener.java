@@ -0,0 +1,16 @@
+package org.vaadin.alump.masonry.client.imagesloaded;
+
+import com.google.gwt.dom.client.Element;
+
+/**
+ * Interface for Connector classes that also want to be notified of each image loaded, when ImagesLoadedExtension is
+ * used in progressive mode.
+ */
+public interface ImagesLoadedProgressListener extends ImagesLoadedClientListener {
+
+    /**
+     * Called when single image under component has been loaded or has failed to load.
+     * @param image Image element
+     */
+    void onImageLoaded(Element image);
+}
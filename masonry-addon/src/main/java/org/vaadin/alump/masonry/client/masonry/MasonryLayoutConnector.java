@@ -18,27 +18,40 @@
 
 package org.vaadin.alump.masonry.client.masonry;
 
+import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.Scheduler;
-import com.google.gwt.user.client.Element;
+import com.google.gwt.dom.client.Element;
 import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.Window;
 import com.vaadin.client.ComponentConnector;
 import com.vaadin.client.ConnectorHierarchyChangeEvent;
 import com.vaadin.client.Util;
+import com.vaadin.client.ui.layout.ElementResizeEvent;
+import com.vaadin.client.ui.layout.ElementResizeListener;
 import com.vaadin.client.ui.AbstractLayoutConnector;
 
 import com.google.gwt.user.client.ui.Widget;
 import com.vaadin.client.communication.StateChangeEvent;
 import com.vaadin.client.ui.LayoutClickEventHandler;
+import com.vaadin.client.ui.PostLayoutListener;
 import com.vaadin.shared.Connector;
 import com.vaadin.shared.ui.Connect;
 import com.vaadin.shared.ui.LayoutClickRpc;
 import org.vaadin.alump.masonry.MasonryLayout;
-import org.vaadin.alump.masonry.client.imagesloaded.ImagesLoadedClientListener;
+import org.vaadin.alump.masonry.client.imagesloaded.ImagesLoadedProgressListener;
+import org.vaadin.alump.masonry.client.shared.MasonryImageSources;
+import org.vaadin.alump.masonry.client.shared.MasonryItemPosition;
+import org.vaadin.alump.masonry.client.shared.MasonryItemSizeHint;
 import org.vaadin.alump.masonry.client.shared.MasonryLayoutClientRpc;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutMetrics;
 import org.vaadin.alump.masonry.client.shared.MasonryLayoutServerRpc;
 import org.vaadin.alump.masonry.client.shared.MasonryLayoutState;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutTrigger;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,18 +60,54 @@ import java.util.Set;
  * Connector for MasonryLayout
  */
 @Connect(MasonryLayout.class)
-public class MasonryLayoutConnector extends AbstractLayoutConnector implements ImagesLoadedClientListener {
+public class MasonryLayoutConnector extends AbstractLayoutConnector implements ImagesLoadedProgressListener,
+        PostLayoutListener {
 
     private final MasonryLayoutClientRpc clientRpc = new MasonryLayoutClientRpc() {
         @Override
         public void layout() {
-            scheduleLayout();
+            scheduleLayout(MasonryLayoutTrigger.SERVER_REQUEST);
+        }
+
+        @Override
+        public void updateWrapperStyleNames(Map<Connector, Integer> styleNameIds) {
+            MasonryLayoutConnector.this.updateWrapperStyleNames(styleNameIds);
+        }
+
+        @Override
+        public void updateSizeHints(Map<Connector, MasonryItemSizeHint> sizeHints) {
+            MasonryLayoutConnector.this.updateSizeHints(sizeHints);
+        }
+
+        @Override
+        public void updateImageSources(Map<Connector, MasonryImageSources> imageSources) {
+            MasonryLayoutConnector.this.updateImageSources(imageSources);
+        }
+
+        @Override
+        public void updateItemPositions(Map<Connector, MasonryItemPosition> positions) {
+            updatePositionHints(positions);
+        }
+
+        @Override
+        public void reorderRejected() {
+            // Return items to order of child components
+            updateWidget(true);
         }
     };
 
+    // Wrapper style names of items, updated with deltas sent by server
+    private final Map<Connector, String> itemStyleNames = new HashMap<Connector, String>();
+
 	public MasonryLayoutConnector() {
         registerRpc(MasonryLayoutClientRpc.class, clientRpc);
 	}
+
+    @Override
+    protected void init() {
+        super.init();
+        getWidget().setLayoutCompleteListener(layoutCompleteListener);
+    }
 	
 	// We must implement getWidget() to cast to correct type
 	@Override
@@ -77,7 +126,7 @@ public class MasonryLayoutConnector extends AbstractLayoutConnector implements I
             this) {
 
         @Override
-        protected ComponentConnector getChildComponent(Element element) {
+        protected ComponentConnector getChildComponent(com.google.gwt.user.client.Element element) {
             return Util.getConnectorForElement(getConnection(), getWidget(),
                     element);
         }
@@ -97,20 +146,125 @@ public class MasonryLayoutConnector extends AbstractLayoutConnector implements I
         // call always, will be ignored after first time
         getWidget().initialize(getState().columnWidth, getState().transitionDuration);
 
-        // Handle wrapper style changes if not initial
-        if(!event.isInitialStateChange() && event.hasPropertyChanged("itemStyleNames")) {
-            updateWrapperStyleNames(getState().itemStyleNames);
+        if(event.hasPropertyChanged("loadMoreRevision")) {
+            loadMorePending = false;
+        }
+        if(getState().loadMoreEnabled) {
+            // Items added by previous request grow the container only when their layout is done, check is then done
+            // by layout complete listener
+            if(!getWidget().isLayoutPending()) {
+                scheduleLoadMoreCheck();
+            }
+        } else {
+            loadMoreScrollObserver.stop();
+        }
+
+        if(event.hasPropertyChanged("layoutMetricsInterval")) {
+            updateLayoutMetrics();
+        }
+
+        updateReorderable();
+
+        if(event.hasPropertyChanged("serverLayoutColumns") || event.hasPropertyChanged("serverLayout")) {
+            reportLayoutWidth();
+            getWidget().setPositionHintColumns(getState().serverLayoutColumns);
         }
 
 	}
 
-    protected void updateWrapperStyleNames(Map<Connector,String> itemStyleNames) {
-        for(int i = 0; i < getChildComponents().size(); ++i) {
-            ComponentConnector cc = getChildComponents().get(i);
-            String itemStyleName = itemStyleNames.get(cc);
-            getWidget().updateWrapperStyleName(cc.getWidget(), itemStyleName);
+    /**
+     * Apply changed wrapper style names. Only wrappers of given items are touched, and layout is done starting from
+     * first changed item.
+     * @param styleNameIds Ids of interned style names by item, -1 if item does not have extra style names
+     */
+    protected void updateWrapperStyleNames(Map<Connector, Integer> styleNameIds) {
+        for(Map.Entry<Connector, Integer> entry : styleNameIds.entrySet()) {
+            if(entry.getKey() == null) {
+                continue;
+            }
+            int id = entry.getValue();
+            String styleName = id < 0 ? null : getState().wrapperStyleNames.get(id);
+            if(styleName == null) {
+                itemStyleNames.remove(entry.getKey());
+            } else {
+                itemStyleNames.put(entry.getKey(), styleName);
+            }
+
+            Widget widget = ((ComponentConnector) entry.getKey()).getWidget();
+            if(getWidget().updateWrapperStyleName(widget, styleName)) {
+                getWidget().scheduleLayoutFrom(getWidget().getWrapper(widget), MasonryLayoutTrigger.STYLE_CHANGE);
+            }
+        }
+    }
+
+    /**
+     * Enable dragging of items when layout is reorderable and enabled
+     */
+    protected void updateReorderable() {
+        boolean reorderable = getState().reorderable && isEnabled();
+        if(reorderable && reorderDragger == null) {
+            reorderDragger = new MasonryReorderDragger(getWidget(), reorderListener);
+        }
+        if(reorderDragger != null) {
+            reorderDragger.setEnabled(reorderable);
+        }
+    }
+
+    /**
+     * Reserve sizes of item wrappers. Only wrappers of given items are touched. Changed sizes are noticed by item
+     * resize listeners, so layout is not scheduled here.
+     * @param sizeHints Changed size hints by item, null if item does not have size hint anymore
+     */
+    protected void updateSizeHints(Map<Connector, MasonryItemSizeHint> sizeHints) {
+        for(Map.Entry<Connector, MasonryItemSizeHint> entry : sizeHints.entrySet()) {
+            if(entry.getKey() != null && entry.getKey().getParent() == this) {
+                getWidget().setSizeHint(((ComponentConnector) entry.getKey()).getWidget(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Give responsive image sources to item images. Only images of given items are touched.
+     * @param imageSources Changed sources by item, null if item does not have responsive sources anymore
+     */
+    protected void updateImageSources(Map<Connector, MasonryImageSources> imageSources) {
+        for(Map.Entry<Connector, MasonryImageSources> entry : imageSources.entrySet()) {
+            if(entry.getKey() != null && entry.getKey().getParent() == this) {
+                getWidget().setImageSources(((ComponentConnector) entry.getKey()).getWidget(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Give changed item positions calculated on server side to widget. Layout is scheduled if position of any item
+     * that already had position changed, new items are handled by layout scheduled for hierarchy change.
+     * @param positions Changed positions by item, null if item is not positioned on server side anymore
+     */
+    protected void updatePositionHints(Map<Connector, MasonryItemPosition> positions) {
+        boolean changed = false;
+        for(Map.Entry<Connector, MasonryItemPosition> entry : positions.entrySet()) {
+            if(entry.getKey() != null && entry.getKey().getParent() == this) {
+                changed |= getWidget().setPositionHint(((ComponentConnector) entry.getKey()).getWidget(),
+                        entry.getValue());
+            }
+        }
+        if(changed) {
+            scheduleLayout(MasonryLayoutTrigger.POSITION_HINTS);
+        }
+    }
+
+    /**
+     * Tell inner width of layout to server if server side layout is used and width has changed since last report
+     */
+    protected void reportLayoutWidth() {
+        if(!getState().serverLayout || measuredPanelWidth < 0) {
+            return;
+        }
+        int innerWidth = getLayoutManager().getInnerWidth(getWidget().getElement());
+        if(innerWidth != reportedInnerWidth) {
+            reportedInnerWidth = innerWidth;
+            getRpcProxy(MasonryLayoutServerRpc.class).reportLayoutWidth(innerWidth);
         }
-        scheduleLayout();
     }
 
     @Override
@@ -119,11 +273,27 @@ public class MasonryLayoutConnector extends AbstractLayoutConnector implements I
         // Just to be sure widget has been initialized (will be ignored if it is)
         getWidget().initialize(getState().columnWidth, getState().transitionDuration);
 
+        // Server order wins over drag in progress
+        if(reorderDragger != null && reorderDragger.isDragging()) {
+            reorderDragger.cancel();
+        }
+
+        // Widgets of removed children are removed by setItems in one backward pass
         for (ComponentConnector child : event.getOldChildren()) {
             if (child.getParent() != this) {
-                Widget widget = child.getWidget();
-                if (widget.isAttached()) {
-                    getWidget().removeItem(widget);
+                itemStyleNames.remove(child);
+            }
+        }
+
+        // State is updated before hierarchy change, so new wrappers are created with their style names. Components
+        // removed and added back in same response keep their wrappers, those are updated here.
+        for(Map.Entry<Connector, Integer> entry : getState().addedItemStyleNameIds.entrySet()) {
+            if(entry.getKey() != null && entry.getKey().getParent() == this) {
+                String styleName = getState().wrapperStyleNames.get(entry.getValue());
+                itemStyleNames.put(entry.getKey(), styleName);
+                Widget widget = ((ComponentConnector) entry.getKey()).getWidget();
+                if(widget.getParent() == getWidget() && getWidget().updateWrapperStyleName(widget, styleName)) {
+                    getWidget().scheduleLayoutFrom(getWidget().getWrapper(widget), MasonryLayoutTrigger.STYLE_CHANGE);
                 }
             }
         }
@@ -132,112 +302,358 @@ public class MasonryLayoutConnector extends AbstractLayoutConnector implements I
     }
 
     protected void updateWidget(boolean scheduleLayout) {
-        int reconstructFrom = findFirstMismatchInChildren(getChildComponents());
-
-        // Clean reordered widgets
-        if(reconstructFrom < getWidget().getWidgetCount()) {
-            Set<Widget> removeWidgets = new HashSet<Widget>();
-            for(int i = reconstructFrom; i < getWidget().getWidgetCount(); ++i) {
-                removeWidgets.add(getWidget().getWidget(i));
-            }
-            for(Widget remove : removeWidgets) {
-                getWidget().removeItem(remove);
-            }
+        List<ComponentConnector> children = getChildComponents();
+        List<Widget> widgets = new ArrayList<Widget>(children.size());
+        List<String> styleNames = new ArrayList<String>(children.size());
+        for(ComponentConnector child : children) {
+            widgets.add(child.getWidget());
+            styleNames.add(itemStyleNames.get(child));
         }
 
-        // Add new or reordered children
-        for(int i = reconstructFrom; i < getChildComponents().size(); ++i) {
-            ComponentConnector cc = getChildComponents().get(i);
-            getWidget().addItem(cc.getWidget(), getState().itemStyleNames.get(cc));
+        int oldCount = getWidget().getWidgetCount();
+        int firstChange = getWidget().setItems(widgets, styleNames);
+        updateObservedItems(widgets);
+
+        if(firstChange == oldCount && widgets.size() > oldCount && getWidget().isRendered()) {
+            // Only appended items, no need to touch the items before them
+            getWidget().scheduleAppendLayout(widgets.subList(oldCount, widgets.size()),
+                    MasonryLayoutTrigger.HIERARCHY_CHANGE);
+        } else if(firstChange == widgets.size() && firstChange == oldCount) {
+            // Nothing changed
+        } else if(scheduleLayout) {
+            scheduleLayout(MasonryLayoutTrigger.HIERARCHY_CHANGE);
+        } else {
+            getWidget().layout(MasonryLayoutTrigger.HIERARCHY_CHANGE);
         }
+    }
 
-        if(scheduleLayout) {
-            scheduleLayout();
-        } else {
-            getWidget().layout();
+    @Override
+    public void updateCaption(ComponentConnector componentConnector) {
+        // ignore for now
+    }
+
+    @Override
+    public void onUnregister() {
+        for(Element wrapper : observedWrappers.values()) {
+            getLayoutManager().removeElementResizeListener(wrapper, itemResizeListener);
+        }
+        observedWrappers.clear();
+        measuredHeights.clear();
+        if(observingPanel) {
+            getLayoutManager().removeElementResizeListener(getWidget().getElement(), panelResizeListener);
+            nativeRemoveFontLoadHandler(fontLoadHandler);
+            fontLoadHandler = null;
+            nativeRemoveImageLoadHandler(getWidget().getElement(), imageLoadHandler);
+            imageLoadHandler = null;
+            observingPanel = false;
+        }
+        loadMoreScrollObserver.stop();
+        if(reorderDragger != null) {
+            reorderDragger.setEnabled(false);
         }
+        layoutMetricsTimer.cancel();
+        getWidget().setLayoutTimingListener(null);
+        super.onUnregister();
     }
 
     /**
-     * Find from where children has to be reconstructed
-     * @param children Current list of children
-     * @return Index of first mismatching children
+     * Start following size of new items and stop following removed ones
+     * @param widgets Current widgets of items
      */
-    protected int findFirstMismatchInChildren(List<ComponentConnector> children) {
-        int lastSame = 0;
-        int oldWidgetCount = getWidget().getWidgetCount();
+    protected void updateObservedItems(List<Widget> widgets) {
+        if(!observingPanel) {
+            getLayoutManager().addElementResizeListener(getWidget().getElement(), panelResizeListener);
+            fontLoadHandler = nativeAddFontLoadHandler();
+            imageLoadHandler = nativeAddImageLoadHandler(getWidget().getElement());
+            observingPanel = true;
+        }
+
+        Set<Widget> current = new HashSet<Widget>(widgets);
+        Iterator<Map.Entry<Widget, Element>> iter = observedWrappers.entrySet().iterator();
+        while(iter.hasNext()) {
+            Map.Entry<Widget, Element> entry = iter.next();
+            if(!current.contains(entry.getKey())) {
+                getLayoutManager().removeElementResizeListener(entry.getValue(), itemResizeListener);
+                measuredHeights.remove(entry.getValue());
+                iter.remove();
+            }
+        }
 
-        for(lastSame = 0; lastSame < oldWidgetCount && lastSame < children.size(); ++lastSame) {
-            if(getWidget().getWidget(lastSame) != children.get(lastSame).getWidget()) {
-               break;
+        for(Widget widget : widgets) {
+            if(!observedWrappers.containsKey(widget)) {
+                Element wrapper = getWidget().getWrapper(widget);
+                observedWrappers.put(widget, wrapper);
+                getLayoutManager().addElementResizeListener(wrapper, itemResizeListener);
             }
         }
-        return lastSame;
     }
 
+    /**
+     * Item sizes are only measured during layout passes of LayoutManager. Web fonts change sizes of items without
+     * one, so a layout pass is requested when fonts have been loaded. Relayout is only scheduled if size of some item
+     * changed.
+     */
+    protected void onFontsLoaded() {
+        getLayoutManager().layoutLater();
+    }
+
+    private native JavaScriptObject nativeAddFontLoadHandler()
+    /*-{
+        var fonts = $doc.fonts;
+        if(!fonts || !fonts.addEventListener) {
+            return null;
+        }
+        var that = this;
+        var handler = $entry(function() {
+            that.@org.vaadin.alump.masonry.client.masonry.MasonryLayoutConnector::onFontsLoaded()();
+        });
+        fonts.addEventListener('loadingdone', handler, false);
+        return handler;
+    }-*/;
+
+    private static native void nativeRemoveFontLoadHandler(JavaScriptObject handler)
+    /*-{
+        if(handler) {
+            $doc.fonts.removeEventListener('loadingdone', handler, false);
+        }
+    }-*/;
+
+    /**
+     * Images loading late change size of their item without any other event, so load events of images inside panel
+     * are captured (they do not bubble). This works without ImagesLoadedExtension, with it loads are reported twice
+     * and merged by layout scheduler.
+     */
+    private native JavaScriptObject nativeAddImageLoadHandler(Element element)
+    /*-{
+        var that = this;
+        var handler = $entry(function(event) {
+            var target = event.target;
+            if(target && target.tagName === 'IMG') {
+                that.@org.vaadin.alump.masonry.client.masonry.MasonryLayoutConnector::onImageLoaded(*)(target);
+            }
+        });
+        element.addEventListener('load', handler, true);
+        return handler;
+    }-*/;
+
+    private static native void nativeRemoveImageLoadHandler(Element element, JavaScriptObject handler)
+    /*-{
+        if(handler) {
+            element.removeEventListener('load', handler, true);
+        }
+    }-*/;
+
     @Override
-    public void updateCaption(ComponentConnector componentConnector) {
-        // ignore for now
+    public void onImagesLoaded() {
+        // Measure items again in next layout pass, relayout is only scheduled if size of some item changed
+        resizeTrigger = MasonryLayoutTrigger.IMAGE_LOAD;
+        getLayoutManager().layoutLater();
     }
 
     @Override
-    public void onUnregister() {
-        relayoutTimer.cancel();
-        super.onUnregister();
+    public void postLayout() {
+        resizeTrigger = MasonryLayoutTrigger.ITEM_RESIZE;
     }
 
     @Override
-    public void onImagesLoaded() {
-        getWidget().layout();
+    public void onImageLoaded(Element image) {
+        // Relayout from the item containing image, loads during same frame are merged by scheduler
+        Element panelElement = getWidget().getElement();
+        Element wrapper = image;
+        while(wrapper != null && wrapper.getParentElement() != panelElement) {
+            wrapper = wrapper.getParentElement();
+        }
+        if(wrapper != null) {
+            getWidget().scheduleLayoutFrom(wrapper, MasonryLayoutTrigger.IMAGE_LOAD);
+        }
     }
 
     /**
-     * Schedule layout call(s) to widget
+     * Schedule layout call to widget. Layouts of all MasonryLayouts are performed together in next animation frame.
      */
     protected void scheduleLayout() {
-        relayoutTimer.cancel();
-        Scheduler.get().scheduleDeferred(new Scheduler.ScheduledCommand() {
-            @Override
-            public void execute() {
-                getWidget().layout();
-                relayoutTimer.schedule();
-            }
-        });
+        scheduleLayout(MasonryLayoutTrigger.OTHER);
     }
 
-    // As Vaadin is performing layouts with delay this timer is here to make sure layout is recalculated few times
-    // after each request
-    private RelayoutTimer relayoutTimer = new RelayoutTimer();
+    /**
+     * Schedule layout call to widget. Layouts of all MasonryLayouts are performed together in next animation frame.
+     * @param trigger Reason of layout, reported in layout metrics
+     */
+    protected void scheduleLayout(MasonryLayoutTrigger trigger) {
+        getWidget().scheduleLayout(trigger);
+    }
 
+    /**
+     * Start or stop measuring layout passes when layout metrics are enabled or disabled
+     */
+    protected void updateLayoutMetrics() {
+        if(getState().layoutMetricsInterval > 0) {
+            getWidget().setLayoutTimingListener(layoutTimingListener);
+        } else {
+            getWidget().setLayoutTimingListener(null);
+            layoutMetricsTimer.cancel();
+            layoutMetrics = null;
+        }
+    }
 
-    private class RelayoutTimer extends Timer {
+    /**
+     * Send layout metrics collected since previous call to server
+     */
+    protected void flushLayoutMetrics() {
+        if(layoutMetrics == null || layoutMetrics.histograms.isEmpty()) {
+            return;
+        }
+        MasonryLayoutMetrics metrics = layoutMetrics;
+        layoutMetrics = null;
+        metrics.layoutWidth = getWidget().getOffsetWidth();
+        metrics.viewportWidth = Window.getClientWidth();
+        metrics.devicePixelRatio = getDevicePixelRatio();
+        getRpcProxy(MasonryLayoutServerRpc.class).reportLayoutMetrics(metrics);
+    }
 
-        public final static int LOOP_TIME_MS = 100;
+    private static native double getDevicePixelRatio()
+    /*-{
+        return $wnd.devicePixelRatio || 1;
+    }-*/;
 
-        private int loopsLeft = 0;
+    // Layout passes aggregated to histograms, sent to server when timer fires
+    private MasonryLayoutMetrics layoutMetrics = null;
 
-        public void schedule() {
-            if(loopsLeft > 0) {
-                loopsLeft += 3;
-            } else {
-                loopsLeft = 3;
-                this.schedule(LOOP_TIME_MS);
+    private final MasonryPanel.LayoutTimingListener layoutTimingListener = new MasonryPanel.LayoutTimingListener() {
+        @Override
+        public void onLayoutTiming(MasonryLayoutTrigger trigger, int items, double duration) {
+            if(layoutMetrics == null) {
+                layoutMetrics = new MasonryLayoutMetrics();
+            }
+            layoutMetrics.obtainHistogram(trigger).record(duration, items);
+            layoutMetrics.maxItemCount = Math.max(layoutMetrics.maxItemCount, getWidget().getWidgetCount());
+            if(!layoutMetricsTimer.isRunning()) {
+                layoutMetricsTimer.schedule(Math.max(1, getState().layoutMetricsInterval));
             }
         }
+    };
 
-        public void cancel() {
-            loopsLeft = 0;
-            super.cancel();
+    private final Timer layoutMetricsTimer = new Timer() {
+        @Override
+        public void run() {
+            flushLayoutMetrics();
         }
+    };
+
+    private MasonryReorderDragger reorderDragger = null;
 
+    // Item is already moved on client side, server either accepts the move or tells it was rejected
+    private final MasonryReorderDragger.Listener reorderListener = new MasonryReorderDragger.Listener() {
         @Override
-        public void run() {
-            getWidget().layout();
-            if(--loopsLeft < 1) {
-                loopsLeft = 0;
-            } else {
-                this.schedule(LOOP_TIME_MS);
+        public void onReorder(Widget widget, int fromIndex, int toIndex) {
+            getRpcProxy(MasonryLayoutServerRpc.class).reorder(fromIndex, toIndex);
+        }
+    };
+
+    // Trigger reported for layouts caused by item size changes
+    private MasonryLayoutTrigger resizeTrigger = MasonryLayoutTrigger.ITEM_RESIZE;
+
+    // Wrappers of items followed with layout manager, wrapper is stored as it's not available after removal
+    private final Map<Widget, Element> observedWrappers = new HashMap<Widget, Element>();
+    // Last measured heights of wrappers, first measurement of item does not cause relayout
+    private final Map<Element, Integer> measuredHeights = new HashMap<Element, Integer>();
+    private boolean observingPanel = false;
+    private JavaScriptObject fontLoadHandler = null;
+    private JavaScriptObject imageLoadHandler = null;
+    private int measuredPanelWidth = -1;
+    private int reportedInnerWidth = -1;
+
+    private final ScrollObserver loadMoreScrollObserver = new ScrollObserver(new ScrollObserver.Listener() {
+        @Override
+        public void onScroll() {
+            checkLoadMore();
+        }
+    });
+    private boolean loadMoreCheckScheduled = false;
+
+    private final MasonryPanel.LayoutCompleteListener layoutCompleteListener = new MasonryPanel.LayoutCompleteListener() {
+        @Override
+        public void onLayoutComplete() {
+            if(getState().loadMoreEnabled) {
+                scheduleLoadMoreCheck();
+            }
+        }
+    };
+    private boolean loadMorePending = false;
+
+    // Items are positioned by height, so relayout is only needed when height of item changes
+    private final ElementResizeListener itemResizeListener = new ElementResizeListener() {
+        @Override
+        public void onElementResize(ElementResizeEvent e) {
+            Element wrapper = e.getElement();
+            int height = e.getLayoutManager().getOuterHeight(wrapper);
+            Integer oldHeight = measuredHeights.put(wrapper, height);
+            int hintHeight = getWidget().getPositionHintHeight(wrapper);
+            if(hintHeight >= 0 && hintHeight != height) {
+                // Server side guess was wrong, measure this and following items
+                getWidget().clearPositionHintsFrom(wrapper);
+                getWidget().scheduleLayoutFrom(wrapper, resizeTrigger);
+            } else if(oldHeight != null && oldHeight.intValue() != height) {
+                // Items before resized item keep their positions
+                getWidget().scheduleLayoutFrom(wrapper, resizeTrigger);
+            }
+        }
+    };
+
+    // Number of columns depends only on width of layout
+    private final ElementResizeListener panelResizeListener = new ElementResizeListener() {
+        @Override
+        public void onElementResize(ElementResizeEvent e) {
+            int width = e.getLayoutManager().getOuterWidth(e.getElement());
+            if(measuredPanelWidth >= 0 && measuredPanelWidth != width) {
+                scheduleLayout(MasonryLayoutTrigger.LAYOUT_RESIZE);
+            }
+            measuredPanelWidth = width;
+
+            reportLayoutWidth();
+            if(getState().loadMoreEnabled) {
+                scheduleLoadMoreCheck();
             }
         }
     };
+
+    private void scheduleLoadMoreCheck() {
+        if(loadMoreCheckScheduled) {
+            return;
+        }
+        loadMoreCheckScheduled = true;
+        Scheduler.get().scheduleDeferred(new Scheduler.ScheduledCommand() {
+            @Override
+            public void execute() {
+                loadMoreCheckScheduled = false;
+                checkLoadMore();
+            }
+        });
+    }
+
+    /**
+     * Ask more items from server if bottom of layout is within load more threshold of viewport. Only one request is
+     * sent at a time, next one can be sent after server has answered.
+     */
+    protected void checkLoadMore() {
+        if(!getState().loadMoreEnabled || loadMorePending || !getWidget().isAttached()
+                || !getWidget().isVisible()) {
+            return;
+        }
+
+        loadMoreScrollObserver.start(getWidget().getElement());
+
+        Element viewport = loadMoreScrollObserver.getScrollParent();
+        int viewBottom;
+        if(viewport == null) {
+            viewBottom = Window.getScrollTop() + Window.getClientHeight();
+        } else {
+            viewBottom = viewport.getAbsoluteTop() + viewport.getClientHeight();
+        }
+
+        if(getWidget().getElement().getAbsoluteBottom() - viewBottom <= getState().loadMoreThreshold) {
+            loadMorePending = true;
+            getRpcProxy(MasonryLayoutServerRpc.class).loadMore();
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ * MasonryLayoutScheduler.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry.client.masonry;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs layouts of all MasonryPanels of page once per animation frame. Geometry of all dirty panels is first read,
+ * and positions are written only after that, so layouts of multiple panels do not cause forced reflows between
+ * each other.
+ */
+public class MasonryLayoutScheduler {
+
+    private static MasonryLayoutScheduler instance;
+
+    private final Set<MasonryPanel> dirtyPanels = new LinkedHashSet<MasonryPanel>();
+    private boolean frameRequested = false;
+
+    private final AnimationScheduler.AnimationCallback frameCallback = new AnimationScheduler.AnimationCallback() {
+        @Override
+        public void execute(double timestamp) {
+            runLayouts();
+        }
+    };
+
+    protected MasonryLayoutScheduler() {
+    }
+
+    /**
+     * Get scheduler shared by all MasonryPanels
+     * @return Scheduler instance
+     */
+    public static MasonryLayoutScheduler get() {
+        if(instance == null) {
+            instance = new MasonryLayoutScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Mark panel dirty. Layout of panel will be performed in next animation frame.
+     * @param panel Panel that needs layout
+     */
+    public void schedule(MasonryPanel panel) {
+        dirtyPanels.add(panel);
+        if(!frameRequested) {
+            frameRequested = true;
+            AnimationScheduler.get().requestAnimationFrame(frameCallback);
+        }
+    }
+
+    /**
+     * Remove panel from dirty panels
+     * @param panel Panel which layout is not needed anymore
+     */
+    public void cancel(MasonryPanel panel) {
+        dirtyPanels.remove(panel);
+    }
+
+    /**
+     * Perform layout of all dirty panels, first reading geometry of all panels and then writing positions
+     */
+    protected void runLayouts() {
+        frameRequested = false;
+        List<MasonryPanel> panels = new ArrayList<MasonryPanel>(dirtyPanels);
+        dirtyPanels.clear();
+
+        for(MasonryPanel panel : panels) {
+            panel.readLayout();
+        }
+        for(MasonryPanel panel : panels) {
+            panel.writeLayout();
+        }
+    }
+}
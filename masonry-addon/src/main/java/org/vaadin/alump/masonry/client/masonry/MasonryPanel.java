@@ -20,15 +20,27 @@
 package org.vaadin.alump.masonry.client.masonry;
 
 import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style;
 import com.google.gwt.json.client.JSONNumber;
 import com.google.gwt.json.client.JSONObject;
 import com.google.gwt.json.client.JSONString;
 import com.google.gwt.user.client.ui.ComplexPanel;
 import com.google.gwt.user.client.ui.Widget;
 import com.google.gwt.user.client.ui.WidgetCollection;
+import org.vaadin.alump.masonry.client.shared.MasonryImageSources;
+import org.vaadin.alump.masonry.client.shared.MasonryItemPosition;
+import org.vaadin.alump.masonry.client.shared.MasonryItemSizeHint;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutTrigger;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -37,13 +49,48 @@ import java.util.logging.Logger;
  */
 public class MasonryPanel extends ComplexPanel {
 
+    /**
+     * Attribute marking images whose srcset and sizes are given by {@link #setImageSources(Widget, MasonryImageSources)}
+     */
+    public static final String IMAGE_SOURCES_ATTRIBUTE = "data-masonry-sources";
+
     private boolean masonryInitialized = false;
     private JavaScriptObject msnry = null;
     private boolean rendering = false;
     private boolean rendered = false;
+    private int reservedTop = 0;
+    private int reservedBottom = 0;
+
+    // Layout scheduled to next animation frame
+    private boolean fullLayoutScheduled = false;
+    private int layoutFromIndex = -1;
+    private final List<Widget> appendedScheduled = new ArrayList<Widget>();
+    private JavaScriptObject preparedLayout = null;
+    private int positionHintColumns = 0;
+
+    // Layout pass timing, only measured when listener is set
+    private LayoutTimingListener layoutTimingListener = null;
+    private LayoutCompleteListener layoutCompleteListener = null;
+    private MasonryLayoutTrigger scheduledTrigger = null;
+    private MasonryLayoutTrigger preparedTrigger = null;
+    private double preparedReadDuration = 0;
+
+    private final Map<Widget, MasonryItemSizeHint> sizeHints = new HashMap<Widget, MasonryItemSizeHint>();
 
     public static final String ITEM_CLASSNAME = "masonry-item";
 
+    /**
+     * Maximum number of removed wrapper elements kept for reuse
+     */
+    public static final int MAX_POOLED_WRAPPERS = 100;
+
+    // Removed wrapper elements (with their Masonry item objects) waiting for reuse
+    private final List<Element> wrapperPool = new ArrayList<Element>();
+
+    // Index of each item is stored to its wrapper. Indexes are valid for this many first items, rest are renumbered
+    // when next looked up, so lookups between changes are O(1).
+    private int indexedItemCount = 0;
+
     /**
      * Class name added while js library is performing layout
      */
@@ -51,6 +98,31 @@ public class MasonryPanel extends ComplexPanel {
 
     private final static Logger LOGGER = Logger.getLogger(MasonryPanel.class.getName());
 
+    /**
+     * Listener of layout pass timings
+     */
+    public interface LayoutTimingListener {
+
+        /**
+         * Called after each layout pass
+         * @param trigger First reason the pass was scheduled for
+         * @param items Number of items laid out
+         * @param duration Time spent in reading and writing layout, in milliseconds
+         */
+        void onLayoutTiming(MasonryLayoutTrigger trigger, int items, double duration);
+    }
+
+    /**
+     * Listener of completed layouts
+     */
+    public interface LayoutCompleteListener {
+
+        /**
+         * Called when layout and its transitions are done, size of container is final
+         */
+        void onLayoutComplete();
+    }
+
 	public MasonryPanel() {
         setElement(Document.get().createDivElement());
 	}
@@ -69,27 +141,38 @@ public class MasonryPanel extends ComplexPanel {
         super.setVisible(visible);
 
         if(msnry != null && wasVisible == false && visible == true) {
-            layout();
+            scheduleLayout(MasonryLayoutTrigger.VISIBILITY);
         }
     }
 
     public void onDetach() {
+        MasonryLayoutScheduler.get().cancel(this);
         if(msnry != null) {
             nativeDestroy(msnry);
             msnry = null;
         }
+        // Pooled item objects refer to destroyed masonry instance
+        wrapperPool.clear();
 
         super.onDetach();
     }
 
-    public void updateWrapperStyleName(Widget widget, String styleName) {
+    /**
+     * Update style name of item's wrapper
+     * @param widget Widget of item
+     * @param styleName New wrapper style name, or null if no extra style names
+     * @return true if class name of wrapper changed
+     */
+    public boolean updateWrapperStyleName(Widget widget, String styleName) {
         if(widget.getParent() == this) {
             Element wrapper = widget.getElement().getParentElement();
-            wrapper.setClassName(ITEM_CLASSNAME);
-            if(styleName != null) {
-                wrapper.addClassName(styleName);
+            String className = styleName == null ? ITEM_CLASSNAME : ITEM_CLASSNAME + " " + styleName;
+            if(!className.equals(wrapper.getClassName())) {
+                wrapper.setClassName(className);
+                return true;
             }
         }
+        return false;
     }
 
     public void addItem(Widget widget, String styleName) {
@@ -98,59 +181,692 @@ public class MasonryPanel extends ComplexPanel {
 
     protected void addItem(Widget widget, String styleName, String id) {
         Element item = createComponentWrapper(styleName, id);
+        int index = getWidgetCount();
         getElement().appendChild(item);
         nativeAddItem(msnry, item);
         super.add(widget, item);
+        nativeSetItem(item, widget, index);
+        if(indexedItemCount == index) {
+            ++indexedItemCount;
+        }
+    }
+
+    /**
+     * Insert new item before given item
+     * @param widget Widget added
+     * @param styleName Wrapper style name, or null if no extra style names
+     * @param before Widget before which new item is added, or null to add to end
+     */
+    public void insertItem(Widget widget, String styleName, Widget before) {
+        if(before == null) {
+            addItem(widget, styleName);
+            return;
+        }
+        Element item = createComponentWrapper(styleName, null);
+        Element beforeItem = getWrapper(before);
+        int index = indexOfItem(beforeItem);
+        getElement().insertBefore(item, beforeItem);
+        nativeInsertItem(msnry, item, index);
+        super.insert(widget, item, index, false);
+        nativeSetItem(item, widget, index);
+        itemsChangedFrom(index + 1);
+    }
+
+    /**
+     * Move existing item before given item. Widget is not detached while moved.
+     * @param widget Widget moved
+     * @param before Widget before which item is moved, or null to move to end
+     */
+    public void moveItem(Widget widget, Widget before) {
+        Element item = getWrapper(widget);
+        Element beforeItem = getWrapper(before);
+        int from = indexOfItem(item);
+        int to = indexOfItem(beforeItem);
+        if(from >= getWidgetCount()) {
+            return;
+        }
+        if(to > from) {
+            --to;
+        }
+        getElement().insertBefore(item, beforeItem);
+        nativeMoveItem(msnry, from, to);
+        getChildren().remove(from);
+        getChildren().insert(widget, to);
+        itemsChangedFrom(Math.min(from, to));
+    }
+
+    @Override
+    public int getWidgetIndex(Widget child) {
+        if(child == null || child.getParent() != this) {
+            return -1;
+        }
+        return indexOfItem(getWrapper(child));
+    }
+
+    @Override
+    public boolean remove(Widget widget) {
+        if(widget.getParent() != this) {
+            return false;
+        }
+        removeItem(widget);
+        return true;
+    }
+
+    /**
+     * Get index of item with given wrapper element. Index stored to wrapper is used if it is still valid, otherwise
+     * items after last valid index are renumbered first.
+     * @param wrapper Wrapper element of item, or null
+     * @return Index of item, or number of items if wrapper is null or not wrapper of any item
+     */
+    protected int indexOfItem(Element wrapper) {
+        int count = getWidgetCount();
+        if(wrapper == null) {
+            return count;
+        }
+        int index = nativeGetItemIndex(wrapper);
+        if(index < 0 || index >= indexedItemCount || !isWrapperAt(wrapper, index)) {
+            for(int i = indexedItemCount; i < count; ++i) {
+                nativeSetItemIndex(getWrapper(getWidget(i)), i);
+            }
+            indexedItemCount = count;
+            index = nativeGetItemIndex(wrapper);
+        }
+        return isWrapperAt(wrapper, index) ? index : count;
+    }
+
+    private boolean isWrapperAt(Element wrapper, int index) {
+        return index >= 0 && index < getWidgetCount() && getWrapper(getWidget(index)) == wrapper;
+    }
+
+    /**
+     * Mark stored indexes of items invalid starting from given index
+     * @param index Index of first item whose index may have changed
+     */
+    private void itemsChangedFrom(int index) {
+        indexedItemCount = Math.min(indexedItemCount, index);
+    }
+
+    /**
+     * Update items to match given order with minimal amount of DOM operations. Widgets not in given list are removed,
+     * new widgets are added and existing widgets outside longest increasing subsequence of old indexes are moved.
+     * @param widgets Widgets in new order
+     * @param styleNames Wrapper style names of widgets (only used with new widgets), same order as widgets
+     * @return Index of first item that is not in its old position, or size of widgets if order did not change
+     */
+    public int setItems(List<Widget> widgets, List<String> styleNames) {
+        int firstChange = 0;
+        while(firstChange < widgets.size() && firstChange < getWidgetCount()
+                && getWidget(firstChange) == widgets.get(firstChange)) {
+            ++firstChange;
+        }
+
+        if(firstChange == widgets.size() && firstChange == getWidgetCount()) {
+            return firstChange;
+        }
+
+        Set<Widget> kept = new HashSet<Widget>(widgets);
+        for(int i = getWidgetCount() - 1; i >= firstChange; --i) {
+            Widget widget = getWidget(i);
+            if(!kept.contains(widget)) {
+                removeItem(widget, i);
+            }
+        }
+
+        Map<Widget, Integer> oldIndexes = new HashMap<Widget, Integer>();
+        for(int i = firstChange; i < getWidgetCount(); ++i) {
+            oldIndexes.put(getWidget(i), i);
+        }
+
+        int[] sources = new int[widgets.size() - firstChange];
+        for(int i = 0; i < sources.length; ++i) {
+            Integer oldIndex = oldIndexes.get(widgets.get(firstChange + i));
+            sources[i] = oldIndex == null ? -1 : oldIndex;
+        }
+        boolean[] stable = longestIncreasingSubsequence(sources);
+
+        // New items after last kept item are appended in forward order, so finding their position is not needed
+        int appendFrom = sources.length;
+        while(appendFrom > 0 && sources[appendFrom - 1] < 0) {
+            --appendFrom;
+        }
+
+        if(appendFrom > 0) {
+            // Arrange wrappers in DOM with O(1) operations, then rebuild widget list and Masonry item array of changed
+            // range in one pass
+            boolean[] added = new boolean[appendFrom];
+            Element next = null;
+            for(int i = appendFrom - 1; i >= 0; --i) {
+                Widget widget = widgets.get(firstChange + i);
+                Element wrapper;
+                if(sources[i] < 0) {
+                    widget.removeFromParent();
+                    wrapper = createComponentWrapper(styleNames.get(firstChange + i), null);
+                    wrapper.appendChild(widget.getElement());
+                    getElement().insertBefore(wrapper, next);
+                    added[i] = true;
+                } else {
+                    wrapper = getWrapper(widget);
+                    if(!stable[i]) {
+                        getElement().insertBefore(wrapper, next);
+                    }
+                }
+                next = wrapper;
+            }
+
+            WidgetCollection children = getChildren();
+            while(children.size() > firstChange) {
+                children.remove(children.size() - 1);
+            }
+            nativeTruncateItems(msnry, firstChange);
+            for(int i = 0; i < appendFrom; ++i) {
+                Widget widget = widgets.get(firstChange + i);
+                Element wrapper = added[i] ? widget.getElement().getParentElement() : getWrapper(widget);
+                children.add(widget);
+                if(added[i]) {
+                    nativeAddItem(msnry, wrapper);
+                    adopt(widget);
+                } else {
+                    nativePushItem(msnry, wrapper);
+                }
+                nativeSetItem(wrapper, widget, firstChange + i);
+            }
+            indexedItemCount = firstChange + appendFrom;
+        }
+
+        for(int i = appendFrom; i < sources.length; ++i) {
+            addItem(widgets.get(firstChange + i), styleNames.get(firstChange + i));
+        }
+
+        return firstChange;
+    }
+
+    /**
+     * Resolve which values belong to longest increasing subsequence. Negative values are ignored.
+     * @param values Values checked
+     * @return Array where true means value at same index is part of the subsequence
+     */
+    protected static boolean[] longestIncreasingSubsequence(int[] values) {
+        int[] tails = new int[values.length];
+        int[] previous = new int[values.length];
+        int length = 0;
+
+        for(int i = 0; i < values.length; ++i) {
+            if(values[i] < 0) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                if(values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if(low == length) {
+                ++length;
+            }
+        }
+
+        boolean[] result = new boolean[values.length];
+        for(int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            result[i] = true;
+        }
+        return result;
+    }
+
+    /**
+     * Get wrapper element of item
+     * @param widget Widget of item
+     * @return Wrapper element, or null if widget is null
+     */
+    public Element getWrapper(Widget widget) {
+        return widget == null ? null : widget.getElement().getParentElement();
+    }
+
+    /**
+     * Get widget of item with given wrapper element
+     * @param wrapper Wrapper element of item
+     * @return Widget of item, or null if wrapper is not wrapper of any item
+     */
+    public Widget getItemWidget(Element wrapper) {
+        if(wrapper == null) {
+            return null;
+        }
+        Widget widget = nativeGetItemWidget(wrapper);
+        return widget != null && widget.getParent() == this && getWrapper(widget) == wrapper ? widget : null;
     }
 
     /**
-     * Method used to create wrapper element for new component
+     * Method used to create wrapper element for new component. Wrapper released by removed item is reused if
+     * available.
      * @param styleName Stylename(s) added to element
      * @param id ID of element
      * @return Wrapper element created
      */
     protected Element createComponentWrapper(String styleName, String id) {
-        Element item = Document.get().createDivElement();
-        item.addClassName(ITEM_CLASSNAME);
-        if(styleName != null) {
-            item.addClassName(styleName);
+        Element item;
+        if(wrapperPool.isEmpty()) {
+            item = Document.get().createDivElement();
+        } else {
+            item = wrapperPool.remove(wrapperPool.size() - 1);
         }
+        item.setClassName(styleName == null ? ITEM_CLASSNAME : ITEM_CLASSNAME + " " + styleName);
         if(id != null) {
             item.setId(id);
         }
         return item;
     }
 
+    /**
+     * Reset wrapper element of removed item and keep it for reuse if pool is not full
+     * @param item Wrapper element already removed from DOM
+     */
+    protected void releaseComponentWrapper(Element item) {
+        if(wrapperPool.size() >= MAX_POOLED_WRAPPERS || item.getFirstChild() != null) {
+            return;
+        }
+        item.removeAttribute("style");
+        item.removeAttribute("id");
+        nativeClearHint(item);
+        nativeSetItem(item, null, -1);
+        wrapperPool.add(item);
+    }
+
+    /**
+     * Get number of wrapper elements waiting for reuse
+     * @return Number of pooled wrappers
+     */
+    public int getPooledWrapperCount() {
+        return wrapperPool.size();
+    }
+
     public void removeAllItems() {
         WidgetCollection children = getChildren();
         while(getChildren().size() > 0) {
-            Widget child = getWidget(getWidgetCount() - 1);
-            removeItem(child);
+            int index = getWidgetCount() - 1;
+            removeItem(getWidget(index), index);
         }
     }
 
     public void removeItem(Widget widget) {
+        removeItem(widget, widget.getParent() == this ? indexOfItem(getWrapper(widget)) : -1);
+    }
+
+    private void removeItem(Widget widget, int index) {
         Element item = widget.getElement().getParentElement();
+        sizeHints.remove(widget);
 
-        if(widget.getParent() == this) {
-            super.remove(widget);
+        if(index >= 0 && index < getWidgetCount()) {
+            try {
+                orphan(widget);
+            } finally {
+                widget.getElement().removeFromParent();
+                getChildren().remove(index);
+            }
+            if(msnry != null) {
+                nativeRemoveItem(msnry, index);
+            }
+            itemsChangedFrom(index);
         }
 
-        nativeRemoveItem(msnry, item);
         item.removeFromParent();
+        releaseComponentWrapper(item);
+    }
+
+    /**
+     * Reserve empty space before and after items. Used to stand in for items that are not rendered. Call layout after
+     * this to move items below the reserved space.
+     * @param top Space reserved before items in pixels
+     * @param bottom Space reserved after items in pixels
+     * @return true if reserved space changed
+     */
+    public boolean setReservedSpace(int top, int bottom) {
+        if(top == reservedTop && bottom == reservedBottom) {
+            return false;
+        }
+        reservedTop = top;
+        reservedBottom = bottom;
+        getElement().getStyle().setPaddingTop(top, Style.Unit.PX);
+        getElement().getStyle().setPaddingBottom(bottom, Style.Unit.PX);
+        return true;
     }
 
     /**
      * Ask Masonry to layout current items.
      */
     public void layout() {
+        layout(MasonryLayoutTrigger.OTHER);
+    }
+
+    /**
+     * Ask Masonry to layout current items immediately
+     * @param trigger Reason of layout, reported to layout timing listener
+     */
+    public void layout(MasonryLayoutTrigger trigger) {
         if(isVisible() && isAttached()) {
             addStyleName(RENDERING_CLASSNAME);
             rendering = true;
-            nativeLayout(msnry);
+            if(layoutTimingListener == null) {
+                nativeLayout(msnry);
+            } else {
+                double start = now();
+                nativeLayout(msnry);
+                layoutTimingListener.onLayoutTiming(trigger, getWidgetCount(), now() - start);
+            }
+        }
+    }
+
+    /**
+     * Schedule full layout to be performed in next animation frame
+     */
+    public void scheduleLayout() {
+        scheduleLayout(MasonryLayoutTrigger.OTHER);
+    }
+
+    /**
+     * Schedule full layout to be performed in next animation frame
+     * @param trigger Reason of layout, reported to layout timing listener
+     */
+    public void scheduleLayout(MasonryLayoutTrigger trigger) {
+        fullLayoutScheduled = true;
+        layoutFromIndex = -1;
+        appendedScheduled.clear();
+        scheduleFrame(trigger);
+    }
+
+    /**
+     * Schedule layout of given items that were appended to end of layout. Items before them keep their positions. If
+     * layout has not been rendered yet, or full layout is already scheduled, full layout is performed.
+     * @param appended Widgets appended, in order
+     */
+    public void scheduleAppendLayout(List<Widget> appended) {
+        scheduleAppendLayout(appended, MasonryLayoutTrigger.OTHER);
+    }
+
+    /**
+     * Schedule layout of given items that were appended to end of layout. Items before them keep their positions. If
+     * layout has not been rendered yet, or full layout is already scheduled, full layout is performed.
+     * @param appended Widgets appended, in order
+     * @param trigger Reason of layout, reported to layout timing listener
+     */
+    public void scheduleAppendLayout(List<Widget> appended, MasonryLayoutTrigger trigger) {
+        if(!rendered) {
+            scheduleLayout(trigger);
+        } else if(!fullLayoutScheduled) {
+            appendedScheduled.addAll(appended);
+            scheduleFrame(trigger);
+        }
+    }
+
+    /**
+     * Schedule layout of given item and all items after it. Items before it keep their positions. If full layout is
+     * already scheduled, it will be used.
+     * @param wrapper Wrapper element of first item changed
+     */
+    public void scheduleLayoutFrom(Element wrapper) {
+        scheduleLayoutFrom(wrapper, MasonryLayoutTrigger.OTHER);
+    }
+
+    /**
+     * Schedule layout of given item and all items after it. Items before it keep their positions. If full layout is
+     * already scheduled, it will be used.
+     * @param wrapper Wrapper element of first item changed
+     * @param trigger Reason of layout, reported to layout timing listener
+     */
+    public void scheduleLayoutFrom(Element wrapper, MasonryLayoutTrigger trigger) {
+        if(!rendered) {
+            scheduleLayout(trigger);
+        } else if(!fullLayoutScheduled && msnry != null) {
+            int index = indexOfItem(wrapper);
+            if(layoutFromIndex < 0 || index < layoutFromIndex) {
+                layoutFromIndex = index;
+            }
+            scheduleFrame(trigger);
+        }
+    }
+
+    private void scheduleFrame(MasonryLayoutTrigger trigger) {
+        if(scheduledTrigger == null) {
+            scheduledTrigger = trigger;
+        }
+        MasonryLayoutScheduler.get().schedule(this);
+    }
+
+    /**
+     * Set listener that is told duration of each layout pass. Layout passes are not measured if listener is not set.
+     * @param listener Listener, or null to stop measuring
+     */
+    public void setLayoutTimingListener(LayoutTimingListener listener) {
+        layoutTimingListener = listener;
+    }
+
+    /**
+     * Set listener that is told when layout is complete
+     * @param listener Listener, or null to remove
+     */
+    public void setLayoutCompleteListener(LayoutCompleteListener listener) {
+        layoutCompleteListener = listener;
+    }
+
+    /**
+     * If layout is scheduled to next animation frame or layout is still being rendered
+     * @return true if layout is not yet complete
+     */
+    public boolean isLayoutPending() {
+        return rendering || fullLayoutScheduled || layoutFromIndex >= 0 || !appendedScheduled.isEmpty();
+    }
+
+    /**
+     * Read phase of scheduled layout. Measures container and items and resolves new positions of items, but does not
+     * modify DOM.
+     */
+    protected void readLayout() {
+        preparedLayout = null;
+        preparedTrigger = scheduledTrigger == null ? MasonryLayoutTrigger.OTHER : scheduledTrigger;
+        scheduledTrigger = null;
+        double start = layoutTimingListener == null ? 0 : now();
+        if(msnry != null && isVisible() && isAttached()) {
+            if(fullLayoutScheduled) {
+                preparedLayout = nativePrepareLayout(msnry, null, positionHintColumns);
+            } else if(layoutFromIndex >= 0) {
+                // Covers also appended items, as they are after the index
+                preparedLayout = nativePrepareLayoutFrom(msnry, layoutFromIndex, positionHintColumns);
+            } else if(!appendedScheduled.isEmpty()) {
+                JsArray<Element> elements = JavaScriptObject.createArray().cast();
+                for(Widget widget : appendedScheduled) {
+                    if(widget.getParent() == this) {
+                        elements.push(getWrapper(widget));
+                    }
+                }
+                preparedLayout = nativePrepareLayout(msnry, elements, positionHintColumns);
+            }
+        }
+        fullLayoutScheduled = false;
+        layoutFromIndex = -1;
+        appendedScheduled.clear();
+        if(layoutTimingListener != null) {
+            preparedReadDuration = now() - start;
+        }
+    }
+
+    /**
+     * Write phase of scheduled layout. Moves items to positions resolved in read phase and resizes container.
+     */
+    protected void writeLayout() {
+        if(preparedLayout != null && msnry != null) {
+            addStyleName(RENDERING_CLASSNAME);
+            rendering = true;
+            if(layoutTimingListener == null) {
+                nativeApplyLayout(msnry, preparedLayout);
+            } else {
+                double start = now();
+                nativeApplyLayout(msnry, preparedLayout);
+                layoutTimingListener.onLayoutTiming(preparedTrigger, nativeGetPreparedItemCount(preparedLayout),
+                        preparedReadDuration + now() - start);
+            }
+        }
+        preparedLayout = null;
+    }
+
+    /**
+     * Give responsive sources to first image of item. Browser picks the best source from srcset, so image is not
+     * reloaded if attributes did not change. Image is marked with {@link #IMAGE_SOURCES_ATTRIBUTE}, so that srcset and
+     * sizes set by application are never removed.
+     * @param widget Widget of item
+     * @param sources Sources given, or null to remove srcset and sizes given earlier with this method
+     */
+    public void setImageSources(Widget widget, MasonryImageSources sources) {
+        Element image = findImage(widget.getElement());
+        if(image == null) {
+            return;
+        }
+        if(sources == null) {
+            if(image.hasAttribute(IMAGE_SOURCES_ATTRIBUTE)) {
+                image.removeAttribute(IMAGE_SOURCES_ATTRIBUTE);
+                updateAttribute(image, "sizes", null);
+                updateAttribute(image, "srcset", null);
+            }
+        } else {
+            image.setAttribute(IMAGE_SOURCES_ATTRIBUTE, "");
+            updateAttribute(image, "sizes", sources.sizes);
+            updateAttribute(image, "srcset", sources.srcset);
+        }
+    }
+
+    private static Element findImage(Element element) {
+        if("IMG".equalsIgnoreCase(element.getTagName())) {
+            return element;
+        }
+        return element.getElementsByTagName("img").getItem(0);
+    }
+
+    private static void updateAttribute(Element element, String name, String value) {
+        if(value == null || value.isEmpty()) {
+            if(element.hasAttribute(name)) {
+                element.removeAttribute(name);
+            }
+        } else if(!value.equals(element.getAttribute(name))) {
+            element.setAttribute(name, value);
+        }
+    }
+
+    /**
+     * Reserve size for item's wrapper. Aspect ratio is reserved with CSS aspect-ratio, or with minimum height
+     * calculated from wrapper's current width if browser does not support it.
+     * @param widget Widget of item
+     * @param sizeHint Size reserved, or null to remove reservation
+     * @return true if reserved size changed
+     */
+    public boolean setSizeHint(Widget widget, MasonryItemSizeHint sizeHint) {
+        if(widget.getParent() != this) {
+            return false;
+        }
+        MasonryItemSizeHint old = sizeHints.get(widget);
+        if(sizeHint == null ? old == null : sizeHint.equals(old)) {
+            return false;
+        }
+
+        Element wrapper = getWrapper(widget);
+        Style style = wrapper.getStyle();
+        int minHeight = 0;
+        style.clearProperty("aspectRatio");
+        if(sizeHint == null) {
+            sizeHints.remove(widget);
+        } else {
+            sizeHints.put(widget, sizeHint);
+            minHeight = sizeHint.minHeight;
+            if(sizeHint.aspectRatio > 0) {
+                if(isAspectRatioSupported()) {
+                    style.setProperty("aspectRatio", String.valueOf(sizeHint.aspectRatio));
+                } else {
+                    minHeight = Math.max(minHeight, (int) Math.ceil(wrapper.getOffsetWidth() / sizeHint.aspectRatio));
+                }
+            }
+        }
+
+        if(minHeight > 0) {
+            style.setProperty("minHeight", minHeight + "px");
+        } else {
+            style.clearProperty("minHeight");
+        }
+        return true;
+    }
+
+    private static native boolean isAspectRatioSupported()
+    /*-{
+        return !!($wnd.CSS && $wnd.CSS.supports && $wnd.CSS.supports('aspect-ratio', '1 / 1'));
+    }-*/;
+
+    /**
+     * Set number of columns position hints are calculated for. Hints are ignored if Masonry uses different amount of
+     * columns.
+     * @param columns Number of columns
+     */
+    public void setPositionHintColumns(int columns) {
+        positionHintColumns = columns;
+    }
+
+    /**
+     * Set position of item resolved on server side. Item with position hint is not measured in layout.
+     * @param widget Widget of item
+     * @param position Position of item, or null to measure item in layout
+     * @return true if item had different position hint before
+     */
+    public boolean setPositionHint(Widget widget, MasonryItemPosition position) {
+        if(widget.getParent() != this) {
+            return false;
+        }
+        Element wrapper = getWrapper(widget);
+        boolean hadHint = nativeGetHintHeight(wrapper) >= 0;
+        if(position == null) {
+            nativeClearHint(wrapper);
+            return hadHint;
+        }
+        boolean changed = nativeSetHint(wrapper, position.column, position.span, position.top, position.height);
+        return hadHint && changed;
+    }
+
+    /**
+     * Get expected height of item given with position hint
+     * @param wrapper Wrapper element of item
+     * @return Expected outer height in pixels, or -1 if item does not have position hint
+     */
+    public int getPositionHintHeight(Element wrapper) {
+        return nativeGetHintHeight(wrapper);
+    }
+
+    /**
+     * Remove position hints from given item and all items after it. Called when measured size of item does not
+     * match with its hint, as positions of following items depend on it.
+     * @param wrapper Wrapper element of first item which hint is removed
+     */
+    public void clearPositionHintsFrom(Element wrapper) {
+        for(int i = indexOfItem(wrapper); i < getWidgetCount(); ++i) {
+            nativeClearHint(getWrapper(getWidget(i)));
         }
     }
 
+    private static native boolean nativeSetHint(Element wrapper, int column, int span, int top, int height)
+    /*-{
+        var old = wrapper.__masonryHint;
+        wrapper.__masonryHint = { column: column, span: span, top: top, height: height };
+        return !old || old.column != column || old.span != span || old.top != top || old.height != height;
+    }-*/;
+
+    private static native void nativeClearHint(Element wrapper)
+    /*-{
+        wrapper.__masonryHint = null;
+    }-*/;
+
+    private static native int nativeGetHintHeight(Element wrapper)
+    /*-{
+        return wrapper.__masonryHint ? wrapper.__masonryHint.height : -1;
+    }-*/;
+
     protected void layoutWithoutTransitions(JavaScriptObject[] items) {
         nativeLayoutWithoutTransitions(msnry, items);
     }
@@ -169,14 +885,225 @@ public class MasonryPanel extends ComplexPanel {
         msnry.layoutItems(items, true);
     }-*/;
 
+    /**
+     * Resolve positions of items without moving them. Equals to reading part of Masonry's layout and layoutItems.
+     * @param msnry Masonry instance
+     * @param itemElements Elements of appended items, or null for full layout
+     * @param hintColumns Number of columns position hints were calculated for
+     * @return Prepared layout given to nativeApplyLayout
+     */
+    protected static native JavaScriptObject nativePrepareLayout(JavaScriptObject msnry, JsArray<Element> itemElements,
+            int hintColumns)
+    /*-{
+        var full = !itemElements;
+        var isInstant = true;
+        if(full) {
+            msnry._resetLayout();
+            msnry._manageStamps();
+            isInstant = msnry.options.isLayoutInstant !== undefined ? msnry.options.isLayoutInstant
+                : !msnry._isLayoutInited;
+        }
+        var items = msnry._getItemsForLayout(full ? msnry.items : msnry.getItems(itemElements));
+        return @org.vaadin.alump.masonry.client.masonry.MasonryPanel::nativePrepareItems(*)(msnry, items, full,
+            isInstant, hintColumns);
+    }-*/;
+
+    /**
+     * Resolve positions of items starting from given index. Column heights are rebuilt from current positions and
+     * sizes of items before the index, so those items are not measured. Falls back to full layout if items before
+     * index have not been laid out with current column count.
+     * @param msnry Masonry instance
+     * @param fromIndex Index of first item in Masonry's item array resolved
+     * @param hintColumns Number of columns position hints were calculated for
+     * @return Prepared layout given to nativeApplyLayout
+     */
+    protected static native JavaScriptObject nativePrepareLayoutFrom(JavaScriptObject msnry, int fromIndex,
+            int hintColumns)
+    /*-{
+        var oldCols = msnry.cols;
+        msnry._resetLayout();
+        var full = !msnry._isLayoutInited || msnry.cols != oldCols;
+
+        for(var i = 0; i < fromIndex && !full; ++i) {
+            var item = msnry.items[i];
+            if(item.isIgnored) {
+                continue;
+            }
+            var hint = item.element.__masonryHint;
+            var column, span, bottom;
+            if(hint && msnry.cols == hintColumns) {
+                column = hint.column;
+                span = hint.span;
+                bottom = hint.top + hint.height;
+            } else if(item.size) {
+                var remainder = item.size.outerWidth % msnry.columnWidth;
+                var mathMethod = remainder && remainder < 1 ? 'round' : 'ceil';
+                span = Math.min(Math[mathMethod](item.size.outerWidth / msnry.columnWidth), msnry.cols);
+                column = Math.round(item.position.x / msnry.columnWidth);
+                bottom = item.position.y + item.size.outerHeight;
+            } else {
+                full = true;
+                break;
+            }
+            for(var c = column; c < column + span && c < msnry.cols; ++c) {
+                msnry.colYs[c] = bottom;
+            }
+        }
+
+        if(full) {
+            msnry._resetLayout();
+            msnry._manageStamps();
+        }
+        var items = msnry._getItemsForLayout(full ? msnry.items : msnry.items.slice(fromIndex));
+        return @org.vaadin.alump.masonry.client.masonry.MasonryPanel::nativePrepareItems(*)(msnry, items, full,
+            !msnry._isLayoutInited, hintColumns);
+    }-*/;
+
+    private static native JavaScriptObject nativePrepareItems(JavaScriptObject msnry, JavaScriptObject items,
+            boolean full, boolean isInstant, int hintColumns)
+    /*-{
+        var queue = [];
+        for(var i = 0; i < items.length; ++i) {
+            var hint = items[i].element.__masonryHint;
+            var position;
+            if(hint && msnry.cols == hintColumns && hint.column + hint.span <= msnry.cols) {
+                // Position given by server, item is not measured
+                position = { x: msnry.columnWidth * hint.column, y: hint.top };
+                for(var c = hint.column; c < hint.column + hint.span; ++c) {
+                    msnry.colYs[c] = hint.top + hint.height;
+                }
+            } else {
+                position = msnry._getItemLayoutPosition(items[i]);
+            }
+            position.item = items[i];
+            position.isInstant = isInstant || items[i].isLayoutInstant;
+            queue.push(position);
+        }
+        return { full: full, items: items, queue: queue };
+    }-*/;
+
+    /**
+     * Move items to positions resolved by nativePrepareLayout and resize container
+     * @param msnry Masonry instance
+     * @param prepared Prepared layout
+     */
+    protected static native void nativeApplyLayout(JavaScriptObject msnry, JavaScriptObject prepared)
+    /*-{
+        msnry._emitCompleteOnItems('layout', prepared.items);
+        msnry._processLayoutQueue(prepared.queue);
+        msnry._postLayout();
+        if(prepared.full) {
+            msnry._isLayoutInited = true;
+        }
+    }-*/;
+
+    protected static native int nativeGetPreparedItemCount(JavaScriptObject prepared)
+    /*-{
+        return prepared.items.length;
+    }-*/;
+
+    /**
+     * High resolution time if available
+     * @return Time in milliseconds
+     */
+    protected static native double now()
+    /*-{
+        return $wnd.performance && $wnd.performance.now ? $wnd.performance.now() : new Date().getTime();
+    }-*/;
+
     protected static native void nativeAddItem(JavaScriptObject msnry, Element itemElement)
     /*-{
-        msnry.addItems(itemElement);
+        msnry.items.push(@org.vaadin.alump.masonry.client.masonry.MasonryPanel::nativeObtainItem(*)(msnry, itemElement));
+    }-*/;
+
+    protected static native void nativeInsertItem(JavaScriptObject msnry, Element itemElement, int index)
+    /*-{
+        var item = @org.vaadin.alump.masonry.client.masonry.MasonryPanel::nativeObtainItem(*)(msnry, itemElement);
+        msnry.items.splice(index, 0, item);
     }-*/;
 
-    protected static native void nativeRemoveItem(JavaScriptObject msnry, Element itemElement)
+    /**
+     * Add existing Masonry item object of wrapper to end of item array
+     */
+    private static native void nativePushItem(JavaScriptObject msnry, Element itemElement)
+    /*-{
+        msnry.items.push(itemElement.__masonryItem);
+    }-*/;
+
+    private static native void nativeTruncateItems(JavaScriptObject msnry, int length)
+    /*-{
+        msnry.items.length = length;
+    }-*/;
+
+    /**
+     * Store widget and index of item to its wrapper element
+     */
+    private static native void nativeSetItem(Element wrapper, Widget widget, int index)
+    /*-{
+        wrapper.__masonryWidget = widget;
+        wrapper.__masonryIndex = index;
+    }-*/;
+
+    private static native void nativeSetItemIndex(Element wrapper, int index)
+    /*-{
+        wrapper.__masonryIndex = index;
+    }-*/;
+
+    private static native int nativeGetItemIndex(Element wrapper)
+    /*-{
+        var index = wrapper.__masonryIndex;
+        return typeof index === 'number' ? index : -1;
+    }-*/;
+
+    private static native Widget nativeGetItemWidget(Element wrapper)
+    /*-{
+        return wrapper.__masonryWidget || null;
+    }-*/;
+
+    /**
+     * Get Masonry item object for wrapper element. Item object of reused wrapper is reinitialized instead of
+     * creating new one.
+     */
+    private static native JavaScriptObject nativeObtainItem(JavaScriptObject msnry, Element itemElement)
+    /*-{
+        var Item = msnry.constructor.Item;
+        var item = itemElement.__masonryItem;
+        if(item && item.layout === msnry) {
+            Item.call(item, itemElement, msnry);
+            delete item.size;
+            delete item.isHidden;
+            delete item.isTransitioning;
+            delete item._events;
+        } else {
+            item = new Item(itemElement, msnry);
+            itemElement.__masonryItem = item;
+        }
+        return item;
+    }-*/;
+
+    protected static native void nativeMoveItem(JavaScriptObject msnry, int from, int to)
+    /*-{
+        if(from >= msnry.items.length) {
+            return;
+        }
+        var item = msnry.items.splice(from, 1)[0];
+        msnry.items.splice(to, 0, item);
+    }-*/;
+
+    /**
+     * Remove item from masonry without hide transition. Running transitions are stopped, so item object and its
+     * wrapper can be reused right away. Hide transition is skipped on purpose: wrapper playing it could not be pooled
+     * before the transition ends, and without widget it would only fade out an empty element.
+     */
+    protected static native void nativeRemoveItem(JavaScriptObject msnry, int index)
     /*-{
-        msnry.remove(itemElement);
+        if(index >= msnry.items.length) {
+            return;
+        }
+        var item = msnry.items.splice(index, 1)[0];
+        if(item.isTransitioning) {
+            item.disableTransition();
+        }
     }-*/;
 
     protected static native void nativeDestroy(JavaScriptObject msnry)
@@ -202,7 +1129,6 @@ public class MasonryPanel extends ComplexPanel {
         var that = this;
         var msnry = new $wnd.Masonry(element, properties);
         msnry.on('layoutComplete', function( event, items ) {
-            console.log('onLayoutComplete');
             that.@org.vaadin.alump.masonry.client.masonry.MasonryPanel::onLayoutComplete()();
         });
         return msnry;
@@ -225,6 +1151,9 @@ public class MasonryPanel extends ComplexPanel {
         rendering = false;
         rendered = true;
         removeStyleName(RENDERING_CLASSNAME);
+        if(layoutCompleteListener != null) {
+            layoutCompleteListener.onLayoutComplete();
+        }
     }
 
     /**
@@ -0,0 +1,396 @@
+/**
+ * MasonryReorderDragger.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry.client.masonry;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.ui.Widget;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutTrigger;
+
+/**
+ * Reorders items of MasonryPanel by dragging them with mouse or touch. Dragged item is moved locally while pointer
+ * passes over other items, so acceptance and the new position are resolved on client side without server round
+ * trips. Listener is told once, when item is dropped to new position.
+ */
+public class MasonryReorderDragger {
+
+    /**
+     * Interface for reorder listener
+     */
+    public interface Listener {
+        /**
+         * Called when item was dropped to new position. Item has already been moved in panel.
+         * @param widget Widget of item moved
+         * @param fromIndex Index of item before drag
+         * @param toIndex Index of item after drop
+         */
+        void onReorder(Widget widget, int fromIndex, int toIndex);
+    }
+
+    /**
+     * Class name added to wrapper of item while it's dragged
+     */
+    public static final String DRAGGED_CLASSNAME = "masonry-reorder-dragged";
+
+    /**
+     * Class name added to panel while item is dragged
+     */
+    public static final String REORDERING_CLASSNAME = "masonry-reordering";
+
+    /**
+     * Distance in pixels mouse has to move while pressed before drag starts
+     */
+    public static final int DRAG_THRESHOLD = 5;
+
+    /**
+     * Time in milliseconds touch has to be held before drag starts. Touch moved before this scrolls the page.
+     */
+    public static final int TOUCH_DELAY = 300;
+
+    private final MasonryPanel panel;
+    private final Listener listener;
+    private JavaScriptObject startHandler;
+    private JavaScriptObject dragHandler;
+
+    private Element pressedWrapper;
+    private Widget draggedWidget;
+    private boolean touch;
+    private boolean dragging;
+    private int startX;
+    private int startY;
+    private int fromIndex;
+    // Item last moved over, item is moved again only after pointer has entered some other item
+    private Element lastTarget;
+
+    private final Timer touchTimer = new Timer() {
+        @Override
+        public void run() {
+            if(pressedWrapper != null && !dragging) {
+                startDrag();
+            }
+        }
+    };
+
+    public MasonryReorderDragger(MasonryPanel panel, Listener listener) {
+        this.panel = panel;
+        this.listener = listener;
+    }
+
+    /**
+     * Enable or disable dragging of items. Drag in progress is cancelled when disabled.
+     * @param enabled true to allow dragging
+     */
+    public void setEnabled(boolean enabled) {
+        if(enabled && startHandler == null) {
+            startHandler = nativeAddStartHandler(panel.getElement());
+        } else if(!enabled && startHandler != null) {
+            cancel();
+            nativeRemoveStartHandler(panel.getElement(), startHandler);
+            startHandler = null;
+        }
+    }
+
+    /**
+     * Check if dragging of items is enabled
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return startHandler != null;
+    }
+
+    /**
+     * Check if item is currently dragged
+     * @return true if drag is in progress
+     */
+    public boolean isDragging() {
+        return dragging;
+    }
+
+    /**
+     * Cancel drag in progress. Dragged item is returned to its original position.
+     */
+    public void cancel() {
+        if(dragging && draggedWidget.getParent() == panel) {
+            int index = panel.getWidgetIndex(draggedWidget);
+            if(index != fromIndex) {
+                int beforeIndex = fromIndex > index ? fromIndex + 1 : fromIndex;
+                moveItem(beforeIndex < panel.getWidgetCount() ? panel.getWidget(beforeIndex) : null);
+            }
+        }
+        stop();
+    }
+
+    private boolean onStart(Element target, int x, int y, boolean touch) {
+        if(pressedWrapper != null || !panel.isVisible()) {
+            return false;
+        }
+        Element wrapper = findWrapper(target, true);
+        if(wrapper == null) {
+            return false;
+        }
+        draggedWidget = panel.getItemWidget(wrapper);
+        if(draggedWidget == null) {
+            return false;
+        }
+
+        pressedWrapper = wrapper;
+        this.touch = touch;
+        startX = x;
+        startY = y;
+        dragHandler = nativeAddDragHandler(panel.getElement().getOwnerDocument());
+        if(touch) {
+            touchTimer.schedule(TOUCH_DELAY);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if default action of event should be prevented
+     */
+    private boolean onMove(int x, int y) {
+        if(pressedWrapper == null) {
+            return false;
+        }
+        if(!dragging) {
+            if(Math.abs(x - startX) > DRAG_THRESHOLD || Math.abs(y - startY) > DRAG_THRESHOLD) {
+                if(touch) {
+                    // Touch moved before delay, let it scroll
+                    stop();
+                    return false;
+                }
+                startDrag();
+            } else {
+                return false;
+            }
+        }
+
+        Element target = findWrapper(elementFromPoint(panel.getElement().getOwnerDocument(), x, y), false);
+        if(target == null || target == pressedWrapper) {
+            lastTarget = null;
+        } else if(target != lastTarget) {
+            lastTarget = target;
+            moveOver(target);
+        }
+        return true;
+    }
+
+    private boolean onEnd(boolean cancelled) {
+        if(pressedWrapper == null) {
+            return false;
+        }
+        if(!dragging) {
+            stop();
+            return false;
+        }
+        if(cancelled) {
+            cancel();
+            return true;
+        }
+
+        Widget widget = draggedWidget;
+        int from = fromIndex;
+        int to = panel.getWidgetIndex(widget);
+        nativeSuppressNextClick(panel.getElement());
+        stop();
+        if(to >= 0 && to != from) {
+            listener.onReorder(widget, from, to);
+        }
+        return true;
+    }
+
+    private void startDrag() {
+        touchTimer.cancel();
+        dragging = true;
+        fromIndex = panel.getWidgetIndex(draggedWidget);
+        lastTarget = null;
+        clearSelection();
+        pressedWrapper.addClassName(DRAGGED_CLASSNAME);
+        panel.addStyleName(REORDERING_CLASSNAME);
+    }
+
+    private void stop() {
+        touchTimer.cancel();
+        if(dragHandler != null) {
+            nativeRemoveDragHandler(panel.getElement().getOwnerDocument(), dragHandler);
+            dragHandler = null;
+        }
+        if(pressedWrapper != null) {
+            pressedWrapper.removeClassName(DRAGGED_CLASSNAME);
+        }
+        panel.removeStyleName(REORDERING_CLASSNAME);
+        pressedWrapper = null;
+        draggedWidget = null;
+        lastTarget = null;
+        dragging = false;
+    }
+
+    /**
+     * Move dragged item to position of given item. Item is placed after target when moved forward, and before target
+     * when moved backward, so moving over neighbour swaps positions.
+     */
+    private void moveOver(Element target) {
+        Widget targetWidget = panel.getItemWidget(target);
+        if(targetWidget == null) {
+            return;
+        }
+        int index = panel.getWidgetIndex(draggedWidget);
+        int targetIndex = panel.getWidgetIndex(targetWidget);
+        if(targetIndex > index) {
+            moveItem(targetIndex + 1 < panel.getWidgetCount() ? panel.getWidget(targetIndex + 1) : null);
+        } else {
+            moveItem(targetWidget);
+        }
+    }
+
+    private void moveItem(Widget before) {
+        int index = panel.getWidgetIndex(draggedWidget);
+        int beforeIndex = before == null ? panel.getWidgetCount() : panel.getWidgetIndex(before);
+        panel.moveItem(draggedWidget, before);
+        // Items before both old and new position keep their places
+        Widget first = panel.getWidget(Math.min(index, beforeIndex));
+        panel.scheduleLayoutFrom(panel.getWrapper(first), MasonryLayoutTrigger.USER_REORDER);
+    }
+
+    /**
+     * Find wrapper of item containing given element
+     * @param element Element inside item
+     * @param checkInteractive If true, null is returned when element is inside form field, button or link
+     * @return Wrapper element, or null if not found
+     */
+    protected Element findWrapper(Element element, boolean checkInteractive) {
+        Element panelElement = panel.getElement();
+        while(element != null && element.getParentElement() != panelElement) {
+            if(checkInteractive && isInteractive(element)) {
+                return null;
+            }
+            element = element.getParentElement();
+        }
+        return element;
+    }
+
+    private static boolean isInteractive(Element element) {
+        String tag = element.getTagName();
+        return "INPUT".equalsIgnoreCase(tag) || "TEXTAREA".equalsIgnoreCase(tag) || "SELECT".equalsIgnoreCase(tag)
+                || "BUTTON".equalsIgnoreCase(tag) || "A".equalsIgnoreCase(tag)
+                || "true".equals(element.getAttribute("contenteditable"))
+                || element.hasClassName("v-button");
+    }
+
+    private static native void clearSelection()
+    /*-{
+        if($wnd.getSelection) {
+            $wnd.getSelection().removeAllRanges();
+        }
+    }-*/;
+
+    private static native Element elementFromPoint(JavaScriptObject document, int x, int y)
+    /*-{
+        return document.elementFromPoint(x, y);
+    }-*/;
+
+    private native JavaScriptObject nativeAddStartHandler(Element element)
+    /*-{
+        var that = this;
+        var handler = $entry(function(event) {
+            var touch = event.type === 'touchstart';
+            if(touch ? event.touches.length !== 1 : event.button !== 0) {
+                return;
+            }
+            var point = touch ? event.touches[0] : event;
+            if(that.@org.vaadin.alump.masonry.client.masonry.MasonryReorderDragger::onStart(*)(event.target,
+                    point.clientX, point.clientY, touch)) {
+                event.preventDefault();
+            }
+        });
+        element.addEventListener('mousedown', handler, false);
+        element.addEventListener('touchstart', handler, false);
+        return handler;
+    }-*/;
+
+    private static native void nativeRemoveStartHandler(Element element, JavaScriptObject handler)
+    /*-{
+        element.removeEventListener('mousedown', handler, false);
+        element.removeEventListener('touchstart', handler, false);
+    }-*/;
+
+    private native JavaScriptObject nativeAddDragHandler(JavaScriptObject document)
+    /*-{
+        var that = this;
+        var handler = $entry(function(event) {
+            var handled = false;
+            if(event.type === 'mousemove' || event.type === 'touchmove') {
+                var point = event.type === 'touchmove' ? event.touches[0] : event;
+                handled = that.@org.vaadin.alump.masonry.client.masonry.MasonryReorderDragger::onMove(*)(
+                        point.clientX, point.clientY);
+            } else if(event.type === 'keydown') {
+                if(event.keyCode === 27) {
+                    handled = that.@org.vaadin.alump.masonry.client.masonry.MasonryReorderDragger::onEnd(*)(true);
+                }
+            } else {
+                handled = that.@org.vaadin.alump.masonry.client.masonry.MasonryReorderDragger::onEnd(*)(
+                        event.type === 'touchcancel');
+            }
+            if(handled) {
+                event.preventDefault();
+                if(event.type !== 'mousemove' && event.type !== 'touchmove') {
+                    // Drop is not handled by components under pointer
+                    event.stopPropagation();
+                }
+            }
+        });
+        // Touch move has to be cancelable to prevent scrolling while dragging
+        var options = { passive: false };
+        document.addEventListener('mousemove', handler, false);
+        document.addEventListener('mouseup', handler, true);
+        document.addEventListener('touchmove', handler, options);
+        document.addEventListener('touchend', handler, true);
+        document.addEventListener('touchcancel', handler, true);
+        document.addEventListener('keydown', handler, true);
+        handler.__masonryOptions = options;
+        return handler;
+    }-*/;
+
+    private static native void nativeRemoveDragHandler(JavaScriptObject document, JavaScriptObject handler)
+    /*-{
+        document.removeEventListener('mousemove', handler, false);
+        document.removeEventListener('mouseup', handler, true);
+        document.removeEventListener('touchmove', handler, handler.__masonryOptions);
+        document.removeEventListener('touchend', handler, true);
+        document.removeEventListener('touchcancel', handler, true);
+        document.removeEventListener('keydown', handler, true);
+    }-*/;
+
+    /**
+     * Swallow click event following drop, so drop is not handled as layout click
+     */
+    private static native void nativeSuppressNextClick(Element element)
+    /*-{
+        var handler = function(event) {
+            event.stopPropagation();
+            event.preventDefault();
+            element.removeEventListener('click', handler, true);
+        };
+        element.addEventListener('click', handler, true);
+        // Click is not fired if pointer was released outside of dragged item
+        $wnd.setTimeout(function() {
+            element.removeEventListener('click', handler, true);
+        }, 0);
+    }-*/;
+}
@@ -0,0 +1,164 @@
+/**
+ * MasonryVirtualLayoutConnector.java (Masonry)
+ *
+ * Copyright 2014 Vaadin Ltd, Sami Viitanen <sami.viitanen@vaadin.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.alump.masonry.client.masonry;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.user.client.Window;
+import com.vaadin.client.ConnectorHierarchyChangeEvent;
+import com.vaadin.client.communication.StateChangeEvent;
+import com.vaadin.shared.ui.Connect;
+import org.vaadin.alump.masonry.MasonryVirtualLayout;
+import org.vaadin.alump.masonry.client.shared.MasonryVirtualLayoutServerRpc;
+import org.vaadin.alump.masonry.client.shared.MasonryVirtualLayoutState;
+
+/**
+ * Connector for MasonryVirtualLayout. Follows scrolling of closest scrollable parent and asks server to render items
+ * that are near the viewport.
+ */
+@Connect(MasonryVirtualLayout.class)
+public class MasonryVirtualLayoutConnector extends MasonryLayoutConnector {
+
+    private final ScrollObserver scrollObserver = new ScrollObserver(new ScrollObserver.Listener() {
+        @Override
+        public void onScroll() {
+            checkVisibleRange();
+        }
+    });
+
+    private boolean rangeCheckScheduled = false;
+    private boolean rangeRequestPending = false;
+    private int requestedFirst = -1;
+    private int requestedEnd = -1;
+
+    @Override
+    public MasonryVirtualLayoutState getState() {
+        return (MasonryVirtualLayoutState) super.getState();
+    }
+
+    @Override
+    public void onStateChanged(StateChangeEvent event) {
+        super.onStateChanged(event);
+
+        if(event.hasPropertyChanged("windowRevision")) {
+            rangeRequestPending = false;
+        }
+
+        updateReservedSpace();
+        scheduleRangeCheck();
+    }
+
+    @Override
+    public void onConnectorHierarchyChange(ConnectorHierarchyChangeEvent event) {
+        super.onConnectorHierarchyChange(event);
+        updateReservedSpace();
+    }
+
+    @Override
+    public void onUnregister() {
+        scrollObserver.stop();
+        super.onUnregister();
+    }
+
+    /**
+     * Get number of columns currently shown
+     * @return Number of columns, always at least one
+     */
+    protected int getColumnCount() {
+        int width = getWidget().getElement().getClientWidth();
+        return Math.max(1, width / Math.max(1, getState().columnWidth));
+    }
+
+    /**
+     * Update space reserved for items that are not rendered
+     */
+    protected void updateReservedSpace() {
+        int columns = getColumnCount();
+        int rowHeight = getState().estimatedItemHeight;
+        int firstIndex = getState().firstIndex;
+        int itemsAfter = Math.max(0, getState().itemCount - firstIndex - getChildComponents().size());
+
+        if(getWidget().setReservedSpace((firstIndex / columns) * rowHeight,
+                ((itemsAfter + columns - 1) / columns) * rowHeight)) {
+            scheduleLayout();
+        }
+    }
+
+    private void scheduleRangeCheck() {
+        if(rangeCheckScheduled) {
+            return;
+        }
+        rangeCheckScheduled = true;
+        Scheduler.get().scheduleDeferred(new Scheduler.ScheduledCommand() {
+            @Override
+            public void execute() {
+                rangeCheckScheduled = false;
+                checkVisibleRange();
+            }
+        });
+    }
+
+    /**
+     * Check which items are near the viewport and request them from server if needed
+     */
+    protected void checkVisibleRange() {
+        if(!getWidget().isAttached() || rangeRequestPending) {
+            return;
+        }
+
+        scrollObserver.start(getWidget().getElement());
+
+        Element viewport = scrollObserver.getScrollParent();
+        int layoutTop = getWidget().getElement().getAbsoluteTop();
+        int viewTop;
+        int viewHeight;
+        if(viewport == null) {
+            viewTop = Window.getScrollTop();
+            viewHeight = Window.getClientHeight();
+        } else {
+            viewTop = viewport.getAbsoluteTop();
+            viewHeight = viewport.getClientHeight();
+        }
+
+        int top = Math.max(0, viewTop - layoutTop);
+        int bottom = Math.max(0, viewTop + viewHeight - layoutTop);
+
+        int columns = getColumnCount();
+        int rowHeight = Math.max(1, getState().estimatedItemHeight);
+        int firstRow = Math.max(0, top / rowHeight - getState().overscanRows);
+        int lastRow = (bottom + rowHeight - 1) / rowHeight + getState().overscanRows;
+
+        int first = Math.min(getState().itemCount, firstRow * columns);
+        int end = Math.min(getState().itemCount, lastRow * columns);
+
+        int renderedFirst = getState().firstIndex;
+        int renderedEnd = renderedFirst + getChildComponents().size();
+        if(first == renderedFirst && end == renderedEnd) {
+            return;
+        }
+        if(first == requestedFirst && end == requestedEnd) {
+            return;
+        }
+
+        requestedFirst = first;
+        requestedEnd = end;
+        rangeRequestPending = true;
+        getRpcProxy(MasonryVirtualLayoutServerRpc.class).requestRange(first, end - first);
+    }
+}
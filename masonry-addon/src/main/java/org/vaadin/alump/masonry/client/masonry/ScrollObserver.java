@@ -0,0 +1,106 @@
+package org.vaadin.alump.masonry.client.masonry;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+
+/**
+ * Listens scroll events of closest scrollable parent of element (or window if no scrollable parent is found). Resize
+ * of window is reported as scroll too, as it changes the visible area the same way.
+ */
+public class ScrollObserver {
+
+    /**
+     * Interface for scroll listener
+     */
+    public interface Listener {
+        /**
+         * Called when observed element is scrolled or window is resized
+         */
+        void onScroll();
+    }
+
+    private final Listener listener;
+    private Element scrollParent;
+    private JavaScriptObject nativeHandler;
+
+    public ScrollObserver(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start observing scrolling of given element's scroll parent. Ignored if already observing.
+     * @param element Element which scroll parent is observed
+     */
+    public void start(Element element) {
+        if(nativeHandler != null) {
+            return;
+        }
+        scrollParent = findScrollParent(element);
+        nativeHandler = nativeAddScrollHandler(scrollParent);
+    }
+
+    /**
+     * Stop observing scrolling
+     */
+    public void stop() {
+        if(nativeHandler != null) {
+            nativeRemoveScrollHandler(scrollParent, nativeHandler);
+            nativeHandler = null;
+            scrollParent = null;
+        }
+    }
+
+    /**
+     * Get scroll parent currently observed
+     * @return Scrollable parent element, or null if window is observed (or not observing)
+     */
+    public Element getScrollParent() {
+        return scrollParent;
+    }
+
+    /**
+     * Find closest parent element with scrollable content
+     * @param element Element from where search is started
+     * @return Closest scrollable parent, or null if window is scrolled
+     */
+    protected static Element findScrollParent(Element element) {
+        Element parent = element.getParentElement();
+        while(parent != null && !"BODY".equalsIgnoreCase(parent.getTagName())) {
+            String overflow = getComputedOverflowY(parent);
+            if("auto".equals(overflow) || "scroll".equals(overflow)) {
+                return parent;
+            }
+            parent = parent.getParentElement();
+        }
+        return null;
+    }
+
+    private void onScroll() {
+        listener.onScroll();
+    }
+
+    private static native String getComputedOverflowY(Element element)
+    /*-{
+        var style = $wnd.getComputedStyle ? $wnd.getComputedStyle(element, null) : element.currentStyle;
+        return style ? style.overflowY : null;
+    }-*/;
+
+    private native JavaScriptObject nativeAddScrollHandler(Element element)
+    /*-{
+        var that = this;
+        var handler = $entry(function() {
+            that.@org.vaadin.alump.masonry.client.masonry.ScrollObserver::onScroll()();
+        });
+        var target = element ? element : $wnd;
+        target.addEventListener('scroll', handler, false);
+        $wnd.addEventListener('resize', handler, false);
+        return handler;
+    }-*/;
+
+    private static native void nativeRemoveScrollHandler(Element element, JavaScriptObject handler)
+    /*-{
+        var target = element ? element : $wnd;
+        target.removeEventListener('scroll', handler, false);
+        $wnd.removeEventListener('resize', handler, false);
+    }-*/;
+}
@@ -0,0 +1,46 @@
+package org.vaadin.alump.masonry.client.shared;
+
+import java.io.Serializable;
+
+/**
+ * Result of single image load reported by ImagesLoaded extension
+ */
+public class ImageLoadResult implements Serializable {
+
+    /**
+     * Source URL of image
+     */
+    public String src;
+
+    /**
+     * Natural width of image in pixels, 0 if image failed to load
+     */
+    public int naturalWidth;
+
+    /**
+     * Natural height of image in pixels, 0 if image failed to load
+     */
+    public int naturalHeight;
+
+    /**
+     * Milliseconds taken by request of image (from Resource Timing entry of its current source). If browser does not
+     * provide timing entry, milliseconds from start of tracking until image was loaded or failed.
+     */
+    public int loadTime;
+
+    /**
+     * true if image was loaded, false if it failed to load
+     */
+    public boolean success;
+
+    public ImageLoadResult() {
+    }
+
+    public ImageLoadResult(String src, int naturalWidth, int naturalHeight, int loadTime, boolean success) {
+        this.src = src;
+        this.naturalWidth = naturalWidth;
+        this.naturalHeight = naturalHeight;
+        this.loadTime = loadTime;
+        this.success = success;
+    }
+}
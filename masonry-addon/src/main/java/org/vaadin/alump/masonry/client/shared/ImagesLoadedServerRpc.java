@@ -2,6 +2,8 @@ package org.vaadin.alump.masonry.client.shared;
 
 import com.vaadin.shared.communication.ServerRpc;
 
+import java.util.List;
+
 /**
  * Server RPC for ImagesLoaded extension
  */
@@ -11,4 +13,10 @@ public interface ImagesLoadedServerRpc extends ServerRpc {
      * Called when all images in given container are loaded
      */
     void onImagesLoaded();
+
+    /**
+     * Called with results of images loaded (or failed) since last call
+     * @param results Results of images in order of completion
+     */
+    void onImageLoadResults(List<ImageLoadResult> results);
 }
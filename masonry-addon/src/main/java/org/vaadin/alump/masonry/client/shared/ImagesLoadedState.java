@@ -8,4 +8,19 @@ import com.vaadin.shared.communication.SharedState;
  */
 public class ImagesLoadedState extends SharedState {
     public boolean callServer = false;
+
+    /**
+     * If true, client side listener is also notified of each image loaded
+     */
+    public boolean progressive = false;
+
+    /**
+     * If true, results of each image are collected and sent to server
+     */
+    public boolean collectResults = false;
+
+    /**
+     * Interval in milliseconds used to send collected image results to server
+     */
+    public int resultsInterval = 1000;
 }
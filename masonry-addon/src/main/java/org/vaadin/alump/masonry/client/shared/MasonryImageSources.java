@@ -0,0 +1,42 @@
+package org.vaadin.alump.masonry.client.shared;
+
+import java.io.Serializable;
+
+/**
+ * Responsive image sources given to first image of item
+ */
+public class MasonryImageSources implements Serializable {
+
+    /**
+     * Value of srcset attribute
+     */
+    public String srcset;
+
+    /**
+     * Value of sizes attribute
+     */
+    public String sizes;
+
+    public MasonryImageSources() {
+    }
+
+    public MasonryImageSources(String srcset, String sizes) {
+        this.srcset = srcset;
+        this.sizes = sizes;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof MasonryImageSources)) {
+            return false;
+        }
+        MasonryImageSources other = (MasonryImageSources) obj;
+        return (srcset == null ? other.srcset == null : srcset.equals(other.srcset))
+                && (sizes == null ? other.sizes == null : sizes.equals(other.sizes));
+    }
+
+    @Override
+    public int hashCode() {
+        return (srcset == null ? 0 : srcset.hashCode()) * 31 + (sizes == null ? 0 : sizes.hashCode());
+    }
+}
@@ -0,0 +1,53 @@
+package org.vaadin.alump.masonry.client.shared;
+
+import java.io.Serializable;
+
+/**
+ * Position of item resolved on server side
+ */
+public class MasonryItemPosition implements Serializable {
+
+    /**
+     * Index of first column used by item
+     */
+    public int column;
+
+    /**
+     * Number of columns used by item
+     */
+    public int span = 1;
+
+    /**
+     * Top position of item in pixels
+     */
+    public int top;
+
+    /**
+     * Expected outer height of item in pixels
+     */
+    public int height;
+
+    public MasonryItemPosition() {
+    }
+
+    public MasonryItemPosition(int column, int span, int top, int height) {
+        this.column = column;
+        this.span = span;
+        this.top = top;
+        this.height = height;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof MasonryItemPosition)) {
+            return false;
+        }
+        MasonryItemPosition other = (MasonryItemPosition) obj;
+        return column == other.column && span == other.span && top == other.top && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((column * 31 + span) * 31 + top) * 31 + height;
+    }
+}
@@ -0,0 +1,66 @@
+package org.vaadin.alump.masonry.client.shared;
+
+import java.io.Serializable;
+
+/**
+ * Size reserved for item's wrapper before its content is loaded. Wrapper can still grow if content is larger.
+ */
+public class MasonryItemSizeHint implements Serializable {
+
+    /**
+     * Width divided by height of wrapper, or 0 if aspect ratio is not reserved
+     */
+    public double aspectRatio = 0.0;
+
+    /**
+     * Minimum height of wrapper in pixels, or 0 if not defined
+     */
+    public int minHeight = 0;
+
+    public MasonryItemSizeHint() {
+    }
+
+    /**
+     * Create size hint that reserves wrapper's height from its width
+     * @param width Width of item (any unit, eg. natural width of image)
+     * @param height Height of item (same unit as width)
+     * @return New size hint
+     */
+    public static MasonryItemSizeHint aspectRatio(double width, double height) {
+        if(width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height have to be positive");
+        }
+        MasonryItemSizeHint hint = new MasonryItemSizeHint();
+        hint.aspectRatio = width / height;
+        return hint;
+    }
+
+    /**
+     * Create size hint that reserves minimum height for wrapper
+     * @param minHeight Minimum height in pixels
+     * @return New size hint
+     */
+    public static MasonryItemSizeHint minHeight(int minHeight) {
+        if(minHeight < 0) {
+            throw new IllegalArgumentException("Minimum height can not be negative");
+        }
+        MasonryItemSizeHint hint = new MasonryItemSizeHint();
+        hint.minHeight = minHeight;
+        return hint;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof MasonryItemSizeHint)) {
+            return false;
+        }
+        MasonryItemSizeHint other = (MasonryItemSizeHint) obj;
+        return aspectRatio == other.aspectRatio && minHeight == other.minHeight;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(aspectRatio);
+        return (int) (bits ^ (bits >>> 32)) * 31 + minHeight;
+    }
+}
@@ -1,7 +1,10 @@
 package org.vaadin.alump.masonry.client.shared;
 
+import com.vaadin.shared.Connector;
 import com.vaadin.shared.communication.ClientRpc;
 
+import java.util.Map;
+
 // ClientRpc is used to pass events from server to client
 // For sending information about the changes to component state, use State instead
 public interface MasonryLayoutClientRpc extends ClientRpc {
@@ -9,4 +12,34 @@ public interface MasonryLayoutClientRpc extends ClientRpc {
 	// Ask masonry to relayout items (if automatic layouting fails)
 	public void layout();
 
+    /**
+     * Update wrapper style names of given items. Only changed items are sent.
+     * @param styleNameIds Index of style name in wrapperStyleNames of state for each item, or -1 if item does
+     *                     not have extra style names
+     */
+    public void updateWrapperStyleNames(Map<Connector,Integer> styleNameIds);
+
+    /**
+     * Update sizes reserved for wrappers of given items. Only changed items are sent.
+     * @param sizeHints Size hint for each item, or null if item does not have size hint anymore
+     */
+    public void updateSizeHints(Map<Connector,MasonryItemSizeHint> sizeHints);
+
+    /**
+     * Update responsive sources of first image in given items. Only changed items are sent.
+     * @param imageSources Sources for each item, or null if image of item does not have responsive sources anymore
+     */
+    public void updateImageSources(Map<Connector,MasonryImageSources> imageSources);
+
+    /**
+     * Update positions calculated on server side for given items. Only changed items are sent.
+     * @param positions Position of each item, or null if item is not positioned on server side anymore
+     */
+    public void updateItemPositions(Map<Connector,MasonryItemPosition> positions);
+
+    /**
+     * Tell that reorder made by user was rejected, items should be returned to order of child components
+     */
+    public void reorderRejected();
+
 }
\ No newline at end of file
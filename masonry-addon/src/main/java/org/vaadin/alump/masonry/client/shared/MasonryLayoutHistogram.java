@@ -0,0 +1,98 @@
+package org.vaadin.alump.masonry.client.shared;
+
+import java.io.Serializable;
+
+/**
+ * Histograms of client side layout passes performed for one trigger
+ */
+public class MasonryLayoutHistogram implements Serializable {
+
+    /**
+     * Upper bounds (inclusive, in milliseconds) of duration buckets. Last bucket counts passes slower than last bound.
+     */
+    public static final int[] DURATION_BOUNDS = { 1, 2, 4, 8, 16, 32, 64, 128, 256 };
+
+    /**
+     * Upper bounds (inclusive) of laid out item count buckets. Last bucket counts passes with more items.
+     */
+    public static final int[] ITEM_BOUNDS = { 1, 10, 50, 100, 500, 1000, 5000 };
+
+    /**
+     * Trigger of layout passes
+     */
+    public MasonryLayoutTrigger trigger;
+
+    /**
+     * Number of layout passes
+     */
+    public int layouts;
+
+    /**
+     * Sum of durations in milliseconds
+     */
+    public double totalDuration;
+
+    /**
+     * Duration of slowest pass in milliseconds
+     */
+    public double maxDuration;
+
+    /**
+     * Sum of items laid out
+     */
+    public int totalItems;
+
+    /**
+     * Number of passes by duration, see {@link #DURATION_BOUNDS}
+     */
+    public int[] durationBuckets = new int[DURATION_BOUNDS.length + 1];
+
+    /**
+     * Number of passes by items laid out, see {@link #ITEM_BOUNDS}
+     */
+    public int[] itemBuckets = new int[ITEM_BOUNDS.length + 1];
+
+    public MasonryLayoutHistogram() {
+    }
+
+    public MasonryLayoutHistogram(MasonryLayoutTrigger trigger) {
+        this.trigger = trigger;
+    }
+
+    /**
+     * Add layout pass to histogram
+     * @param duration Duration in milliseconds
+     * @param items Number of items laid out
+     */
+    public void record(double duration, int items) {
+        ++layouts;
+        totalDuration += duration;
+        maxDuration = Math.max(maxDuration, duration);
+        totalItems += items;
+        ++durationBuckets[bucketOf(duration, DURATION_BOUNDS)];
+        ++itemBuckets[bucketOf(items, ITEM_BOUNDS)];
+    }
+
+    /**
+     * Get average duration of layout passes
+     * @return Duration in milliseconds, 0 if there are no passes
+     */
+    public double getAverageDuration() {
+        return layouts == 0 ? 0 : totalDuration / layouts;
+    }
+
+    /**
+     * Resolve bucket of value
+     * @param value Value added
+     * @param bounds Inclusive upper bounds of buckets
+     * @return Index of bucket, bounds.length if value is larger than all bounds
+     */
+    public static int bucketOf(double value, int[] bounds) {
+        for(int i = 0; i < bounds.length; ++i) {
+            if(value <= bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+}
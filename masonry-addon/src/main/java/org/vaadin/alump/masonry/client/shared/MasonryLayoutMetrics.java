@@ -0,0 +1,76 @@
+package org.vaadin.alump.masonry.client.shared;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch of client side layout metrics collected since previous batch
+ */
+public class MasonryLayoutMetrics implements Serializable {
+
+    /**
+     * Histograms by trigger, only triggers with layout passes are included
+     */
+    public List<MasonryLayoutHistogram> histograms = new ArrayList<MasonryLayoutHistogram>();
+
+    /**
+     * Largest number of items in layout during the batch
+     */
+    public int maxItemCount;
+
+    /**
+     * Width of layout in pixels when batch was sent
+     */
+    public int layoutWidth;
+
+    /**
+     * Width of browser viewport in pixels when batch was sent
+     */
+    public int viewportWidth;
+
+    /**
+     * Device pixel ratio of browser when batch was sent
+     */
+    public double devicePixelRatio;
+
+    /**
+     * Get histogram of given trigger
+     * @param trigger Trigger of layout passes
+     * @return Histogram, or null if there were no passes for trigger
+     */
+    public MasonryLayoutHistogram getHistogram(MasonryLayoutTrigger trigger) {
+        for(MasonryLayoutHistogram histogram : histograms) {
+            if(histogram.trigger == trigger) {
+                return histogram;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get histogram of given trigger, histogram is added if not found
+     * @param trigger Trigger of layout passes
+     * @return Histogram of trigger
+     */
+    public MasonryLayoutHistogram obtainHistogram(MasonryLayoutTrigger trigger) {
+        MasonryLayoutHistogram histogram = getHistogram(trigger);
+        if(histogram == null) {
+            histogram = new MasonryLayoutHistogram(trigger);
+            histograms.add(histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Get total number of layout passes of all triggers
+     * @return Number of layout passes
+     */
+    public int getLayoutCount() {
+        int count = 0;
+        for(MasonryLayoutHistogram histogram : histograms) {
+            count += histogram.layouts;
+        }
+        return count;
+    }
+}
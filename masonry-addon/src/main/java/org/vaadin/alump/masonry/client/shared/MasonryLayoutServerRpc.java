@@ -7,5 +7,30 @@ import com.vaadin.shared.ui.LayoutClickRpc;
 // ServerRpc is used to pass events from client to server
 public interface MasonryLayoutServerRpc extends ServerRpc, LayoutClickRpc {
 
+    /**
+     * Called when inner width of layout changes and server side layout is used
+     * @param width Inner width of layout in pixels
+     */
+    void reportLayoutWidth(int width);
+
+    /**
+     * Called when bottom of layout is within load more threshold of viewport. Not called again before
+     * loadMoreRevision of state has changed.
+     */
+    void loadMore();
+
+    /**
+     * Called once when user has dropped dragged item to new position. Client side has already moved the item, if
+     * move is rejected server calls {@link MasonryLayoutClientRpc#reorderRejected()}.
+     * @param fromIndex Index of item before drag
+     * @param toIndex Index of item after drop
+     */
+    void reorder(int fromIndex, int toIndex);
+
+    /**
+     * Called with client side layout metrics collected since previous call, when layout metrics are enabled
+     * @param metrics Collected metrics
+     */
+    void reportLayoutMetrics(MasonryLayoutMetrics metrics);
 
 }
@@ -3,7 +3,9 @@ package org.vaadin.alump.masonry.client.shared;
 import com.vaadin.shared.Connector;
 import com.vaadin.shared.ui.AbstractLayoutState;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class MasonryLayoutState extends AbstractLayoutState {
@@ -18,7 +20,51 @@ public class MasonryLayoutState extends AbstractLayoutState {
     public String transitionDuration = "0.4s";
 
     /**
-     * Addtional stylenames for items (usually related to sizing)
+     * Interned wrapper style names. Style names of items are sent with
+     * {@link MasonryLayoutClientRpc#updateWrapperStyleNames(java.util.Map)} as indexes of this list. Ids of style
+     * names not used anymore are released (null in list) and reused.
      */
-    public Map<Connector,String> itemStyleNames = new HashMap<Connector,String>();
-}
\ No newline at end of file
+    public List<String> wrapperStyleNames = new ArrayList<String>();
+
+    /**
+     * Ids of wrapper style names (in wrapperStyleNames) of items added in this response. State is applied before
+     * hierarchy change, so wrappers of new items are created with their style names.
+     */
+    public Map<Connector,Integer> addedItemStyleNameIds = new HashMap<Connector,Integer>();
+
+    /**
+     * If true, items with positions sent with {@link MasonryLayoutClientRpc#updateItemPositions(java.util.Map)} are
+     * placed to those positions without measuring them
+     */
+    public boolean serverLayout = false;
+
+    /**
+     * Number of columns used when item positions were calculated, -1 if positions are not calculated
+     */
+    public int serverLayoutColumns = 0;
+
+    /**
+     * If true, client side asks more items when bottom of layout gets near the viewport
+     */
+    public boolean loadMoreEnabled = false;
+
+    /**
+     * Distance in pixels between bottom of layout and bottom of viewport when more items are asked
+     */
+    public int loadMoreThreshold = 0;
+
+    /**
+     * Increased every time server has handled request of more items
+     */
+    public int loadMoreRevision = 0;
+
+    /**
+     * Interval in milliseconds used to send collected layout metrics to server, 0 if layout passes are not measured
+     */
+    public int layoutMetricsInterval = 0;
+
+    /**
+     * If true, user can reorder items by dragging them
+     */
+    public boolean reorderable = false;
+}
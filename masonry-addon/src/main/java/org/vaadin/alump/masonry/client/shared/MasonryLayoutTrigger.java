@@ -0,0 +1,48 @@
+package org.vaadin.alump.masonry.client.shared;
+
+/**
+ * Reason why client side layout pass was performed. If multiple reasons are merged to one pass, the first one is
+ * reported.
+ */
+public enum MasonryLayoutTrigger {
+    /**
+     * Items were added, removed or moved
+     */
+    HIERARCHY_CHANGE,
+    /**
+     * Measured size of item changed
+     */
+    ITEM_RESIZE,
+    /**
+     * Image inside item was loaded
+     */
+    IMAGE_LOAD,
+    /**
+     * Width of layout changed
+     */
+    LAYOUT_RESIZE,
+    /**
+     * Wrapper style name of item changed
+     */
+    STYLE_CHANGE,
+    /**
+     * Item positions calculated on server side changed
+     */
+    POSITION_HINTS,
+    /**
+     * Layout was requested from server side with requestLayout
+     */
+    SERVER_REQUEST,
+    /**
+     * Layout became visible
+     */
+    VISIBILITY,
+    /**
+     * Item was dragged to new position by user
+     */
+    USER_REORDER,
+    /**
+     * Any other reason
+     */
+    OTHER
+}
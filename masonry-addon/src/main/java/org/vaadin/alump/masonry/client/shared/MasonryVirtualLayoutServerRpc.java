@@ -0,0 +1,16 @@
+package org.vaadin.alump.masonry.client.shared;
+
+import com.vaadin.shared.communication.ServerRpc;
+
+/**
+ * Server RPC for MasonryVirtualLayout
+ */
+public interface MasonryVirtualLayoutServerRpc extends ServerRpc {
+
+    /**
+     * Called when client side needs different range of items rendered
+     * @param firstIndex Index of first item needed
+     * @param count Number of items needed
+     */
+    void requestRange(int firstIndex, int count);
+}
@@ -0,0 +1,32 @@
+package org.vaadin.alump.masonry.client.shared;
+
+/**
+ * State of MasonryVirtualLayout
+ */
+public class MasonryVirtualLayoutState extends MasonryLayoutState {
+
+    /**
+     * Total number of items in item source
+     */
+    public int itemCount = 0;
+
+    /**
+     * Index of first item currently rendered (first child component)
+     */
+    public int firstIndex = 0;
+
+    /**
+     * Estimated height of item row in pixels. Used to reserve space for items not rendered.
+     */
+    public int estimatedItemHeight = 300;
+
+    /**
+     * Number of extra rows rendered before and after visible rows
+     */
+    public int overscanRows = 2;
+
+    /**
+     * Increased each time server has handled range request from client
+     */
+    public int windowRevision = 0;
+}
@@ -0,0 +1,34 @@
+package org.vaadin.alump;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.vaadin.alump.masonry.ImageByteCache;
+
+public class ImageByteCacheTest {
+
+    @Test
+    public void leastRecentlyUsedEntriesAreDroppedWhenFull() {
+        ImageByteCache cache = new ImageByteCache(10, 10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        Assert.assertNotNull(cache.get("a"));
+
+        cache.put("c", new byte[4]);
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(8, cache.getSize());
+    }
+
+    @Test
+    public void tooLargeEntriesAreNotCached() {
+        ImageByteCache cache = new ImageByteCache(100, 10);
+        Assert.assertFalse(cache.put("a", new byte[11]));
+        Assert.assertNull(cache.get("a"));
+
+        Assert.assertTrue(cache.put("b", new byte[10]));
+        Assert.assertTrue(cache.put("b", new byte[5]));
+        Assert.assertEquals(5, cache.getSize());
+        Assert.assertEquals(1, cache.getEntryCount());
+    }
+}
@@ -0,0 +1,172 @@
+package org.vaadin.alump;
+
+import com.vaadin.server.ClassResource;
+import com.vaadin.server.StreamResource;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Image;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.vaadin.alump.masonry.ImageDimensions;
+import org.vaadin.alump.masonry.ImageHeaderReader;
+import org.vaadin.alump.masonry.ImageMetadataService;
+import org.vaadin.alump.masonry.MasonryLayout;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ImageHeaderReaderTest {
+
+    private static byte[] encode(String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertTrue(ImageIO.write(image, format, out));
+        return out.toByteArray();
+    }
+
+    private static ImageDimensions read(byte[] data) throws IOException {
+        return ImageHeaderReader.read(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void readsPngGifAndJpegHeaders() throws IOException {
+        Assert.assertEquals(new ImageDimensions(300, 168), read(encode("png", 300, 168)));
+        Assert.assertEquals(new ImageDimensions(17, 400), read(encode("gif", 17, 400)));
+        Assert.assertEquals(new ImageDimensions(405, 300), read(encode("jpg", 405, 300)));
+    }
+
+    @Test
+    public void skipsJpegSegmentsBeforeFrameHeader() throws IOException {
+        byte[] jpeg = encode("jpg", 64, 32);
+        int appLength = 40000;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((appLength >> 8) & 0xFF);
+        out.write(appLength & 0xFF);
+        out.write(new byte[appLength - 2]);
+        out.write(jpeg, 2, jpeg.length - 2);
+        Assert.assertEquals(new ImageDimensions(64, 32), read(out.toByteArray()));
+    }
+
+    @Test
+    public void rotatedJpegDimensionsAreSwapped() throws IOException {
+        byte[] jpeg = encode("jpg", 64, 32);
+        Assert.assertEquals(new ImageDimensions(32, 64), read(withExifOrientation(jpeg, 6, false)));
+        Assert.assertEquals(new ImageDimensions(32, 64), read(withExifOrientation(jpeg, 8, true)));
+        Assert.assertEquals(new ImageDimensions(64, 32), read(withExifOrientation(jpeg, 3, true)));
+    }
+
+    /**
+     * Add APP1 segment with EXIF IFD0 only containing orientation tag after SOI marker of JPEG
+     */
+    private static byte[] withExifOrientation(byte[] jpeg, int orientation, boolean littleEndian) {
+        ByteBuffer exif = ByteBuffer.allocate(6 + 8 + 2 + 12 + 4);
+        exif.put("Exif".getBytes()).put((byte) 0).put((byte) 0);
+        exif.put(littleEndian ? "II".getBytes() : "MM".getBytes());
+        exif.order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        exif.putShort((short) 42).putInt(8);
+        exif.putShort((short) 1);
+        exif.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        exif.putInt(0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int length = exif.capacity() + 2;
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((length >> 8) & 0xFF);
+        out.write(length & 0xFF);
+        out.write(exif.array(), 0, exif.capacity());
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void readsWebpHeaders() throws IOException {
+        byte[] lossy = webp("VP8 ");
+        lossy[23] = (byte) 0x9D;
+        lossy[24] = 0x01;
+        lossy[25] = 0x2A;
+        lossy[26] = (byte) 0x90;
+        lossy[27] = 0x01; // 400
+        lossy[28] = 0x2C;
+        lossy[29] = 0x01; // 300
+        Assert.assertEquals(new ImageDimensions(400, 300), read(lossy));
+
+        byte[] lossless = webp("VP8L");
+        lossless[20] = 0x2F;
+        // width - 1 = 399 (14 bits), height - 1 = 299 (14 bits)
+        int bits = 399 | (299 << 14);
+        lossless[21] = (byte) bits;
+        lossless[22] = (byte) (bits >> 8);
+        lossless[23] = (byte) (bits >> 16);
+        lossless[24] = (byte) (bits >> 24);
+        Assert.assertEquals(new ImageDimensions(400, 300), read(lossless));
+
+        byte[] extended = webp("VP8X");
+        extended[24] = (byte) 0x8F;
+        extended[25] = 0x01; // 399
+        extended[27] = 0x2B;
+        extended[28] = 0x01; // 299
+        Assert.assertEquals(new ImageDimensions(400, 300), read(extended));
+    }
+
+    private static byte[] webp(String chunk) {
+        byte[] data = new byte[30];
+        System.arraycopy("RIFF".getBytes(), 0, data, 0, 4);
+        System.arraycopy("WEBP".getBytes(), 0, data, 8, 4);
+        System.arraycopy(chunk.getBytes(), 0, data, 12, 4);
+        return data;
+    }
+
+    @Test
+    public void unknownDataReturnsNull() throws IOException {
+        Assert.assertNull(read("not an image".getBytes()));
+        Assert.assertNull(read(new byte[0]));
+    }
+
+    @Test
+    public void metadataServiceCachesAndAppliesAspectRatio() throws IOException {
+        final byte[] png = encode("png", 400, 200);
+        final int[] opened = new int[1];
+        StreamResource resource = new StreamResource(new StreamResource.StreamSource() {
+            @Override
+            public InputStream getStream() {
+                ++opened[0];
+                return new ByteArrayInputStream(png);
+            }
+        }, "image.png");
+
+        ImageMetadataService service = new ImageMetadataService(1);
+        Assert.assertEquals(new ImageDimensions(400, 200), service.getDimensions(resource, null));
+        Assert.assertEquals(new ImageDimensions(400, 200), service.getDimensions(resource, null));
+        Assert.assertEquals(1, opened[0]);
+
+        MasonryLayout layout = new MasonryLayout();
+        layout.setImageMetadataService(service);
+        CssLayout item = new CssLayout(new Image(null, resource));
+        layout.addComponent(item);
+        layout.beforeClientResponse(true);
+
+        Assert.assertEquals(2.0, layout.getComponentSizeHint(item).aspectRatio, 0.0001);
+        Assert.assertEquals(1, opened[0]);
+        Assert.assertEquals(1, service.getCacheSize());
+    }
+
+    @Test
+    public void classResourcesAreCachedByClassAndName() {
+        ImageMetadataService service = new ImageMetadataService();
+        Assert.assertNull(service.getDimensions(new ClassResource(ImageHeaderReaderTest.class, "missing.png"), null));
+        Assert.assertNull(service.getDimensions(new ClassResource(ImageHeaderReaderTest.class, "missing.png"), null));
+        Assert.assertEquals(1, service.getCacheSize());
+        service.getDimensions(new ClassResource(ImageMetadataService.class, "missing.png"), null);
+        Assert.assertEquals(2, service.getCacheSize());
+    }
+}
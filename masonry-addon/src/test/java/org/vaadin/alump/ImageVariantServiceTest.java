@@ -0,0 +1,78 @@
+package org.vaadin.alump;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.vaadin.alump.masonry.GalleryImage;
+import org.vaadin.alump.masonry.ImageVariantService;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+public class ImageVariantServiceTest {
+
+    private static File createTempDirectory() throws IOException {
+        File dir = File.createTempFile("masonry-variants", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    @Test
+    public void variantIsDownscaledAndCached() throws IOException {
+        File dir = createTempDirectory();
+        File original = new File(dir, "original.png");
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB), "png", original);
+
+        ImageVariantService service = new ImageVariantService(dir, "images/");
+        GalleryImage variant = service.getVariant(GalleryImage.forFile("original.png", original), 90);
+        Assert.assertNotNull(variant);
+        Assert.assertEquals("image/png", variant.getContentType());
+
+        BufferedImage scaled = ImageIO.read(variant.getFile());
+        Assert.assertEquals(100, scaled.getWidth());
+        Assert.assertEquals(50, scaled.getHeight());
+
+        GalleryImage again = service.getVariant(GalleryImage.forFile("original.png", original), 100);
+        Assert.assertEquals(variant.getFile(), again.getFile());
+
+        // Original is used when it is not wider than requested variant
+        Assert.assertNull(service.getVariant(GalleryImage.forFile("original.png", original), 400));
+
+        service.clear();
+        Assert.assertFalse(variant.getFile().exists());
+    }
+
+    @Test
+    public void leastRecentlyUsedVariantsAreDeletedWhenCacheIsFull() throws IOException {
+        File dir = createTempDirectory();
+        File original = new File(dir, "original.png");
+        ImageIO.write(new BufferedImage(1000, 500, BufferedImage.TYPE_INT_ARGB), "png", original);
+        GalleryImage image = GalleryImage.forFile("original.png", original);
+
+        ImageVariantService service = new ImageVariantService(dir, "images/");
+        File first = service.getVariant(image, 400).getFile();
+        File second = service.getVariant(image, 300).getFile();
+        Assert.assertTrue(first.setLastModified(System.currentTimeMillis() - 60000L));
+        service.setMaxCacheSize(first.length() + second.length());
+
+        File third = service.getVariant(image, 200).getFile();
+        Assert.assertFalse(first.exists());
+        Assert.assertTrue(second.exists());
+        Assert.assertTrue(third.exists());
+        service.clear();
+    }
+
+    @Test
+    public void srcsetHasVariantForEachPixelRatio() throws IOException {
+        ImageVariantService service = new ImageVariantService(createTempDirectory(), "images/");
+        Assert.assertTrue(service.acceptsUrl("images/img1.jpg"));
+        Assert.assertFalse(service.acceptsUrl("http://example.com/img1.jpg"));
+        Assert.assertEquals("images/img1.jpg?w=300 300w, images/img1.jpg?w=600 600w",
+                service.getSrcset("images/img1.jpg", 300));
+        Assert.assertEquals("(max-width: 600px) 100vw, 600px", service.getSizes(600));
+        Assert.assertEquals(2400, service.normalizeWidth(10000));
+    }
+}
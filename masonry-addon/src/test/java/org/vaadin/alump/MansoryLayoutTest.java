@@ -1,7 +1,36 @@
 package org.vaadin.alump;
 
+import com.vaadin.server.ClientConnector;
+import com.vaadin.server.ClientMethodInvocation;
+import com.vaadin.server.ExternalResource;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.Image;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
 import junit.framework.Assert;
 import org.junit.Test;
+import org.vaadin.alump.masonry.ImageVariantService;
+import org.vaadin.alump.masonry.MasonryLayout;
+import org.vaadin.alump.masonry.MasonryMove;
+import org.vaadin.alump.masonry.MasonryMetrics;
+import org.vaadin.alump.masonry.client.shared.MasonryImageSources;
+import org.vaadin.alump.masonry.client.shared.MasonryItemSizeHint;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutHistogram;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutMetrics;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutState;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutTrigger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 // JUnit tests here
 public class MansoryLayoutTest {
@@ -10,4 +39,468 @@ public class MansoryLayoutTest {
 	public void thisAlwaysPasses() {
 		Assert.assertEquals(true, true);
 	}
+
+    @Test
+    public void childOrderMatchesListModel() {
+        Random rand = new Random(0xDEADBEEF);
+        MasonryLayout layout = new MasonryLayout();
+        List<Component> model = new ArrayList<Component>();
+
+        for(int i = 0; i < 2000; ++i) {
+            int op = rand.nextInt(4);
+            if(op == 0 || model.isEmpty()) {
+                Component added = new Label();
+                int index = rand.nextInt(model.size() + 1);
+                layout.addComponent(added, index);
+                model.add(index, added);
+            } else if(op == 1) {
+                Component removed = model.remove(rand.nextInt(model.size()));
+                layout.removeComponent(removed);
+            } else if(op == 2) {
+                Component moved = model.get(rand.nextInt(model.size()));
+                int index = rand.nextInt(model.size());
+                layout.addComponent(moved, index);
+                model.remove(moved);
+                model.add(Math.min(index, model.size()), moved);
+            } else {
+                Component before = model.get(rand.nextInt(model.size()));
+                Component added = new Label();
+                layout.addComponentBefore(added, null, before);
+                model.add(model.indexOf(before), added);
+            }
+        }
+
+        Assert.assertEquals(model, layout.getComponents());
+        Assert.assertEquals(model.size(), layout.getComponentCount());
+        for(int i = 0; i < model.size(); ++i) {
+            Assert.assertEquals(i, layout.getComponentIndex(model.get(i)));
+            Assert.assertSame(model.get(i), layout.getComponent(i));
+        }
+
+        Iterator<Component> iterator = layout.iterator();
+        for(Component expected : model) {
+            Assert.assertSame(expected, iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(-1, layout.getComponentIndex(new Label()));
+    }
+
+    @Test
+    public void addComponentsKeepsGivenOrder() {
+        MasonryLayout layout = new MasonryLayout();
+        Component first = new Label();
+        Component last = new Label();
+        layout.addComponent(first);
+        layout.addComponent(last);
+
+        final Component wide = new Label();
+        List<Component> added = Arrays.asList(new Label(), wide, new Label());
+        layout.addComponents(added, new MasonryLayout.WrapperStyleNameGenerator() {
+            @Override
+            public String getWrapperStyleName(Component component) {
+                return component == wide ? MasonryLayout.DOUBLE_WIDE_STYLENAME : null;
+            }
+        }, 1);
+
+        Assert.assertEquals(Arrays.asList(first, added.get(0), wide, added.get(2), last), layout.getComponents());
+        Assert.assertEquals(MasonryLayout.DOUBLE_WIDE_STYLENAME, layout.getComponentWrapperStyleName(wide));
+        Assert.assertNull(layout.getComponentWrapperStyleName(added.get(0)));
+
+        layout.removeComponents(added);
+        Assert.assertEquals(Arrays.asList(first, last), layout.getComponents());
+    }
+
+    @Test
+    public void sizeHintFollowsComponent() {
+        MasonryLayout layout = new MasonryLayout();
+        Label label = new Label();
+        MasonryItemSizeHint hint = MasonryItemSizeHint.aspectRatio(400, 300);
+        layout.addComponent(label, MasonryLayout.DOUBLE_WIDE_STYLENAME, hint);
+
+        Assert.assertEquals(hint, layout.getComponentSizeHint(label));
+        Assert.assertEquals(MasonryLayout.DOUBLE_WIDE_STYLENAME, layout.getComponentWrapperStyleName(label));
+
+        layout.updateComponentSizeHint(label, MasonryItemSizeHint.minHeight(200));
+        Assert.assertEquals(200, layout.getComponentSizeHint(label).minHeight);
+
+        layout.removeComponent(label);
+        Assert.assertNull(layout.getComponentSizeHint(label));
+    }
+
+    @Test
+    public void onlyChangedSizeHintsAreSent() {
+        StyleTestLayout layout = new StyleTestLayout();
+        Label first = new Label();
+        Label second = new Label();
+        layout.addComponent(first, null, MasonryItemSizeHint.minHeight(100));
+        layout.addComponent(second, null, MasonryItemSizeHint.minHeight(100));
+        layout.beforeClientResponse(true);
+        Assert.assertEquals(2, getRpcArgument(layout.retrievePendingRpcCalls(), "updateSizeHints").size());
+
+        layout.updateComponentSizeHint(second, MasonryItemSizeHint.minHeight(200));
+        layout.updateComponentSizeHint(first, MasonryItemSizeHint.minHeight(100));
+        layout.beforeClientResponse(false);
+        Map<?, ?> sizeHints = getRpcArgument(layout.retrievePendingRpcCalls(), "updateSizeHints");
+        Assert.assertEquals(1, sizeHints.size());
+        Assert.assertEquals(MasonryItemSizeHint.minHeight(200), sizeHints.get(second));
+
+        layout.updateComponentSizeHint(second, null);
+        layout.beforeClientResponse(false);
+        sizeHints = getRpcArgument(layout.retrievePendingRpcCalls(), "updateSizeHints");
+        Assert.assertTrue(sizeHints.containsKey(second));
+        Assert.assertNull(sizeHints.get(second));
+    }
+
+    @Test
+    public void onlyChangedImageSourcesAreSent() throws IOException {
+        StyleTestLayout layout = new StyleTestLayout();
+        File dir = File.createTempFile("masonry-variants", "");
+        layout.setImageVariantService(new ImageVariantService(dir, "images/"));
+        Image first = new Image(null, new ExternalResource("images/first.jpg"));
+        Image second = new Image(null, new ExternalResource("images/second.jpg"));
+        layout.addComponent(first);
+        layout.addComponent(second);
+        layout.beforeClientResponse(true);
+        Assert.assertEquals(2, getRpcArgument(layout.retrievePendingRpcCalls(), "updateImageSources").size());
+
+        layout.updateComponentWrapperStyleName(second, MasonryLayout.DOUBLE_WIDE_STYLENAME);
+        layout.beforeClientResponse(false);
+        Map<?, ?> sources = getRpcArgument(layout.retrievePendingRpcCalls(), "updateImageSources");
+        Assert.assertEquals(1, sources.size());
+        Assert.assertEquals("(max-width: 600px) 100vw, 600px", ((MasonryImageSources) sources.get(second)).sizes);
+
+        // Style name change that does not change sources is not sent
+        layout.updateComponentWrapperStyleName(first, "foo");
+        layout.beforeClientResponse(false);
+        for(ClientMethodInvocation call : layout.retrievePendingRpcCalls()) {
+            Assert.assertFalse("updateImageSources".equals(call.getMethodName()));
+        }
+        dir.delete();
+    }
+
+    /**
+     * Get map argument of client RPC call with given name
+     */
+    private static Map<?, ?> getRpcArgument(List<ClientMethodInvocation> calls, String methodName) {
+        for(ClientMethodInvocation call : calls) {
+            if(call.getMethodName().equals(methodName)) {
+                return (Map<?, ?>) call.getParameters()[0];
+            }
+        }
+        Assert.fail("Client RPC " + methodName + " was not called");
+        return null;
+    }
+
+    @Test
+    public void loadMoreAppendsBatchesUntilHandlerIsDone() {
+        LoadMoreTestLayout layout = new LoadMoreTestLayout();
+        layout.setLoadMoreHandler(new MasonryLayout.LoadMoreHandler() {
+            @Override
+            public boolean loadMore(MasonryLayout layout, int count) {
+                for(int i = 0; i < count && layout.getComponentCount() < 7; ++i) {
+                    layout.addComponent(new Label("Item " + layout.getComponentCount()));
+                }
+                return layout.getComponentCount() < 7;
+            }
+        }, 3, 500);
+
+        layout.loadMore();
+        Assert.assertEquals(3, layout.getComponentCount());
+        Assert.assertTrue(layout.isLoadMoreEnabled());
+
+        layout.loadMore();
+        layout.loadMore();
+        Assert.assertEquals(7, layout.getComponentCount());
+        Assert.assertFalse(layout.isLoadMoreEnabled());
+
+        layout.loadMore();
+        Assert.assertEquals(7, layout.getComponentCount());
+
+        layout.resetLoadMore();
+        Assert.assertTrue(layout.isLoadMoreEnabled());
+    }
+
+    @Test
+    public void wrapperStyleNamesAreInterned() {
+        StyleTestLayout layout = new StyleTestLayout();
+        Label first = new Label();
+        Label second = new Label();
+        layout.addComponent(first, MasonryLayout.DOUBLE_WIDE_STYLENAME, 0);
+        layout.addComponent(second, MasonryLayout.DOUBLE_WIDE_STYLENAME, 1);
+        layout.sendWrapperStyleNames(true);
+
+        Assert.assertEquals(Arrays.asList(MasonryLayout.DOUBLE_WIDE_STYLENAME), layout.getState().wrapperStyleNames);
+        Assert.assertEquals(2, layout.getState().addedItemStyleNameIds.size());
+        Assert.assertEquals(Integer.valueOf(0), layout.getState().addedItemStyleNameIds.get(second));
+
+        layout.updateComponentWrapperStyleName(first, null);
+        layout.updateComponentWrapperStyleName(second, MasonryLayout.TRIPLE_WIDE_STYLENAME);
+        layout.sendWrapperStyleNames(false);
+
+        // Double wide is not used anymore, its id is reused
+        Assert.assertEquals(Arrays.asList(MasonryLayout.TRIPLE_WIDE_STYLENAME), layout.getState().wrapperStyleNames);
+        Assert.assertNull(layout.getComponentWrapperStyleName(first));
+        Assert.assertEquals(MasonryLayout.TRIPLE_WIDE_STYLENAME, layout.getComponentWrapperStyleName(second));
+    }
+
+    @Test
+    public void onlyStyleNamesOfNewItemsAreInState() {
+        StyleTestLayout layout = new StyleTestLayout();
+        Label first = new Label();
+        Label second = new Label();
+        layout.addComponent(first, MasonryLayout.DOUBLE_WIDE_STYLENAME, 0);
+        layout.beforeClientResponse(true);
+        layout.retrievePendingRpcCalls();
+
+        layout.addComponent(second, MasonryLayout.TRIPLE_WIDE_STYLENAME, 1);
+        layout.updateComponentWrapperStyleName(first, MasonryLayout.QUADRUPLE_WIDE_STYLENAME);
+        layout.beforeClientResponse(false);
+
+        Assert.assertEquals(1, layout.getState().addedItemStyleNameIds.size());
+        int secondId = layout.getState().addedItemStyleNameIds.get(second);
+        Assert.assertEquals(MasonryLayout.TRIPLE_WIDE_STYLENAME, layout.getState().wrapperStyleNames.get(secondId));
+
+        Map<?, ?> styleNameIds = getRpcArgument(layout.retrievePendingRpcCalls(), "updateWrapperStyleNames");
+        Assert.assertEquals(1, styleNameIds.size());
+        int firstId = (Integer) styleNameIds.get(first);
+        Assert.assertEquals(MasonryLayout.QUADRUPLE_WIDE_STYLENAME, layout.getState().wrapperStyleNames.get(firstId));
+        // Double wide was released and its id reused
+        Assert.assertEquals(2, layout.getState().wrapperStyleNames.size());
+    }
+
+    @Test
+    public void layoutMetricsAreCollectedOnlyWithListeners() {
+        StyleTestLayout layout = new StyleTestLayout();
+        Assert.assertEquals(0, layout.getState().layoutMetricsInterval);
+
+        MasonryLayout.LayoutMetricsListener listener = new MasonryLayout.LayoutMetricsListener() {
+            @Override
+            public void onLayoutMetrics(MasonryLayout.LayoutMetricsEvent event) {
+            }
+        };
+        layout.addLayoutMetricsListener(listener);
+        Assert.assertEquals(MasonryLayout.DEFAULT_LAYOUT_METRICS_INTERVAL, layout.getState().layoutMetricsInterval);
+        layout.setLayoutMetricsInterval(500);
+        Assert.assertEquals(500, layout.getState().layoutMetricsInterval);
+        layout.removeLayoutMetricsListener(listener);
+        Assert.assertEquals(0, layout.getState().layoutMetricsInterval);
+    }
+
+    @Test
+    public void layoutHistogramBuckets() {
+        MasonryLayoutMetrics metrics = new MasonryLayoutMetrics();
+        MasonryLayoutHistogram histogram = metrics.obtainHistogram(MasonryLayoutTrigger.IMAGE_LOAD);
+        histogram.record(0.5, 1);
+        histogram.record(3, 20);
+        histogram.record(1000, 10000);
+
+        Assert.assertSame(histogram, metrics.getHistogram(MasonryLayoutTrigger.IMAGE_LOAD));
+        Assert.assertNull(metrics.getHistogram(MasonryLayoutTrigger.ITEM_RESIZE));
+        Assert.assertEquals(3, metrics.getLayoutCount());
+        Assert.assertEquals(1000.0, histogram.maxDuration);
+        Assert.assertEquals(10021, histogram.totalItems);
+        Assert.assertEquals(1, histogram.durationBuckets[0]);
+        Assert.assertEquals(1, histogram.durationBuckets[2]);
+        Assert.assertEquals(1, histogram.durationBuckets[MasonryLayoutHistogram.DURATION_BOUNDS.length]);
+        Assert.assertEquals(1, histogram.itemBuckets[0]);
+        Assert.assertEquals(1, histogram.itemBuckets[2]);
+        Assert.assertEquals(1, histogram.itemBuckets[MasonryLayoutHistogram.ITEM_BOUNDS.length]);
+    }
+
+    @Test
+    public void metricsCountOperations() {
+        final List<String> operations = new ArrayList<String>();
+        MasonryLayout layout = new MasonryLayout();
+        layout.setMetrics(new MasonryMetrics() {
+            public void componentAdded(MasonryLayout layout) { operations.add("add"); }
+            public void componentRemoved(MasonryLayout layout) { operations.add("remove"); }
+            public void componentMoved(MasonryLayout layout) { operations.add("move"); }
+            public void componentReplaced(MasonryLayout layout) { operations.add("replace"); }
+            public void wrapperStyleNameUpdated(MasonryLayout layout) { operations.add("style"); }
+            public void layoutRequested(MasonryLayout layout) { operations.add("layout"); }
+            public void responseWritten(MasonryLayout layout, int stateDiffBytes, int hierarchyBytes) { }
+        });
+
+        Label first = new Label();
+        Label second = new Label();
+        layout.addComponent(first);
+        layout.addComponent(second);
+        layout.addComponent(second, 0);
+        layout.replaceComponent(first, new Label());
+        layout.updateComponentWrapperStyleName(second, MasonryLayout.DOUBLE_WIDE_STYLENAME);
+        layout.updateComponentWrapperStyleName(second, MasonryLayout.DOUBLE_WIDE_STYLENAME);
+        layout.requestLayout();
+        layout.removeComponent(second);
+
+        Assert.assertEquals(Arrays.asList("add", "add", "move", "replace", "style", "layout", "remove"), operations);
+    }
+
+    @Test
+    public void userReorderKeepsWrapperStyleAndCanBeRejected() {
+        ReorderTestLayout layout = new ReorderTestLayout();
+        final List<Component> moved = new ArrayList<Component>();
+        layout.addReorderListener(new MasonryLayout.ReorderListener() {
+            @Override
+            public void onReorder(MasonryLayout.ReorderEvent event) {
+                moved.add(event.getComponent());
+                Assert.assertEquals(event.getToIndex(), event.getLayout().getComponentIndex(event.getComponent()));
+            }
+        });
+        Label first = new Label();
+        Label second = new Label();
+        Label third = new Label();
+        layout.addComponent(first, MasonryLayout.DOUBLE_WIDE_STYLENAME);
+        layout.addComponent(second);
+        layout.addComponent(third);
+
+        Assert.assertFalse("not reorderable by default", layout.reorder(0, 2));
+
+        layout.setReorderable(true);
+        Assert.assertTrue(layout.reorder(0, 2));
+        Assert.assertEquals(Arrays.<Component>asList(second, third, first), layout.getComponents());
+        Assert.assertEquals(MasonryLayout.DOUBLE_WIDE_STYLENAME, layout.getComponentWrapperStyleName(first));
+        Assert.assertEquals(Arrays.<Component>asList(first), moved);
+
+        Assert.assertFalse("stale index", layout.reorder(3, 0));
+        layout.setReorderFilter(new MasonryLayout.ReorderFilter() {
+            @Override
+            public boolean acceptReorder(MasonryLayout layout, Component component, int fromIndex, int toIndex) {
+                return toIndex != 0;
+            }
+        });
+        Assert.assertFalse(layout.reorder(2, 0));
+        Assert.assertTrue(layout.reorder(0, 1));
+        Assert.assertEquals(Arrays.<Component>asList(third, second, first), layout.getComponents());
+        Assert.assertEquals(2, moved.size());
+    }
+
+    @Test
+    public void movesApplyToExternalOrder() {
+        Random random = new Random(7);
+        List<Integer> expected = new ArrayList<Integer>();
+        for(int i = 0; i < 1000; ++i) {
+            expected.add(i);
+        }
+        List<Integer> indexed = new LinkedList<Integer>(expected);
+
+        List<MasonryMove> moves = new ArrayList<MasonryMove>();
+        for(int i = 0; i < 100; ++i) {
+            MasonryMove move = new MasonryMove(random.nextInt(expected.size()), random.nextInt(expected.size()));
+            move.applyTo(expected);
+            moves.add(move);
+        }
+        MasonryMove.apply(indexed, moves);
+
+        Assert.assertEquals(expected, indexed);
+
+        ReorderTestLayout layout = new ReorderTestLayout();
+        final List<MasonryMove> eventMoves = new ArrayList<MasonryMove>();
+        layout.addReorderListener(new MasonryLayout.ReorderListener() {
+            @Override
+            public void onReorder(MasonryLayout.ReorderEvent event) {
+                eventMoves.addAll(event.getMoves());
+            }
+        });
+        layout.setReorderable(true);
+        for(int i = 0; i < 3; ++i) {
+            layout.addComponent(new Label());
+        }
+        List<Component> order = layout.getComponents();
+        layout.reorder(2, 0);
+        MasonryMove.apply(order, eventMoves);
+        Assert.assertEquals(Arrays.asList(new MasonryMove(2, 0)), eventMoves);
+        Assert.assertEquals(layout.getComponents(), order);
+    }
+
+    @Test
+    public void batchMarksLayoutDirtyOnce() {
+        final MasonryLayout layout = new MasonryLayout();
+        final Component kept = new Label();
+        final Component removed = new Label();
+        layout.addComponent(kept);
+        layout.addComponent(removed);
+
+        CountingUI ui = new CountingUI();
+        ui.setContent(layout);
+        ui.tracker.counted = layout;
+        ui.tracker.count = 0;
+
+        layout.batch(new MasonryLayout.BatchUpdate() {
+            @Override
+            public void update(MasonryLayout layout) {
+                for(int i = 0; i < 10; ++i) {
+                    layout.addComponent(new Label(), "style-" + i);
+                }
+                layout.removeComponent(removed);
+                layout.updateComponentWrapperStyleName(kept, "changed");
+            }
+        });
+
+        Assert.assertEquals(11, layout.getComponentCount());
+        Assert.assertEquals(1, ui.tracker.count);
+
+        // Without batch each change marks layout dirty
+        ui.tracker.count = 0;
+        layout.addComponent(new Label());
+        layout.removeComponent(kept);
+        Assert.assertTrue(ui.tracker.count >= 2);
+    }
+
+    private static class CountingTracker extends ConnectorTracker {
+        ClientConnector counted;
+        int count = 0;
+
+        CountingTracker(UI ui) {
+            super(ui);
+        }
+
+        @Override
+        public void markDirty(ClientConnector connector) {
+            if(connector == counted) {
+                ++count;
+            }
+            super.markDirty(connector);
+        }
+    }
+
+    private static class CountingUI extends UI {
+        // Created lazily, as UI constructor already marks itself dirty
+        CountingTracker tracker;
+
+        @Override
+        protected void init(VaadinRequest request) {
+        }
+
+        @Override
+        public ConnectorTracker getConnectorTracker() {
+            if(tracker == null) {
+                tracker = new CountingTracker(this);
+            }
+            return tracker;
+        }
+    }
+
+    private static class ReorderTestLayout extends MasonryLayout {
+        public boolean reorder(int fromIndex, int toIndex) {
+            return handleReorder(fromIndex, toIndex);
+        }
+    }
+
+    private static class StyleTestLayout extends MasonryLayout {
+        @Override
+        public MasonryLayoutState getState() {
+            return super.getState(false);
+        }
+
+        @Override
+        public void sendWrapperStyleNames(boolean initial) {
+            super.sendWrapperStyleNames(initial);
+        }
+    }
+
+    private static class LoadMoreTestLayout extends MasonryLayout {
+        public void loadMore() {
+            handleLoadMore();
+        }
+    }
 }
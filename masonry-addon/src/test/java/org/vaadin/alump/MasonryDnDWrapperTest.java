@@ -0,0 +1,94 @@
+package org.vaadin.alump;
+
+import com.vaadin.server.ServerRpcManager;
+import com.vaadin.server.ServerRpcMethodInvocation;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.vaadin.alump.masonry.MasonryDnDWrapper;
+import org.vaadin.alump.masonry.MasonryLayout;
+import org.vaadin.alump.masonry.MasonryMove;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutServerRpc;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MasonryDnDWrapperTest {
+
+    @Test
+    public void componentsCanBeMovedRemovedAndAddedBack() {
+        MasonryDnDWrapper layout = new MasonryDnDWrapper();
+        Label first = new Label("first");
+        Label second = new Label("second");
+        Label third = new Label("third");
+        layout.addComponentToLayout(first);
+        layout.addComponentToLayout(second);
+
+        layout.replaceComponentInLayout(first, third);
+        Assert.assertEquals(2, layout.getComponentCountInLayout());
+        Assert.assertSame(third, layout.getComponentInLayout(0));
+
+        layout.addComponentToLayout(second, 0);
+        Assert.assertEquals(2, layout.getComponentCountInLayout());
+        Assert.assertSame(second, layout.getComponentInLayout(0));
+
+        layout.removeComponentInLayout(second);
+        Assert.assertEquals(1, layout.getComponentCountInLayout());
+        Assert.assertSame(third, layout.getComponentInLayout(0));
+
+        layout.addComponentToLayout(second);
+        Assert.assertEquals(2, layout.getComponentCountInLayout());
+        Assert.assertSame(second, layout.getComponentInLayout(1));
+    }
+
+    @Test
+    public void componentsAreNotWrappedAndUserReorderNotifiesListeners() throws Exception {
+        TestWrapper layout = new TestWrapper();
+        final Label first = new Label("first");
+        Label second = new Label("second");
+        layout.addComponentToLayout(first);
+        layout.addComponentToLayout(second);
+        Assert.assertSame(layout.getMasonryLayout(), first.getParent());
+
+        final int[] events = new int[1];
+        final List<Component> order = new ArrayList<Component>(Arrays.<Component>asList(first, second));
+        layout.addMasonryReorderListener(new MasonryDnDWrapper.MasonryReorderListener() {
+            @Override
+            public void onUserReorder(MasonryDnDWrapper.MasonryReorderEvent event) {
+                events[0]++;
+                Assert.assertSame(first, event.getComponent());
+                Assert.assertEquals(0, event.getOldIndex());
+                Assert.assertEquals(1, event.getNewIndex());
+                Assert.assertEquals(Arrays.asList(new MasonryMove(0, 1)), event.getMoves());
+                event.applyTo(order);
+            }
+        });
+
+        layout.reorder(0, 1);
+        Assert.assertSame(second, layout.getComponentInLayout(0));
+        Assert.assertEquals(1, events[0]);
+        Assert.assertEquals(Arrays.<Component>asList(second, first), order);
+
+        layout.setReorderable(false);
+        layout.reorder(0, 1);
+        Assert.assertSame(second, layout.getComponentInLayout(0));
+        Assert.assertEquals(1, events[0]);
+    }
+
+    private static class TestWrapper extends MasonryDnDWrapper {
+        @Override
+        public MasonryLayout getMasonryLayout() {
+            return super.getMasonryLayout();
+        }
+
+        // Call server RPC like client side does when item is dropped
+        public void reorder(int fromIndex, int toIndex) throws ServerRpcManager.RpcInvocationException {
+            ServerRpcMethodInvocation invocation = new ServerRpcMethodInvocation("1",
+                    MasonryLayoutServerRpc.class, "reorder", 2);
+            invocation.setParameters(new Object[] { fromIndex, toIndex });
+            getMasonryLayout().getRpcManager(MasonryLayoutServerRpc.class.getName()).applyInvocation(invocation);
+        }
+    }
+}
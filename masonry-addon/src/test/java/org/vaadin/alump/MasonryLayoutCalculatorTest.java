@@ -0,0 +1,105 @@
+package org.vaadin.alump;
+
+import com.vaadin.server.ClientMethodInvocation;
+import com.vaadin.ui.Label;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.vaadin.alump.masonry.MasonryLayout;
+import org.vaadin.alump.masonry.MasonryLayoutCalculator;
+import org.vaadin.alump.masonry.client.shared.MasonryItemPosition;
+import org.vaadin.alump.masonry.client.shared.MasonryLayoutState;
+
+import java.util.Map;
+
+public class MasonryLayoutCalculatorTest {
+
+    @Test
+    public void itemsArePlacedToLowestLeftmostColumns() {
+        MasonryLayoutCalculator calculator = new MasonryLayoutCalculator(3);
+
+        Assert.assertEquals(new MasonryItemPosition(0, 1, 0, 100), calculator.place(1, 100));
+        Assert.assertEquals(new MasonryItemPosition(1, 1, 0, 50), calculator.place(1, 50));
+        Assert.assertEquals(new MasonryItemPosition(2, 1, 0, 70), calculator.place(1, 70));
+        Assert.assertEquals(new MasonryItemPosition(1, 1, 50, 10), calculator.place(1, 10));
+        // Double wide fits best to columns 1-2 (max 70) instead of 0-1 (max 100)
+        Assert.assertEquals(new MasonryItemPosition(1, 2, 70, 30), calculator.place(2, 30));
+        Assert.assertEquals(100, calculator.getHeight());
+    }
+
+    @Test
+    public void spanIsLimitedToColumnCount() {
+        MasonryLayoutCalculator calculator = new MasonryLayoutCalculator(2);
+        Assert.assertEquals(new MasonryItemPosition(0, 2, 0, 10), calculator.place(4, 10));
+        Assert.assertEquals(2, MasonryLayoutCalculator.getColumnCount(650, 300));
+        Assert.assertEquals(1, MasonryLayoutCalculator.getColumnCount(100, 300));
+        Assert.assertEquals(3, MasonryLayoutCalculator.getColumnSpan("foo " + MasonryLayout.TRIPLE_WIDE_STYLENAME));
+    }
+
+    @Test
+    public void layoutCalculatesPositionsUntilFirstItemWithoutHint() {
+        TestLayout layout = new TestLayout();
+        layout.setWidth("600px");
+        layout.setServerLayoutEnabled(true);
+        Label first = new Label();
+        Label second = new Label();
+        Label third = new Label();
+        layout.addComponent(first);
+        layout.addComponent(second);
+        layout.addComponent(third);
+        layout.setItemHeightHint(first, 100);
+        layout.setItemHeightHint(third, 100);
+
+        layout.beforeClientResponse(true);
+
+        Assert.assertEquals(2, layout.getState().serverLayoutColumns);
+        Map<?, ?> positions = getPositions(layout);
+        Assert.assertEquals(1, positions.size());
+        Assert.assertEquals(new MasonryItemPosition(0, 1, 0, 100), positions.get(first));
+
+        layout.setItemHeightHint(second, 50);
+        layout.beforeClientResponse(false);
+        positions = getPositions(layout);
+        Assert.assertEquals(2, positions.size());
+        Assert.assertEquals(new MasonryItemPosition(1, 1, 50, 100), positions.get(third));
+
+        // Only items from first changed item onwards are positioned again, unchanged positions are not sent
+        layout.setItemHeightHint(third, 20);
+        layout.beforeClientResponse(false);
+        positions = getPositions(layout);
+        Assert.assertEquals(1, positions.size());
+        Assert.assertEquals(new MasonryItemPosition(1, 1, 50, 20), positions.get(third));
+
+        layout.removeItemHeightHint(second);
+        layout.beforeClientResponse(false);
+        positions = getPositions(layout);
+        Assert.assertEquals(2, positions.size());
+        Assert.assertNull(positions.get(second));
+        Assert.assertNull(positions.get(third));
+    }
+
+    @Test
+    public void restoredPositionsContinueColumnHeights() {
+        MasonryLayoutCalculator calculator = new MasonryLayoutCalculator(3);
+        calculator.restore(new MasonryItemPosition(0, 2, 0, 100));
+        calculator.restore(new MasonryItemPosition(2, 1, 0, 40));
+        Assert.assertEquals(new MasonryItemPosition(2, 1, 40, 10), calculator.place(1, 10));
+        Assert.assertEquals(100, calculator.getHeight());
+    }
+
+    private static Map<?, ?> getPositions(MasonryLayout layout) {
+        for(ClientMethodInvocation call : layout.retrievePendingRpcCalls()) {
+            if(call.getMethodName().equals("updateItemPositions")) {
+                return (Map<?, ?>) call.getParameters()[0];
+            }
+        }
+        Assert.fail("Item positions were not sent");
+        return null;
+    }
+
+    private static class TestLayout extends MasonryLayout {
+        @Override
+        public MasonryLayoutState getState() {
+            return super.getState(false);
+        }
+    }
+}
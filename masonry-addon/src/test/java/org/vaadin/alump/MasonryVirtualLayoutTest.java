@@ -0,0 +1,121 @@
+package org.vaadin.alump;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ComponentContainer;
+import com.vaadin.ui.Label;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.alump.masonry.MasonryVirtualLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MasonryVirtualLayoutTest {
+
+    private static class CountingSource implements MasonryVirtualLayout.ItemSource {
+        int count;
+        int fetched = 0;
+
+        CountingSource(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int getItemCount() {
+            return count;
+        }
+
+        @Override
+        public List<Component> getItems(int startIndex, int count) {
+            List<Component> items = new ArrayList<Component>();
+            for(int i = startIndex; i < startIndex + count; ++i) {
+                items.add(new Label(String.valueOf(i)));
+                ++fetched;
+            }
+            return items;
+        }
+    }
+
+    private static class TestLayout extends MasonryVirtualLayout {
+        TestLayout(ItemSource source) {
+            super(source);
+        }
+
+        void requestRange(int first, int count) {
+            updateWindow(first, count);
+        }
+    }
+
+    private static void assertWindow(MasonryVirtualLayout layout, int first, int count) {
+        Assert.assertEquals(first, layout.getFirstRenderedIndex());
+        Assert.assertEquals(count, layout.getComponentCount());
+        for(int i = 0; i < count; ++i) {
+            Assert.assertEquals(String.valueOf(first + i), ((Label) layout.getComponent(i)).getValue());
+        }
+    }
+
+    @Test
+    public void onlyWindowIsMaterialized() {
+        CountingSource source = new CountingSource(20000);
+        TestLayout layout = new TestLayout(source);
+        Assert.assertEquals(20000, layout.getItemCount());
+        assertWindow(layout, 0, MasonryVirtualLayout.DEFAULT_INITIAL_ITEM_COUNT);
+
+        layout.requestRange(10, 30);
+        assertWindow(layout, 10, 30);
+        Assert.assertEquals(40, source.fetched);
+
+        layout.requestRange(5, 20);
+        assertWindow(layout, 5, 20);
+        Assert.assertEquals(45, source.fetched);
+
+        layout.requestRange(19990, 100);
+        assertWindow(layout, 19990, 10);
+    }
+
+    @Test
+    public void requestedRangeIsLimited() {
+        CountingSource source = new CountingSource(20000);
+        TestLayout layout = new TestLayout(source);
+
+        layout.requestRange(100, Integer.MAX_VALUE);
+        assertWindow(layout, 100, MasonryVirtualLayout.DEFAULT_MAX_WINDOW_SIZE);
+
+        layout.setMaxWindowSize(50);
+        layout.requestRange(19990, Integer.MAX_VALUE);
+        assertWindow(layout, 19990, 10);
+        layout.requestRange(0, 1000);
+        assertWindow(layout, 0, 50);
+    }
+
+    @Test
+    public void shortPrependKeepsIndexesContiguous() {
+        CountingSource source = new CountingSource(200) {
+            @Override
+            public List<Component> getItems(int startIndex, int count) {
+                return super.getItems(startIndex, Math.min(count, 5));
+            }
+        };
+        TestLayout layout = new TestLayout(source);
+        layout.requestRange(100, 5);
+        assertWindow(layout, 100, 5);
+
+        layout.requestRange(90, 15);
+        Assert.assertEquals(90, layout.getFirstRenderedIndex());
+        assertWindow(layout, 90, layout.getComponentCount());
+    }
+
+    @Test
+    public void itemsAreChildrenOfLayout() {
+        TestLayout layout = new TestLayout(new CountingSource(100));
+        Assert.assertFalse(layout instanceof ComponentContainer);
+
+        Component first = layout.getComponent(0);
+        Assert.assertSame(layout, first.getParent());
+        layout.requestRange(50, 10);
+        Assert.assertNull(first.getParent());
+        for(Component child : layout) {
+            Assert.assertSame(layout, child.getParent());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.vaadin.alump.masonry;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+// IndexedList is package private, so it's tested in its own package
+public class IndexedListTest {
+
+    @Test
+    public void setKeepsElementsUnique() {
+        List<String> list = new IndexedList<String>();
+        list.addAll(Arrays.asList("a", "b", "c"));
+
+        Assert.assertEquals("b", list.set(1, list.get(1)));
+        Assert.assertEquals("b", list.set(1, "d"));
+        Assert.assertEquals(Arrays.asList("a", "d", "c"), list);
+        Assert.assertEquals(1, list.indexOf("d"));
+        Assert.assertEquals(-1, list.indexOf("b"));
+
+        try {
+            list.set(0, "c");
+            Assert.fail("Element already in list accepted");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(Arrays.asList("a", "d", "c"), list);
+        }
+    }
+}
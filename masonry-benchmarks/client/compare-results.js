@@ -0,0 +1,37 @@
+#!/usr/bin/env node
+/*
+ * Compares median values of two client benchmark result files.
+ *
+ * Usage: node compare-results.js baseline.json candidate.json
+ */
+'use strict';
+
+const fs = require('fs');
+
+const METRICS = ['wallMs', 'layoutPasses', 'itemsPositioned', 'domMutations'];
+
+if (process.argv.length < 4) {
+    process.stderr.write('Usage: node compare-results.js baseline.json candidate.json\n');
+    process.exit(1);
+}
+
+const baseline = JSON.parse(fs.readFileSync(process.argv[2], 'utf8'));
+const candidate = JSON.parse(fs.readFileSync(process.argv[3], 'utf8'));
+
+const key = result => result.scenario + ' ' + result.count;
+const baselineResults = new Map(baseline.results.map(result => [key(result), result]));
+
+for (const result of candidate.results) {
+    const base = baselineResults.get(key(result));
+    if (!base) {
+        continue;
+    }
+    const columns = METRICS.map(metric => {
+        const before = base[metric].median;
+        const after = result[metric].median;
+        const change = before === 0 ? (after === 0 ? 0 : Infinity) : (after - before) * 100 / before;
+        return metric + ' ' + before.toFixed(1) + ' -> ' + after.toFixed(1)
+            + ' (' + (change >= 0 ? '+' : '') + change.toFixed(1) + '%)';
+    });
+    console.log(key(result).padEnd(22) + columns.join('  '));
+}
@@ -0,0 +1,121 @@
+#!/usr/bin/env node
+/*
+ * Runs client side Masonry benchmark scenarios in headless Chrome against running demo application, and writes
+ * results as JSON.
+ *
+ * Usage: node run-client-benchmarks.js [--url http://localhost:8080/] [--out results.json] [--label name]
+ *                                     [--scenarios scenarios.json] [--runs 5]
+ */
+'use strict';
+
+const fs = require('fs');
+const path = require('path');
+const childProcess = require('child_process');
+const puppeteer = require('puppeteer');
+
+const VIEW_FRAGMENT = '#!ClientBenchmarkView';
+const VIEWPORT = { width: 1280, height: 1024 };
+
+function parseArguments(argv) {
+    const options = {
+        url: 'http://localhost:8080/',
+        out: null,
+        label: null,
+        scenarios: path.join(__dirname, 'scenarios.json'),
+        runs: null
+    };
+    for (let i = 0; i < argv.length; i += 2) {
+        const name = argv[i].replace(/^--/, '');
+        if (!(name in options) || i + 1 >= argv.length) {
+            throw new Error('Invalid argument ' + argv[i]);
+        }
+        options[name] = argv[i + 1];
+    }
+    return options;
+}
+
+function gitCommit() {
+    try {
+        return childProcess.execSync('git rev-parse HEAD', { cwd: __dirname, stdio: ['ignore', 'pipe', 'ignore'] })
+            .toString().trim();
+    } catch (e) {
+        return null;
+    }
+}
+
+function summary(values) {
+    const sorted = values.slice().sort((a, b) => a - b);
+    const middle = Math.floor(sorted.length / 2);
+    const median = sorted.length % 2 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    const mean = sorted.reduce((sum, value) => sum + value, 0) / sorted.length;
+    return { median: median, mean: mean, min: sorted[0], max: sorted[sorted.length - 1] };
+}
+
+async function openView(browser, url) {
+    const page = await browser.newPage();
+    await page.setViewport(VIEWPORT);
+    await page.setCacheEnabled(false);
+    await page.goto(url + VIEW_FRAGMENT, { waitUntil: 'networkidle0' });
+    await page.waitForFunction('window.masonryBenchmark && window.masonryBenchmark.isReady()', { timeout: 60000 });
+    return page;
+}
+
+function measure(page, scenario, count) {
+    return page.evaluate((s, c) => window.masonryBenchmark.measure(s, c), scenario, count);
+}
+
+async function main() {
+    const options = parseArguments(process.argv.slice(2));
+    const config = JSON.parse(fs.readFileSync(options.scenarios, 'utf8'));
+    const runs = options.runs ? parseInt(options.runs, 10) : config.runs;
+
+    const browser = await puppeteer.launch({ headless: true, args: ['--no-sandbox', '--disable-gpu'] });
+    const results = [];
+    let userAgent;
+    try {
+        const page = await openView(browser, options.url);
+        userAgent = await browser.userAgent();
+
+        for (const scenario of config.scenarios) {
+            for (const count of scenario.counts) {
+                const samples = [];
+                for (let run = 0; run < runs; ++run) {
+                    await measure(page, 'reset', config.baseItems);
+                    samples.push(await measure(page, scenario.name, count));
+                }
+                const result = { scenario: scenario.name, count: count, runs: samples.length };
+                for (const metric of ['wallMs', 'responseMs', 'layoutPasses', 'itemsPositioned', 'domMutations']) {
+                    result[metric] = summary(samples.map(sample => sample[metric]));
+                }
+                results.push(result);
+                process.stderr.write(scenario.name + ' ' + count + ': ' + result.wallMs.median.toFixed(1) + 'ms, '
+                    + result.layoutPasses.median + ' layout passes, ' + result.domMutations.median
+                    + ' DOM mutations\n');
+            }
+        }
+    } finally {
+        await browser.close();
+    }
+
+    const report = {
+        label: options.label,
+        commit: gitCommit(),
+        date: new Date().toISOString(),
+        url: options.url,
+        userAgent: userAgent,
+        viewport: VIEWPORT,
+        baseItems: config.baseItems,
+        results: results
+    };
+    const json = JSON.stringify(report, null, 2) + '\n';
+    if (options.out) {
+        fs.writeFileSync(options.out, json);
+    } else {
+        process.stdout.write(json);
+    }
+}
+
+main().catch(error => {
+    process.stderr.write((error && error.stack || error) + '\n');
+    process.exit(1);
+});
@@ -0,0 +1,28 @@
+package org.vaadin.alump.masonry.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with GC profiler (to report allocation rate and bytes allocated per operation) and prints payload
+ * sizes of operations. Normal JMH command line options can be given, eq. benchmark regexp or -p children=1000.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+
+        System.out.println();
+        System.out.println("Response payload per operation (characters of JSON):");
+        PayloadReport.print(System.out);
+    }
+}
@@ -0,0 +1,160 @@
+package org.vaadin.alump.masonry.benchmarks;
+
+import com.vaadin.server.ClientConnector;
+import com.vaadin.server.ClientMethodInvocation;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.UI;
+import com.vaadin.server.JsonCodec;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Minimal locked session and UI used to attach benchmarked components, so connector ids, dirty tracking and state
+ * diffs work like in real application. No servlet container is needed.
+ */
+public class BenchmarkSession {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final VaadinSession session;
+    private final UI ui;
+
+    /**
+     * Sizes of payload written to client for one round trip
+     */
+    public static class Payload {
+        /**
+         * Characters of JSON state diff
+         */
+        public int stateDiff;
+
+        /**
+         * Characters of JSON encoded client RPC parameters
+         */
+        public int rpc;
+
+        /**
+         * Characters of JSON encoded child lists of changed containers
+         */
+        public int hierarchy;
+
+        public int total() {
+            return stateDiff + rpc + hierarchy;
+        }
+    }
+
+    public BenchmarkSession() {
+        session = new VaadinSession(null) {
+            @Override
+            public Lock getLockInstance() {
+                return lock;
+            }
+        };
+        lock.lock();
+        ui = new UI() {
+            @Override
+            protected void init(VaadinRequest request) {
+            }
+        };
+        ui.setSession(session);
+    }
+
+    /**
+     * Attach component as content of UI and mark everything clean, as if initial response was sent
+     * @param component Component attached
+     */
+    public void attach(Component component) {
+        ui.setContent(component);
+        flush();
+    }
+
+    /**
+     * Detach content of UI
+     */
+    public void detach() {
+        ui.setContent(null);
+        ui.getConnectorTracker().cleanConnectorMap();
+    }
+
+    /**
+     * Run beforeClientResponse of all dirty connectors and encode their state diffs, hierarchy changes and pending
+     * client RPC calls like response writer does. Connector tracker is marked clean afterwards.
+     * @return Sizes of encoded payload
+     */
+    public Payload flush() {
+        ConnectorTracker tracker = ui.getConnectorTracker();
+        Payload payload = new Payload();
+
+        List<ClientConnector> dirty = tracker.getDirtyVisibleConnectors();
+        for(ClientConnector connector : dirty) {
+            connector.beforeClientResponse(!tracker.isClientSideInitialized(connector));
+        }
+
+        for(ClientConnector connector : dirty) {
+            JsonObject diff = connector.encodeState();
+            if(diff.keys().length > 0) {
+                payload.stateDiff += diff.toJson().length();
+            }
+
+            if(connector instanceof HasComponents) {
+                JsonArray children = Json.createArray();
+                for(Component child : (HasComponents) connector) {
+                    children.set(children.length(), child.getConnectorId());
+                }
+                payload.hierarchy += children.toJson().length();
+            }
+
+            List<ClientMethodInvocation> calls = connector.retrievePendingRpcCalls();
+            for(ClientMethodInvocation call : calls) {
+                Type[] types = call.getParameterTypes();
+                Object[] parameters = call.getParameters();
+                for(int i = 0; i < parameters.length; ++i) {
+                    payload.rpc += JsonCodec.encode(parameters[i], null, types[i], tracker).getEncodedValue()
+                            .toJson().length();
+                }
+            }
+
+            tracker.markClientSideInitialized(connector);
+        }
+
+        tracker.markAllConnectorsClean();
+        tracker.cleanConnectorMap();
+        return payload;
+    }
+
+    /**
+     * Create labels used as children in benchmarks
+     * @param count Number of labels
+     * @return Labels created
+     */
+    public static List<Component> createLabels(int count) {
+        List<Component> labels = new ArrayList<Component>(count);
+        for(int i = 0; i < count; ++i) {
+            labels.add(new Label("Item " + i));
+        }
+        return labels;
+    }
+
+    public UI getUI() {
+        return ui;
+    }
+
+    /**
+     * Release session lock
+     */
+    public void close() {
+        detach();
+        lock.unlock();
+    }
+}
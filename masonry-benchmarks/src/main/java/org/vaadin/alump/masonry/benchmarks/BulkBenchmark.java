@@ -0,0 +1,93 @@
+package org.vaadin.alump.masonry.benchmarks;
+
+import com.vaadin.ui.Component;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.vaadin.alump.masonry.MasonryDnDWrapper;
+import org.vaadin.alump.masonry.MasonryLayout;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations touching all children at once. Layouts are refilled before each invocation, so these are measured as
+ * single shots.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = 1)
+@Measurement(iterations = 20, batchSize = 1)
+@Fork(1)
+public class BulkBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int children;
+
+    private BenchmarkSession session;
+    private MasonryLayout layout;
+    private MasonryDnDWrapper dndLayout;
+    private List<Component> labels;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        session = new BenchmarkSession();
+        layout = new MasonryLayout();
+        dndLayout = new MasonryDnDWrapper();
+    }
+
+    @Setup(Level.Invocation)
+    public void fill(BenchmarkParams params) {
+        labels = BenchmarkSession.createLabels(children);
+        if(params.getBenchmark().endsWith("FromLayout")) {
+            for(Component label : labels) {
+                dndLayout.addComponentToLayout(label);
+            }
+            session.attach(dndLayout);
+        } else if(params.getBenchmark().endsWith("removeAllComponents")) {
+            layout.addComponents(labels, null);
+            session.attach(layout);
+        } else {
+            session.attach(layout);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void clear() {
+        layout.removeAllComponents();
+        dndLayout.removeAllComponentsFromLayout();
+        session.detach();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public void addComponents() {
+        layout.addComponents(labels, null);
+    }
+
+    @Benchmark
+    public void removeAllComponents() {
+        layout.removeAllComponents();
+    }
+
+    @Benchmark
+    public void removeAllComponentsFromLayout() {
+        dndLayout.removeAllComponentsFromLayout();
+    }
+}
@@ -0,0 +1,100 @@
+package org.vaadin.alump.masonry.benchmarks;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.alump.masonry.MasonryDnDWrapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side cost of MasonryDnDWrapper child operations. Children are added directly to inner MasonryLayout, so these
+ * should cost about the same as operations in {@link MasonryLayoutBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MasonryDnDWrapperBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int children;
+
+    private BenchmarkSession session;
+    private MasonryDnDWrapper layout;
+    private List<Component> order;
+    private Component spare;
+    private Component middle;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        session = new BenchmarkSession();
+        layout = new MasonryDnDWrapper();
+        order = BenchmarkSession.createLabels(children);
+        for(Component component : order) {
+            layout.addComponentToLayout(component);
+        }
+        session.attach(layout);
+
+        spare = new Label("spare");
+        middle = layout.getComponentInLayout(children / 2);
+        random = new Random(0xDEADBEEF);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public void appendThenRemove() {
+        layout.addComponentToLayout(spare);
+        layout.removeComponentInLayout(spare);
+    }
+
+    @Benchmark
+    public void insertFirstThenRemove() {
+        layout.addComponentFirst(spare, null);
+        layout.removeComponentInLayout(spare);
+    }
+
+    @Benchmark
+    public void insertMiddleThenRemove() {
+        layout.addComponentToLayout(spare, children / 2);
+        layout.removeComponentInLayout(spare);
+    }
+
+    @Benchmark
+    public void replaceMiddle() {
+        layout.replaceComponentInLayout(middle, spare);
+        Component replaced = middle;
+        middle = spare;
+        spare = replaced;
+    }
+
+    @Benchmark
+    public void shuffle() {
+        Collections.shuffle(order, random);
+        for(int i = 0; i < order.size(); ++i) {
+            layout.addComponentToLayout(order.get(i), i);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.vaadin.alump.masonry.benchmarks;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.alump.masonry.MasonryLayout;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side cost of MasonryLayout child operations. Layout is attached to UI, so connector registration and dirty
+ * tracking are included. Single child operations are paired with their inverse, so child count stays at given value
+ * through the whole run. Removing all children is measured in {@link BulkBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MasonryLayoutBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int children;
+
+    private BenchmarkSession session;
+    private MasonryLayout layout;
+    private List<Component> order;
+    private Component spare;
+    private Component middle;
+    private boolean doubleWide;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        session = new BenchmarkSession();
+        layout = new MasonryLayout();
+        order = BenchmarkSession.createLabels(children);
+        layout.addComponents(order, null);
+        session.attach(layout);
+
+        spare = new Label("spare");
+        middle = layout.getComponent(children / 2);
+        random = new Random(0xDEADBEEF);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public void appendThenRemove() {
+        layout.addComponent(spare);
+        layout.removeComponent(spare);
+    }
+
+    @Benchmark
+    public void insertFirstThenRemove() {
+        layout.addComponentFirst(spare, null);
+        layout.removeComponent(spare);
+    }
+
+    @Benchmark
+    public void insertMiddleThenRemove() {
+        layout.addComponent(spare, children / 2);
+        layout.removeComponent(spare);
+    }
+
+    @Benchmark
+    public void addBeforeThenRemove() {
+        layout.addComponentBefore(spare, null, middle);
+        layout.removeComponent(spare);
+    }
+
+    @Benchmark
+    public void addAfterThenRemove() {
+        layout.addComponentAfter(spare, null, middle);
+        layout.removeComponent(spare);
+    }
+
+    @Benchmark
+    public void removeMiddleThenRestore() {
+        layout.removeComponent(middle);
+        layout.addComponent(middle, children / 2);
+    }
+
+    @Benchmark
+    public void replaceMiddle() {
+        layout.replaceComponent(middle, spare);
+        Component replaced = middle;
+        middle = spare;
+        spare = replaced;
+    }
+
+    @Benchmark
+    public void toggleWrapperStyleName() {
+        doubleWide = !doubleWide;
+        layout.updateComponentWrapperStyleName(middle, doubleWide ? MasonryLayout.DOUBLE_WIDE_STYLENAME : null);
+    }
+
+    @Benchmark
+    public void shuffle() {
+        Collections.shuffle(order, random);
+        layout.batch(new MasonryLayout.BatchUpdate() {
+            @Override
+            public void update(MasonryLayout layout) {
+                for(int i = 0; i < order.size(); ++i) {
+                    layout.addComponent(order.get(i), i);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package org.vaadin.alump.masonry.benchmarks;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import org.vaadin.alump.masonry.MasonryLayout;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reports size of response payload (state diff, hierarchy and client RPC) caused by single MasonryLayout operation.
+ * Sizes are deterministic, so these are measured once instead of running them through JMH.
+ */
+public class PayloadReport {
+
+    public static final int[] CHILD_COUNTS = {100, 1000, 10000, 100000};
+
+    /**
+     * Operations reported
+     */
+    public enum Operation {
+        APPEND {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.addComponent(spare);
+            }
+        },
+        INSERT_FIRST {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.addComponentFirst(spare, null);
+            }
+        },
+        INSERT_MIDDLE {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.addComponent(spare, layout.getComponentCount() / 2);
+            }
+        },
+        ADD_BEFORE {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.addComponentBefore(spare, null, middle(layout));
+            }
+        },
+        ADD_AFTER {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.addComponentAfter(spare, null, middle(layout));
+            }
+        },
+        REMOVE {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.removeComponent(middle(layout));
+            }
+        },
+        REPLACE {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.replaceComponent(middle(layout), spare);
+            }
+        },
+        WRAPPER_STYLE {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.updateComponentWrapperStyleName(middle(layout), MasonryLayout.DOUBLE_WIDE_STYLENAME);
+            }
+        },
+        SHUFFLE {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                final List<Component> order = new ArrayList<Component>(layout.getComponentCount());
+                for(Component child : layout) {
+                    order.add(child);
+                }
+                Collections.shuffle(order, random);
+                layout.batch(new MasonryLayout.BatchUpdate() {
+                    @Override
+                    public void update(MasonryLayout layout) {
+                        for(int i = 0; i < order.size(); ++i) {
+                            layout.addComponent(order.get(i), i);
+                        }
+                    }
+                });
+            }
+        },
+        REMOVE_ALL {
+            @Override
+            void apply(MasonryLayout layout, Component spare, Random random) {
+                layout.removeAllComponents();
+            }
+        };
+
+        abstract void apply(MasonryLayout layout, Component spare, Random random);
+
+        private static Component middle(MasonryLayout layout) {
+            return layout.getComponent(layout.getComponentCount() / 2);
+        }
+    }
+
+    /**
+     * Measure payload of single operation applied to layout with given amount of children
+     * @param operation Operation applied
+     * @param children Number of children in layout before operation
+     * @return Payload of response written after operation
+     */
+    public static BenchmarkSession.Payload measure(Operation operation, int children) {
+        BenchmarkSession session = new BenchmarkSession();
+        try {
+            MasonryLayout layout = new MasonryLayout();
+            layout.addComponents(BenchmarkSession.createLabels(children), null);
+            session.attach(layout);
+            operation.apply(layout, new Label("spare"), new Random(0xDEADBEEF));
+            return session.flush();
+        } finally {
+            session.close();
+        }
+    }
+
+    public static void print(PrintStream out) {
+        out.printf("%-14s %8s %12s %12s %12s%n", "Operation", "Children", "State", "Hierarchy", "RPC");
+        for(Operation operation : Operation.values()) {
+            for(int children : CHILD_COUNTS) {
+                BenchmarkSession.Payload payload = measure(operation, children);
+                out.printf("%-14s %8d %12d %12d %12d%n", operation, children, payload.stateDiff,
+                        payload.hierarchy, payload.rpc);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        print(System.out);
+    }
+}
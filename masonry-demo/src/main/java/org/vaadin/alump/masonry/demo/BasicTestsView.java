@@ -10,6 +10,7 @@ import com.vaadin.server.Page;
 import com.vaadin.ui.*;
 import org.vaadin.alump.masonry.ImagesLoadedExtension;
 import org.vaadin.alump.masonry.MasonryLayout;
+import org.vaadin.alump.masonry.client.shared.MasonryItemSizeHint;
 
 import java.util.*;
 
@@ -125,7 +126,8 @@ public class BasicTestsView extends AbstractTestView implements ImagesLoadedExte
         layout.addStyleName("demo-masonry");
         layout.setWidth("100%");
 
-        layout.setAutomaticLayoutWhenImagesLoaded(true);
+        layout.setAutomaticLayoutWhenImagesLoaded(true, true);
+        layout.setImageVariantService(ImagesRequestHandler.VARIANTS);
 
         // This line is just to see that ImagesLoaded events work correctly
         ImagesLoadedExtension.getExtension(layout).addImagesLoadedListener(this);
@@ -217,7 +219,8 @@ public class BasicTestsView extends AbstractTestView implements ImagesLoadedExte
 
     private void createSlowImage(int index) {
         Component itemLayout = ItemGenerator.createSlowImage(index);
-        layout.addComponent(itemLayout);
+        // Reserve space for image, so layout does not need to change when image is loaded
+        layout.addComponent(itemLayout, null, MasonryItemSizeHint.minHeight(400));
     }
 
     @Override
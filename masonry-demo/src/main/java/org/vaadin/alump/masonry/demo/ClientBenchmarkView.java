@@ -0,0 +1,141 @@
+package org.vaadin.alump.masonry.demo;
+
+import com.vaadin.annotations.JavaScript;
+import com.vaadin.navigator.ViewChangeListener;
+import com.vaadin.server.ExternalResource;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Image;
+import com.vaadin.ui.Label;
+import elemental.json.JsonArray;
+import org.vaadin.alump.masonry.MasonryLayout;
+import org.vaadin.alump.masonry.UnDraggableImage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scripted scenarios used by headless client side benchmark harness (see masonry-benchmarks/client). Scenarios are
+ * run on server side when harness calls masonryBenchmarkCommand(scenario, count, token), and masonry-benchmark.js
+ * measures client side work caused by them.
+ */
+@JavaScript("masonry-benchmark.js")
+public class ClientBenchmarkView extends AbstractTestView {
+
+    public final static String VIEW_NAME = ClientBenchmarkView.class.getSimpleName();
+    public final static String COMMAND_FUNCTION = "masonryBenchmarkCommand";
+
+    private final static int NUMBER_OF_IMAGES = 12;
+
+    private MasonryLayout layout;
+    private Random rand;
+
+    public ClientBenchmarkView() {
+        super("MasonryLayout Client Benchmark");
+
+        layout = new MasonryLayout();
+        layout.addStyleName("demo-masonry");
+        layout.addStyleName("masonry-benchmark");
+        layout.setWidth("100%");
+        layout.setTransitionDuration("0s");
+        layout.setAutomaticLayoutWhenImagesLoaded(true, true);
+        setPanelContent(layout);
+    }
+
+    @Override
+    public void enter(ViewChangeListener.ViewChangeEvent event) {
+        super.enter(event);
+        com.vaadin.ui.JavaScript.getCurrent().addFunction(COMMAND_FUNCTION, this::execute);
+    }
+
+    @Override
+    public void detach() {
+        com.vaadin.ui.JavaScript.getCurrent().removeFunction(COMMAND_FUNCTION);
+        super.detach();
+    }
+
+    private void execute(JsonArray arguments) {
+        String scenario = arguments.getString(0);
+        int count = (int) arguments.getNumber(1);
+        String token = arguments.length() > 2 ? arguments.getString(2) : "";
+
+        switch(scenario) {
+            case "reset":
+                rand = new Random(0xDEADBEEF);
+                layout.removeAllComponents();
+                layout.addComponents(createNotes(0, count), null);
+                break;
+            case "append":
+                layout.addComponents(createNotes(layout.getComponentCount(), count), null);
+                break;
+            case "prepend":
+                layout.addComponentFirst(createNote(layout.getComponentCount()), null);
+                break;
+            case "move":
+                layout.addComponent(layout.getComponent(layout.getComponentCount() - 1), 0);
+                break;
+            case "shuffle":
+                shuffle();
+                break;
+            case "toggleDoubleWide":
+                Component middle = layout.getComponent(layout.getComponentCount() / 2);
+                boolean doubleWide = MasonryLayout.DOUBLE_WIDE_STYLENAME.equals(
+                        layout.getComponentWrapperStyleName(middle));
+                layout.updateComponentWrapperStyleName(middle,
+                        doubleWide ? null : MasonryLayout.DOUBLE_WIDE_STYLENAME);
+                break;
+            case "imageBurst":
+                List<Component> images = new ArrayList<>();
+                for(int i = 0; i < count; ++i) {
+                    images.add(createImageItem(i, token));
+                }
+                layout.addComponents(images, null);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown benchmark scenario " + scenario);
+        }
+    }
+
+    private void shuffle() {
+        List<Component> order = new ArrayList<>(layout.getComponentCount());
+        layout.forEach(order::add);
+        Collections.shuffle(order, rand);
+        layout.batch(l -> {
+            for(int i = 0; i < order.size(); ++i) {
+                l.addComponent(order.get(i), i);
+            }
+        });
+    }
+
+    private List<Component> createNotes(int firstIndex, int count) {
+        List<Component> notes = new ArrayList<>(count);
+        for(int i = firstIndex; i < firstIndex + count; ++i) {
+            notes.add(createNote(i));
+        }
+        return notes;
+    }
+
+    // Deterministic content, so item heights are same in every run
+    private static Component createNote(int index) {
+        StringBuilder message = new StringBuilder("Item #").append(index);
+        for(int i = 0; i < index % 5; ++i) {
+            message.append("<br/>line ").append(i + 1);
+        }
+        return ItemGenerator.createPostItNote(message.toString());
+    }
+
+    // Token makes image urls unique per run, so images are always loaded from server
+    private static Component createImageItem(int index, String token) {
+        CssLayout item = new CssLayout();
+        item.setWidth("100%");
+        Image image = new UnDraggableImage();
+        image.setSource(new ExternalResource("images/img" + (index % NUMBER_OF_IMAGES) + ".jpg?burst=" + token
+                + "-" + index));
+        image.setWidth("100%");
+        item.addComponent(image);
+        item.addComponent(new Label("Image #" + index));
+        return item;
+    }
+}
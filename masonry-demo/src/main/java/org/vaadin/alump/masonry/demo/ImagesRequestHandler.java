@@ -1,38 +1,30 @@
 package org.vaadin.alump.masonry.demo;
 
-import com.vaadin.server.RequestHandler;
-import com.vaadin.server.VaadinRequest;
-import com.vaadin.server.VaadinResponse;
-import com.vaadin.server.VaadinSession;
-import org.apache.commons.io.IOUtils;
+import org.vaadin.alump.masonry.GalleryImage;
+import org.vaadin.alump.masonry.GalleryImageRequestHandler;
+import org.vaadin.alump.masonry.ImageVariantService;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.File;
 
 /**
  * Created by alump on 03/05/15.
  */
-public class ImagesRequestHandler implements RequestHandler {
+public class ImagesRequestHandler extends GalleryImageRequestHandler {
 
     public static final String PREFIX = "/images/";
     public static final String SUFFIX = ".jpg";
 
-    @Override
-    public boolean handleRequest(VaadinSession session, VaadinRequest request, VaadinResponse response) throws IOException {
+    public static final ImageVariantService VARIANTS = new ImageVariantService(
+            new File(System.getProperty("java.io.tmpdir"), "masonry-demo-variants"), "images/");
 
-        String path = request.getPathInfo();
-
-        if(path.startsWith(PREFIX) && path.endsWith(SUFFIX)) {
-            response.setContentType("image/jpeg");
-            path = path.substring(PREFIX.length() - 1);
-            InputStream stream = getClass().getResourceAsStream(path);
-            if(stream != null) {
-                IOUtils.copy(stream, response.getOutputStream());
-                return true;
+    public ImagesRequestHandler() {
+        super(PREFIX, name -> {
+            if(!name.endsWith(SUFFIX)) {
+                return null;
             }
-        }
-
-        return false;
+            return GalleryImage.forUrl(name, ImagesRequestHandler.class.getResource("/" + name));
+        });
+        setVariantService(VARIANTS);
     }
 
 }
@@ -40,6 +40,14 @@ public class MainMenuView extends VerticalLayout implements View {
         Button dndTests = new Button("Vaadin Drag'n Drop Demo", event ->
                 UI.getCurrent().getNavigator().navigateTo(VaadinDnDTestsView.VIEW_NAME));
         addComponent(dndTests);
+
+        Button virtualTests = new Button("Virtual Layout Demo", event ->
+                UI.getCurrent().getNavigator().navigateTo(VirtualTestsView.VIEW_NAME));
+        addComponent(virtualTests);
+
+        Button clientBenchmark = new Button("Client Benchmark Scenarios", event ->
+                UI.getCurrent().getNavigator().navigateTo(ClientBenchmarkView.VIEW_NAME));
+        addComponent(clientBenchmark);
     }
 
     @Override
@@ -30,5 +30,7 @@ public class MasonryDemoUI extends UI
         navigator.addView(MainMenuView.VIEW_NAME, MainMenuView.class);
         navigator.addView(BasicTestsView.VIEW_NAME, BasicTestsView.class);
         navigator.addView(VaadinDnDTestsView.VIEW_NAME, VaadinDnDTestsView.class);
+        navigator.addView(VirtualTestsView.VIEW_NAME, VirtualTestsView.class);
+        navigator.addView(ClientBenchmarkView.VIEW_NAME, ClientBenchmarkView.class);
     }
 }
@@ -1,16 +1,19 @@
 package org.vaadin.alump.masonry.demo;
 
 import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.DeploymentConfiguration;
+import com.vaadin.server.RequestHandler;
 import com.vaadin.server.ServiceException;
-import com.vaadin.server.SessionInitEvent;
-import com.vaadin.server.SessionInitListener;
 import com.vaadin.server.VaadinServlet;
+import com.vaadin.server.VaadinServletService;
+import org.vaadin.alump.masonry.JmxMasonryMetrics;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.List;
 
 @WebServlet(value = "/*", asyncSupported = true)
 @VaadinServletConfiguration(productionMode = false, ui = MasonryDemoUI.class, widgetset = "org.vaadin.alump.masonry.demo.DemoWidgetSet")
@@ -21,8 +24,24 @@ public class MasonryServlet extends VaadinServlet {
     @Override
     protected void servletInitialized() throws ServletException {
         super.servletInitialized();
-        getService().addSessionInitListener(event -> {
-            event.getSession().addRequestHandler(imagesRequestHandler);
-        });
+        // Operation counters and response sizes of layouts, see org.vaadin.alump.masonry:type=MasonryMetrics in JConsole
+        JmxMasonryMetrics.install();
+    }
+
+    @Override
+    protected VaadinServletService createServletService(DeploymentConfiguration deploymentConfiguration)
+            throws ServiceException {
+        // Images are served by service level handler, so tile requests are not serialized by session lock
+        VaadinServletService service = new VaadinServletService(this, deploymentConfiguration) {
+            @Override
+            protected List<RequestHandler> createRequestHandlers() throws ServiceException {
+                List<RequestHandler> handlers = super.createRequestHandlers();
+                // Handlers are called in reverse order, last one added is tried first
+                handlers.add(imagesRequestHandler);
+                return handlers;
+            }
+        };
+        service.init();
+        return service;
     }
 }
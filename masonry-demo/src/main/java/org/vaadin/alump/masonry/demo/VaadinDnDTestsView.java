@@ -37,6 +37,7 @@ public class VaadinDnDTestsView extends AbstractTestView {
 
         addButton("Remove all", "Remove all components", clickEvent -> {
             layout.removeAllComponentsFromLayout();
+            itemsAdded.clear();
         });
 
         addButton("Layout", "Relayout client side", clickEvent -> {
@@ -76,7 +77,9 @@ public class VaadinDnDTestsView extends AbstractTestView {
 
         @Override
         public void onUserReorder(MasonryDnDWrapper.MasonryReorderEvent event) {
-            System.out.println("User reordered stuff!");
+            // Keep own copy of order in sync by applying only the moves
+            event.applyTo(itemsAdded);
+            System.out.println("User moved item from " + event.getOldIndex() + " to " + event.getNewIndex());
         }
     };
 
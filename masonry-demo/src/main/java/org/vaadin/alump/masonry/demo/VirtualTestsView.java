@@ -0,0 +1,55 @@
+package org.vaadin.alump.masonry.demo;
+
+import com.vaadin.ui.Component;
+import org.vaadin.alump.masonry.MasonryLayout;
+import org.vaadin.alump.masonry.MasonryVirtualLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test case for virtual layout with large amount of items
+ */
+public class VirtualTestsView extends AbstractTestView {
+
+    public final static String VIEW_NAME = VirtualTestsView.class.getSimpleName();
+
+    private MasonryVirtualLayout layout;
+
+    private int itemCount = 20000;
+
+    public VirtualTestsView() {
+        super("MasonryVirtualLayout Tests");
+
+        addButton("Add 1000", "Add 1000 items to item source", clickEvent -> {
+            itemCount += 1000;
+            layout.refreshItems();
+        });
+
+        addButton("Refresh", "Reread items from item source", clickEvent -> layout.refreshItems());
+
+        layout = new MasonryVirtualLayout();
+        layout.addStyleName(MasonryLayout.MASONRY_PAPER_SHADOW_STYLENAME);
+        layout.addStyleName("demo-masonry");
+        layout.setWidth("100%");
+        layout.setEstimatedItemHeight(120);
+        layout.setItemSource(new MasonryVirtualLayout.ItemSource() {
+
+            @Override
+            public int getItemCount() {
+                return itemCount;
+            }
+
+            @Override
+            public List<Component> getItems(int startIndex, int count) {
+                List<Component> items = new ArrayList<Component>();
+                for(int i = startIndex; i < startIndex + count; ++i) {
+                    items.add(ItemGenerator.createPostItNote("Item #" + i));
+                }
+                return items;
+            }
+        });
+
+        setPanelContent(layout);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Client side measurement part of Masonry benchmark harness. Loaded by ClientBenchmarkView.
+ *
+ * masonryBenchmark.measure(scenario, count) runs scenario on server side and resolves, after layout has settled, to
+ * { scenario, count, wallMs, responseMs, layoutPasses, itemsPositioned, domMutations, images }
+ */
+(function(window) {
+    'use strict';
+
+    // How long nothing has to happen before layout is considered settled
+    var QUIET_MS = 150;
+    var TIMEOUT_MS = 60000;
+
+    var counters = { layoutPasses: 0, itemsPositioned: 0, domMutations: 0 };
+    var lastActivity = 0;
+    var observer = null;
+    var hooked = false;
+
+    function now() {
+        return window.performance.now();
+    }
+
+    function activity() {
+        lastActivity = now();
+    }
+
+    function installHooks() {
+        if(!hooked && window.Masonry) {
+            var proto = window.Masonry.prototype;
+            var postLayout = proto._postLayout;
+            proto._postLayout = function() {
+                counters.layoutPasses++;
+                activity();
+                return postLayout.apply(this, arguments);
+            };
+            var processLayoutQueue = proto._processLayoutQueue;
+            proto._processLayoutQueue = function(queue) {
+                counters.itemsPositioned += queue ? queue.length : 0;
+                return processLayoutQueue.apply(this, arguments);
+            };
+            hooked = true;
+        }
+        if(!observer) {
+            observer = new window.MutationObserver(function(records) {
+                counters.domMutations += records.length;
+                activity();
+            });
+            observer.observe(window.document.body, { childList: true, attributes: true, characterData: true,
+                subtree: true });
+        }
+        return hooked;
+    }
+
+    function isClientActive() {
+        var clients = window.vaadin && window.vaadin.clients;
+        if(clients) {
+            for(var id in clients) {
+                if(clients.hasOwnProperty(id) && clients[id].isActive()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    function pendingImages() {
+        var images = window.document.querySelectorAll('.masonry-benchmark img');
+        var pending = 0;
+        for(var i = 0; i < images.length; ++i) {
+            if(!images[i].complete) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    function reset() {
+        counters.layoutPasses = 0;
+        counters.itemsPositioned = 0;
+        counters.domMutations = 0;
+    }
+
+    function measure(scenario, count) {
+        return new Promise(function(resolve, reject) {
+            if(typeof window.masonryBenchmarkCommand !== 'function') {
+                reject(new Error('ClientBenchmarkView is not open'));
+                return;
+            }
+            installHooks();
+            reset();
+
+            var token = Date.now().toString(36) + Math.random().toString(36).substring(2);
+            var start = now();
+            var responseMs = -1;
+            lastActivity = start;
+
+            window.masonryBenchmarkCommand(scenario, count, token);
+
+            function poll() {
+                var time = now();
+                if(responseMs < 0 && !isClientActive()) {
+                    responseMs = time - start;
+                    installHooks();
+                }
+
+                if(responseMs >= 0 && pendingImages() === 0 && time - lastActivity >= QUIET_MS) {
+                    resolve({
+                        scenario: scenario,
+                        count: count,
+                        wallMs: lastActivity - start,
+                        responseMs: responseMs,
+                        layoutPasses: counters.layoutPasses,
+                        itemsPositioned: counters.itemsPositioned,
+                        domMutations: counters.domMutations,
+                        images: window.document.querySelectorAll('.masonry-benchmark img').length
+                    });
+                } else if(time - start > TIMEOUT_MS) {
+                    reject(new Error('Scenario ' + scenario + ' did not settle in ' + TIMEOUT_MS + 'ms'));
+                } else {
+                    window.requestAnimationFrame(poll);
+                }
+            }
+
+            // Request is sent at end of current event loop task, start polling after it
+            window.setTimeout(function() {
+                window.requestAnimationFrame(poll);
+            }, 0);
+        });
+    }
+
+    var benchmark = window.masonryBenchmark || {};
+    benchmark.measure = measure;
+    benchmark.isReady = function() {
+        return typeof window.masonryBenchmarkCommand === 'function' && !!window.Masonry;
+    };
+    window.masonryBenchmark = benchmark;
+
+})(window);